@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Measures <code>CustomHashtable</code>, which viewers use for temporary
+ * element sets and which backed the element map of
+ * <code>StructuredViewer</code> before <code>ElementHashtable</code>. The
+ * table is created with the default capacity, so the numbers include
+ * rehashing.
+ * 
+ * @since 1.0
+ */
+final class CustomHashtableBenchmark extends Benchmark {
+
+	static final int PUT = 0;
+
+	static final int GET = 1;
+
+	static final int REMOVE = 2;
+
+	private static final String[] NAMES = { "CustomHashtable.put", //$NON-NLS-1$
+			"CustomHashtable.get", "CustomHashtable.remove" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+	private int mode;
+
+	private Object[] keys;
+
+	private Object value = new Object();
+
+	private CustomHashtable table;
+
+	CustomHashtableBenchmark(int mode) {
+		super(NAMES[mode]);
+		this.mode = mode;
+	}
+
+	public void setUp(int size) {
+		keys = createShuffledStrings(size);
+		table = fill();
+	}
+
+	private CustomHashtable fill() {
+		CustomHashtable result = new CustomHashtable(
+				CustomHashtable.DEFAULT_CAPACITY, null);
+		for (int i = 0; i < keys.length; i++) {
+			result.put(keys[i], value);
+		}
+		return result;
+	}
+
+	public void prepare() {
+		if (mode == REMOVE && table.size() != keys.length) {
+			table = fill();
+		}
+	}
+
+	public Object run() {
+		switch (mode) {
+		case PUT:
+			return fill();
+		case GET: {
+			int found = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (table.get(keys[i]) != null) {
+					found++;
+				}
+			}
+			return new Integer(found);
+		}
+		default:
+			for (int i = 0; i < keys.length; i++) {
+				table.remove(keys[i]);
+			}
+			return table;
+		}
+	}
+
+	public void tearDown() {
+		keys = null;
+		table = null;
+	}
+}
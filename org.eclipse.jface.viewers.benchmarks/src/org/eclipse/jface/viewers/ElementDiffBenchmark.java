@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Measures the edit script computation used by incremental refreshes. The
+ * new elements differ from the old ones by a fixed number of insertions and
+ * removals spread over the list. The detail column shows the number of
+ * elements that keep their item.
+ * 
+ * @since 1.0
+ */
+final class ElementDiffBenchmark extends Benchmark {
+
+	private int edits;
+
+	private Object[] oldElements;
+
+	private Object[] newElements;
+
+	private int kept;
+
+	ElementDiffBenchmark(int edits) {
+		super("ElementDiff.match(" + edits + " edits)"); //$NON-NLS-1$ //$NON-NLS-2$
+		this.edits = edits;
+	}
+
+	public void setUp(int size) {
+		oldElements = createShuffledStrings(size);
+		int removals = Math.min(edits / 2, size);
+		int insertions = edits - removals;
+		newElements = new Object[size - removals + insertions];
+		int step = Math.max(size / Math.max(edits, 1), 1);
+		int j = 0;
+		for (int i = 0; i < size; i++) {
+			if (i % step == 0 && removals + insertions > 0) {
+				if (insertions >= removals) {
+					newElements[j++] = "inserted-" + i; //$NON-NLS-1$
+					newElements[j++] = oldElements[i];
+					insertions--;
+				} else {
+					removals--;
+				}
+			} else {
+				newElements[j++] = oldElements[i];
+			}
+		}
+		while (insertions-- > 0) {
+			newElements[j++] = "appended-" + insertions; //$NON-NLS-1$
+		}
+	}
+
+	public Object run() {
+		int[] matches = ElementDiff.match(oldElements, newElements, null,
+				ElementDiff.DEFAULT_MAX_EDITS);
+		kept = 0;
+		for (int i = 0; i < matches.length; i++) {
+			if (matches[i] != -1) {
+				kept++;
+			}
+		}
+		return matches;
+	}
+
+	public String getDetail() {
+		return "kept=" + kept; //$NON-NLS-1$
+	}
+
+	public void tearDown() {
+		oldElements = null;
+		newElements = null;
+	}
+}
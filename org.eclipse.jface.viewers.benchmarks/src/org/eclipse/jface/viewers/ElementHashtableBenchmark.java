@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Measures the element map of <code>StructuredViewer</code>. The operations
+ * match those of <code>CustomHashtableBenchmark</code>; in addition
+ * <code>PUT_PRESIZED</code> fills a table that was sized up front, as the
+ * viewer does when it knows the number of root elements.
+ * 
+ * @since 1.0
+ */
+final class ElementHashtableBenchmark extends Benchmark {
+
+	static final int PUT = 0;
+
+	static final int GET = 1;
+
+	static final int REMOVE = 2;
+
+	static final int PUT_PRESIZED = 3;
+
+	private static final String[] NAMES = { "ElementHashtable.put", //$NON-NLS-1$
+			"ElementHashtable.get", "ElementHashtable.remove", //$NON-NLS-1$ //$NON-NLS-2$
+			"ElementHashtable.put(presized)" }; //$NON-NLS-1$
+
+	private int mode;
+
+	private Object[] keys;
+
+	private Object value = new Object();
+
+	private ElementHashtable table;
+
+	ElementHashtableBenchmark(int mode) {
+		super(NAMES[mode]);
+		this.mode = mode;
+	}
+
+	public void setUp(int size) {
+		keys = createShuffledStrings(size);
+		table = fill(CustomHashtable.DEFAULT_CAPACITY);
+	}
+
+	private ElementHashtable fill(int capacity) {
+		ElementHashtable result = new ElementHashtable(capacity, null);
+		for (int i = 0; i < keys.length; i++) {
+			result.put(keys[i], value);
+		}
+		return result;
+	}
+
+	public void prepare() {
+		if (mode == REMOVE && table.size() != keys.length) {
+			table = fill(CustomHashtable.DEFAULT_CAPACITY);
+		}
+	}
+
+	public Object run() {
+		switch (mode) {
+		case PUT:
+			return fill(CustomHashtable.DEFAULT_CAPACITY);
+		case PUT_PRESIZED:
+			return fill(keys.length);
+		case GET: {
+			int found = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (table.get(keys[i]) != null) {
+					found++;
+				}
+			}
+			return new Integer(found);
+		}
+		default:
+			for (int i = 0; i < keys.length; i++) {
+				table.remove(keys[i]);
+			}
+			return table;
+		}
+	}
+
+	public void tearDown() {
+		keys = null;
+		table = null;
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Measures the comparison of two equal selections, which
+ * <code>StructuredViewer.preservingSelection</code> performs after every
+ * refresh.
+ * 
+ * @since 1.0
+ */
+final class StructuredSelectionBenchmark extends Benchmark {
+
+	private StructuredSelection selection;
+
+	private StructuredSelection copy;
+
+	StructuredSelectionBenchmark() {
+		super("StructuredSelection.equals"); //$NON-NLS-1$
+	}
+
+	public void setUp(int size) {
+		Object[] elements = createShuffledStrings(size);
+		selection = new StructuredSelection(elements);
+		copy = new StructuredSelection((Object[]) elements.clone());
+	}
+
+	public Object run() {
+		return selection.equals(copy) ? Boolean.TRUE : Boolean.FALSE;
+	}
+
+	public void tearDown() {
+		selection = null;
+		copy = null;
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Measures hashing and equality of tree paths as used by the tree viewers
+ * and <code>TreeSelection</code>. Paths are {@link #DEPTH} segments deep and
+ * share their prefixes, like the paths of a real tree.
+ * 
+ * @since 1.0
+ */
+final class TreePathBenchmark extends Benchmark {
+
+	static final int HASH_CODE = 0;
+
+	static final int EQUALS = 1;
+
+	private static final int DEPTH = 8;
+
+	private static final String[] NAMES = { "TreePath.hashCode(comparer)", //$NON-NLS-1$
+			"TreePath.equals" }; //$NON-NLS-1$
+
+	private int mode;
+
+	private TreePath[] paths;
+
+	private TreePath[] copies;
+
+	TreePathBenchmark(int mode) {
+		super(NAMES[mode]);
+		this.mode = mode;
+	}
+
+	public void setUp(int size) {
+		Object[] leaves = createShuffledStrings(size);
+		paths = new TreePath[size];
+		copies = new TreePath[size];
+		for (int i = 0; i < size; i++) {
+			Object[] segments = new Object[DEPTH];
+			Object[] copy = new Object[DEPTH];
+			for (int j = 0; j < DEPTH - 1; j++) {
+				// ten children per level
+				segments[j] = "folder-" + j + "-" + (i % (10 * (j + 1))); //$NON-NLS-1$ //$NON-NLS-2$
+				copy[j] = new String((String) segments[j]);
+			}
+			segments[DEPTH - 1] = leaves[i];
+			copy[DEPTH - 1] = new String((String) leaves[i]);
+			paths[i] = new TreePath(segments);
+			copies[i] = new TreePath(copy);
+		}
+	}
+
+	public Object run() {
+		int result = 0;
+		if (mode == HASH_CODE) {
+			for (int i = 0; i < paths.length; i++) {
+				result += paths[i].hashCode(null);
+			}
+		} else {
+			for (int i = 0; i < paths.length; i++) {
+				if (paths[i].equals(copies[i])) {
+					result++;
+				}
+			}
+		}
+		return new Integer(result);
+	}
+
+	public void tearDown() {
+		paths = null;
+		copies = null;
+	}
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Creates the benchmarks for the <code>org.eclipse.jface.viewers</code>
+ * package. The benchmarks live in this package so that they can reach the
+ * package visible data structures of the viewers.
+ * 
+ * @since 1.0
+ * @noreference This class is not intended to be referenced by clients.
+ */
+public final class ViewerBenchmarks {
+
+	private ViewerBenchmarks() {
+		// not instantiated
+	}
+
+	/**
+	 * Returns the benchmarks of this package.
+	 * 
+	 * @return the benchmarks of this package
+	 */
+	public static Benchmark[] createBenchmarks() {
+		return new Benchmark[] {
+				new CustomHashtableBenchmark(CustomHashtableBenchmark.PUT),
+				new CustomHashtableBenchmark(CustomHashtableBenchmark.GET),
+				new CustomHashtableBenchmark(CustomHashtableBenchmark.REMOVE),
+				new ElementHashtableBenchmark(ElementHashtableBenchmark.PUT),
+				new ElementHashtableBenchmark(
+						ElementHashtableBenchmark.PUT_PRESIZED),
+				new ElementHashtableBenchmark(ElementHashtableBenchmark.GET),
+				new ElementHashtableBenchmark(ElementHashtableBenchmark.REMOVE),
+				new TreePathBenchmark(TreePathBenchmark.HASH_CODE),
+				new TreePathBenchmark(TreePathBenchmark.EQUALS),
+				new StructuredSelectionBenchmark(),
+				new ElementDiffBenchmark(1),
+				new ElementDiffBenchmark(100),
+				new ViewerFilterBenchmark(false),
+				new ViewerFilterBenchmark(true),
+				new VirtualElementCacheBenchmark(
+						VirtualElementCacheBenchmark.INSERT),
+				new VirtualElementCacheBenchmark(
+						VirtualElementCacheBenchmark.REMOVE),
+				new ViewerComparatorBenchmark(false, false),
+				new ViewerComparatorBenchmark(false, true),
+				new ViewerComparatorBenchmark(true, false),
+				new ViewerComparatorBenchmark(true, true) };
+	}
+}
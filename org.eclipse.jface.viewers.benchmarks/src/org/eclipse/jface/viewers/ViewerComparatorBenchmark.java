@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * Measures <code>ViewerComparator.sort</code> with a label provider, as
+ * used by <code>StructuredViewer.getSortedChildren</code>, with the default
+ * string comparator or a <code>ViewerSorter</code> collator, and with or
+ * without sort keys. The detail column reports the number of
+ * <code>getText</code> calls per element.
+ * 
+ * @since 1.0
+ */
+final class ViewerComparatorBenchmark extends Benchmark {
+
+	/**
+	 * A label provider that returns the element's string and counts the
+	 * calls to <code>getText</code>.
+	 */
+	private static final class CountingLabelProvider implements ILabelProvider {
+		long calls;
+
+		public String getText(Object element) {
+			calls++;
+			return (String) element;
+		}
+
+		public Image getImage(Object element) {
+			return null;
+		}
+
+		public void addListener(ILabelProviderListener listener) {
+			// no events
+		}
+
+		public void removeListener(ILabelProviderListener listener) {
+			// no events
+		}
+
+		public boolean isLabelProperty(Object element, String property) {
+			return false;
+		}
+
+		public void dispose() {
+			// nothing to dispose
+		}
+	}
+
+	/**
+	 * A content viewer without a control, so that the comparator can reach
+	 * the label provider without a display.
+	 */
+	private static final class HeadlessViewer extends ContentViewer {
+		public Control getControl() {
+			return null;
+		}
+
+		public ISelection getSelection() {
+			return StructuredSelection.EMPTY;
+		}
+
+		public void refresh() {
+			// nothing to refresh
+		}
+
+		public void setSelection(ISelection selection, boolean reveal) {
+			// no selection
+		}
+	}
+
+	private ViewerComparator comparator;
+
+	private HeadlessViewer viewer;
+
+	private CountingLabelProvider labelProvider;
+
+	private Object[] elements;
+
+	private Object[] toSort;
+
+	private long sorts;
+
+	ViewerComparatorBenchmark(boolean collator, boolean useSortKeys) {
+		super((collator ? "ViewerSorter.sort" : "ViewerComparator.sort") //$NON-NLS-1$ //$NON-NLS-2$
+				+ (useSortKeys ? " (sort keys)" : "")); //$NON-NLS-1$ //$NON-NLS-2$
+		comparator = collator ? new ViewerSorter() : new ViewerComparator();
+		comparator.setUseSortKeys(useSortKeys);
+	}
+
+	public void setUp(int size) {
+		elements = createShuffledStrings(size);
+		labelProvider = new CountingLabelProvider();
+		viewer = new HeadlessViewer();
+		viewer.setLabelProvider(labelProvider);
+		sorts = 0;
+	}
+
+	public void prepare() {
+		toSort = (Object[]) elements.clone();
+	}
+
+	public Object run() {
+		comparator.sort(viewer, toSort);
+		sorts++;
+		return toSort;
+	}
+
+	public String getDetail() {
+		if (sorts == 0) {
+			return null;
+		}
+		double perElement = (double) labelProvider.calls / sorts / elements.length;
+		return "getText/element=" + Math.round(perElement * 10) / 10.0; //$NON-NLS-1$
+	}
+
+	public void tearDown() {
+		elements = null;
+		toSort = null;
+		viewer = null;
+	}
+}
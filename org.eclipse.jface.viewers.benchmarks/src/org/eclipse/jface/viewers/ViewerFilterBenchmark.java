@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Measures <code>ViewerFilter.filter</code> with a substring filter, as used
+ * for a quick filter, either sequentially or marked as thread-safe. Parallel
+ * filtering only happens on machines with more than one processor.
+ * 
+ * @since 1.0
+ */
+final class ViewerFilterBenchmark extends Benchmark {
+
+	private static final class SubstringFilter extends ViewerFilter {
+
+		private String pattern;
+
+		private boolean threadSafe;
+
+		SubstringFilter(String pattern, boolean threadSafe) {
+			this.pattern = pattern;
+			this.threadSafe = threadSafe;
+		}
+
+		public boolean select(Viewer viewer, Object parentElement,
+				Object element) {
+			return element.toString().toUpperCase().indexOf(pattern) != -1;
+		}
+
+		public boolean isThreadSafe() {
+			return threadSafe;
+		}
+	}
+
+	private ViewerFilter filter;
+
+	private Object[] elements;
+
+	private int selected;
+
+	ViewerFilterBenchmark(boolean threadSafe) {
+		super(threadSafe ? "ViewerFilter.filter(threadSafe)" //$NON-NLS-1$
+				: "ViewerFilter.filter"); //$NON-NLS-1$
+		filter = new SubstringFilter("7", threadSafe); //$NON-NLS-1$
+	}
+
+	public void setUp(int size) {
+		elements = createShuffledStrings(size);
+	}
+
+	public Object run() {
+		Object[] result = filter.filter(null, (Object) null, elements);
+		selected = result.length;
+		return result;
+	}
+
+	public String getDetail() {
+		return "selected=" + selected; //$NON-NLS-1$
+	}
+
+	public void tearDown() {
+		elements = null;
+	}
+}
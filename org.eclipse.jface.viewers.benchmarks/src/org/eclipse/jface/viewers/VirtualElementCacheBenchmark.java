@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Measures the element cache of virtual table viewers. <code>INSERT</code>
+ * adds 1000 elements, one at a time, at increasing rows of a cache with
+ * <code>size</code> elements, as <code>add(Object[])</code> does.
+ * <code>REMOVE</code> looks up 1% of the elements and removes their rows, as
+ * <code>remove(Object[])</code> does.
+ * 
+ * @since 1.0
+ */
+final class VirtualElementCacheBenchmark extends Benchmark {
+
+	static final int INSERT = 0;
+
+	static final int REMOVE = 1;
+
+	private static final int INSERTIONS = 1000;
+
+	private static final String[] NAMES = { "VirtualElementCache.insert", //$NON-NLS-1$
+			"VirtualElementCache.remove" }; //$NON-NLS-1$
+
+	private int mode;
+
+	private Object[] elements;
+
+	private Object[] toRemove;
+
+	private VirtualElementCache cache;
+
+	VirtualElementCacheBenchmark(int mode) {
+		super(NAMES[mode]);
+		this.mode = mode;
+	}
+
+	public void setUp(int size) {
+		elements = createShuffledStrings(size);
+		toRemove = new Object[Math.max(size / 100, 1)];
+		for (int i = 0; i < toRemove.length; i++) {
+			toRemove[i] = elements[i * 100 % size];
+		}
+		cache = new VirtualElementCache();
+	}
+
+	public void prepare() {
+		cache.setElements(elements);
+	}
+
+	public Object run() {
+		if (mode == INSERT) {
+			int step = Math.max(elements.length / INSERTIONS, 1);
+			for (int i = 0; i < INSERTIONS; i++) {
+				cache.insert(elements[i % elements.length], i * step + i);
+			}
+			return cache;
+		}
+		int[] indices = new int[toRemove.length];
+		for (int i = 0; i < toRemove.length; i++) {
+			indices[i] = cache.indexOf(toRemove[i], null);
+		}
+		cache.removeIndices(indices);
+		return cache;
+	}
+
+	public void tearDown() {
+		elements = null;
+		toRemove = null;
+		cache = null;
+	}
+}
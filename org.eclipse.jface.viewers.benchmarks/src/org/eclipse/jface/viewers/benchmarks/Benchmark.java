@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.benchmarks;
+
+import java.util.Random;
+
+/**
+ * A single headless micro benchmark. The <code>BenchmarkRunner</code> calls
+ * <code>setUp</code> once per problem size, then repeatedly calls
+ * <code>prepare</code> (untimed) followed by <code>run</code> (timed), and
+ * finally <code>tearDown</code>.
+ * <p>
+ * Benchmarks must not require a <code>Display</code>; they exercise the
+ * viewer data structures directly.
+ * </p>
+ *
+ * @since 1.0
+ */
+public abstract class Benchmark {
+
+	private String name;
+
+	/**
+	 * Creates a new benchmark with the given name.
+	 *
+	 * @param name
+	 *            the name shown in the report
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name of this benchmark.
+	 *
+	 * @return the name of this benchmark
+	 */
+	public final String getName() {
+		return name;
+	}
+
+	/**
+	 * Creates the fixture for the given problem size. Called once per size,
+	 * before any invocation of <code>run</code>. The default implementation
+	 * does nothing.
+	 *
+	 * @param size
+	 *            the number of elements to operate on
+	 */
+	public void setUp(int size) {
+		// do nothing
+	}
+
+	/**
+	 * Restores the fixture before each timed invocation. Work done here is
+	 * not measured. The default implementation does nothing.
+	 */
+	public void prepare() {
+		// do nothing
+	}
+
+	/**
+	 * Performs the measured operation. The result is consumed by the runner
+	 * so that the operation cannot be optimized away.
+	 *
+	 * @return any result of the operation, or <code>null</code>
+	 */
+	public abstract Object run();
+
+	/**
+	 * Releases the fixture. The default implementation does nothing.
+	 */
+	public void tearDown() {
+		// do nothing
+	}
+
+	/**
+	 * Returns additional information to print next to the timing, for
+	 * example the number of label provider calls per element. The default
+	 * implementation returns <code>null</code>.
+	 *
+	 * @return additional information, or <code>null</code>
+	 */
+	public String getDetail() {
+		return null;
+	}
+
+	/**
+	 * Returns <code>size</code> distinct strings in a reproducible random
+	 * order.
+	 *
+	 * @param size
+	 *            the number of strings
+	 * @return the shuffled strings
+	 */
+	public static Object[] createShuffledStrings(int size) {
+		Object[] result = new Object[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = "element-" + i; //$NON-NLS-1$
+		}
+		shuffle(result);
+		return result;
+	}
+
+	/**
+	 * Returns the integers <code>0</code> to <code>size - 1</code> in a
+	 * reproducible random order.
+	 *
+	 * @param size
+	 *            the number of integers
+	 * @return the shuffled integers
+	 */
+	public static Object[] createShuffledIntegers(int size) {
+		Object[] result = new Object[size];
+		for (int i = 0; i < size; i++) {
+			result[i] = new Integer(i);
+		}
+		shuffle(result);
+		return result;
+	}
+
+	private static void shuffle(Object[] array) {
+		// seed with the size so that every run sees the same order
+		Random random = new Random(array.length);
+		for (int i = array.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			Object tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.benchmarks;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.eclipse.jface.viewers.ViewerBenchmarks;
+import org.eclipse.jface.viewers.deferred.DeferredBenchmarks;
+
+/**
+ * Runs the viewer benchmarks headless and prints one line per benchmark and
+ * problem size. Each benchmark is warmed up before it is measured; the
+ * reported time is the mean over all measurement iterations of the average
+ * time of one <code>run</code> invocation.
+ * <p>
+ * Usage:
+ * </p>
+ *
+ * <pre>
+ * java org.eclipse.jface.viewers.benchmarks.BenchmarkRunner
+ *     [-sizes 1000,10000,100000,1000000] [-filter substring]
+ *     [-warmup 3] [-iterations 5] [-time 500]
+ * </pre>
+ *
+ * <p>
+ * <code>-time</code> is the minimum duration of one iteration in
+ * milliseconds. Every iteration performs at least one invocation.
+ * </p>
+ *
+ * @since 1.0
+ */
+public final class BenchmarkRunner {
+
+	private static final int[] DEFAULT_SIZES = { 1000, 10000, 100000, 1000000 };
+
+	/**
+	 * Accumulates benchmark results so that the JIT cannot discard them.
+	 */
+	private static volatile int sink;
+
+	private int[] sizes = DEFAULT_SIZES;
+
+	private String filter;
+
+	private int warmupIterations = 3;
+
+	private int measurementIterations = 5;
+
+	private long iterationTime = 500;
+
+	private PrintStream out = System.out;
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args
+	 *            the command line arguments
+	 */
+	public static void main(String[] args) {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String option = args[i];
+			String value = args[i + 1];
+			if ("-sizes".equals(option)) { //$NON-NLS-1$
+				runner.sizes = parseSizes(value);
+			} else if ("-filter".equals(option)) { //$NON-NLS-1$
+				runner.filter = value;
+			} else if ("-warmup".equals(option)) { //$NON-NLS-1$
+				runner.warmupIterations = Integer.parseInt(value);
+			} else if ("-iterations".equals(option)) { //$NON-NLS-1$
+				runner.measurementIterations = Integer.parseInt(value);
+			} else if ("-time".equals(option)) { //$NON-NLS-1$
+				runner.iterationTime = Long.parseLong(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + option); //$NON-NLS-1$
+			}
+		}
+		runner.run(createBenchmarks());
+	}
+
+	/**
+	 * Returns all known benchmarks.
+	 *
+	 * @return all known benchmarks
+	 */
+	public static Benchmark[] createBenchmarks() {
+		List result = new ArrayList();
+		result.addAll(Arrays.asList(ViewerBenchmarks.createBenchmarks()));
+		result.addAll(Arrays.asList(DeferredBenchmarks.createBenchmarks()));
+		return (Benchmark[]) result.toArray(new Benchmark[result.size()]);
+	}
+
+	private static int[] parseSizes(String value) {
+		StringTokenizer tokenizer = new StringTokenizer(value, ","); //$NON-NLS-1$
+		int[] result = new int[tokenizer.countTokens()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = Integer.parseInt(tokenizer.nextToken().trim());
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the given benchmarks for all configured sizes.
+	 *
+	 * @param benchmarks
+	 *            the benchmarks to run
+	 */
+	public void run(Benchmark[] benchmarks) {
+		out.println("# " + System.getProperty("java.vm.name") + " " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ System.getProperty("java.version") + ", " //$NON-NLS-1$ //$NON-NLS-2$
+				+ Runtime.getRuntime().availableProcessors() + " cpus, warmup " //$NON-NLS-1$
+				+ warmupIterations + ", iterations " + measurementIterations //$NON-NLS-1$
+				+ ", " + iterationTime + " ms/iteration"); //$NON-NLS-1$ //$NON-NLS-2$
+		out.println(pad("benchmark", 44) + pad("size", 10) //$NON-NLS-1$ //$NON-NLS-2$
+				+ pad("ms/op", 14) + pad("+-", 10) + pad("ns/element", 12) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ "detail"); //$NON-NLS-1$
+		for (int i = 0; i < benchmarks.length; i++) {
+			Benchmark benchmark = benchmarks[i];
+			if (filter != null && benchmark.getName().indexOf(filter) == -1) {
+				continue;
+			}
+			for (int j = 0; j < sizes.length; j++) {
+				run(benchmark, sizes[j]);
+			}
+		}
+	}
+
+	private void run(Benchmark benchmark, int size) {
+		benchmark.setUp(size);
+		try {
+			for (int i = 0; i < warmupIterations; i++) {
+				iteration(benchmark);
+			}
+			double[] samples = new double[measurementIterations];
+			for (int i = 0; i < measurementIterations; i++) {
+				samples[i] = iteration(benchmark);
+			}
+			double mean = 0;
+			for (int i = 0; i < samples.length; i++) {
+				mean += samples[i];
+			}
+			mean /= Math.max(samples.length, 1);
+			double variance = 0;
+			for (int i = 0; i < samples.length; i++) {
+				variance += (samples[i] - mean) * (samples[i] - mean);
+			}
+			double error = Math.sqrt(variance / Math.max(samples.length - 1, 1));
+			String detail = benchmark.getDetail();
+			out.println(pad(benchmark.getName(), 44) + pad(String.valueOf(size), 10)
+					+ pad(format(mean / 1e6), 14) + pad(format(error / 1e6), 10)
+					+ pad(format(mean / size), 12) + (detail == null ? "" : detail)); //$NON-NLS-1$
+		} finally {
+			benchmark.tearDown();
+			System.gc();
+		}
+	}
+
+	/**
+	 * Runs one iteration and returns the average time per invocation in
+	 * nanoseconds.
+	 */
+	private double iteration(Benchmark benchmark) {
+		long budget = iterationTime * 1000000L;
+		long elapsed = 0;
+		int invocations = 0;
+		do {
+			benchmark.prepare();
+			long start = System.nanoTime();
+			Object result = benchmark.run();
+			elapsed += System.nanoTime() - start;
+			invocations++;
+			sink ^= System.identityHashCode(result);
+		} while (elapsed < budget);
+		return (double) elapsed / invocations;
+	}
+
+	private static String format(double value) {
+		if (value >= 100) {
+			return String.valueOf(Math.round(value));
+		}
+		return String.valueOf(Math.round(value * 1000) / 1000.0);
+	}
+
+	private static String pad(String value, int width) {
+		StringBuffer buffer = new StringBuffer(value);
+		do {
+			buffer.append(' ');
+		} while (buffer.length() < width);
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.deferred;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Measures <code>ChangeQueue</code> throughput. Producer threads enqueue one
+ * single-element ADD per element while the calling thread, acting as the
+ * sort thread, drains the queue. The detail reports how many changes of the
+ * last run were merged or dropped.
+ * 
+ * @since 1.0
+ */
+final class ChangeQueueBenchmark extends Benchmark {
+
+	private int producers;
+
+	private Object[][] changes;
+
+	private ChangeQueue lastQueue;
+
+	ChangeQueueBenchmark(int producers) {
+		super("ChangeQueue.enqueue/dequeue (" + producers + " producers)"); //$NON-NLS-1$ //$NON-NLS-2$
+		this.producers = producers;
+	}
+
+	public void setUp(int size) {
+		Object[] elements = createShuffledStrings(size);
+		changes = new Object[size][];
+		for (int i = 0; i < size; i++) {
+			changes[i] = new Object[] { elements[i] };
+		}
+	}
+
+	public Object run() {
+		final ChangeQueue queue = new ChangeQueue();
+		Thread[] threads = new Thread[producers];
+		for (int i = 0; i < producers; i++) {
+			final int first = i * changes.length / producers;
+			final int last = (i + 1) * changes.length / producers;
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = first; j < last; j++) {
+						queue.enqueue(ChangeQueue.ADD, changes[j]);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		int dequeued = 0;
+		while (dequeued < changes.length) {
+			if (queue.isEmpty()) {
+				Thread.yield();
+				continue;
+			}
+			dequeued += queue.dequeue().getElements().length;
+		}
+		for (int i = 0; i < producers; i++) {
+			try {
+				threads[i].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		lastQueue = queue;
+		return queue;
+	}
+
+	public String getDetail() {
+		if (lastQueue == null) {
+			return null;
+		}
+		// how many changes were coalesced before the consumer saw them
+		return "enqueued=" + lastQueue.getEnqueuedCount() //$NON-NLS-1$
+				+ " merged=" + lastQueue.getMergedCount() //$NON-NLS-1$
+				+ " dropped=" + lastQueue.getDroppedCount(); //$NON-NLS-1$
+	}
+
+	public void tearDown() {
+		changes = null;
+		lastQueue = null;
+	}
+}
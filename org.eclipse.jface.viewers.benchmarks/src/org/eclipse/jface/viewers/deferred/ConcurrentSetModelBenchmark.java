@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.deferred;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Measures <code>ConcurrentSetModel</code> throughput. Producer threads add
+ * one element per call and remove every other element again, while a listener
+ * counts the notifications it receives.
+ *
+ * @since 1.0
+ */
+final class ConcurrentSetModelBenchmark extends Benchmark {
+
+	private int producers;
+
+	private Object[][] changes;
+
+	private int notifications;
+
+	ConcurrentSetModelBenchmark(int producers) {
+		super("ConcurrentSetModel.addAll/removeAll (" + producers + " producers)"); //$NON-NLS-1$ //$NON-NLS-2$
+		this.producers = producers;
+	}
+
+	public void setUp(int size) {
+		Object[] elements = createShuffledStrings(size);
+		changes = new Object[size][];
+		for (int i = 0; i < size; i++) {
+			changes[i] = new Object[] { elements[i] };
+		}
+	}
+
+	public Object run() {
+		final ConcurrentSetModel model = new ConcurrentSetModel();
+		final int[] counter = new int[1];
+		model.addListener(new IConcurrentModelListener() {
+			public void add(Object[] added) {
+				counter[0]++;
+			}
+
+			public void remove(Object[] removed) {
+				counter[0]++;
+			}
+
+			public void update(Object[] changed) {
+				counter[0]++;
+			}
+
+			public void setContents(Object[] newContents) {
+				counter[0]++;
+			}
+		});
+
+		Thread[] threads = new Thread[producers];
+		for (int i = 0; i < producers; i++) {
+			final int first = i * changes.length / producers;
+			final int last = (i + 1) * changes.length / producers;
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = first; j < last; j++) {
+						model.addAll(changes[j]);
+						if (j % 2 == 1) {
+							model.removeAll(changes[j - 1]);
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < producers; i++) {
+			try {
+				threads[i].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		model.flush();
+		notifications = counter[0];
+		return model;
+	}
+
+	public String getDetail() {
+		return "notifications=" + notifications; //$NON-NLS-1$
+	}
+
+	public void tearDown() {
+		changes = null;
+	}
+}
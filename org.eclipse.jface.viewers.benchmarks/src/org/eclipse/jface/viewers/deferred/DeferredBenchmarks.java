@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.deferred;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Creates the benchmarks for the <code>org.eclipse.jface.viewers.deferred</code>
+ * package.
+ * 
+ * @since 1.0
+ * @noreference This class is not intended to be referenced by clients.
+ */
+public final class DeferredBenchmarks {
+
+	private DeferredBenchmarks() {
+		// not instantiated
+	}
+
+	/**
+	 * Returns the benchmarks of this package.
+	 * 
+	 * @return the benchmarks of this package
+	 */
+	public static Benchmark[] createBenchmarks() {
+		return new Benchmark[] {
+				new LazySortedCollectionBenchmark(LazySortedCollectionBenchmark.ADD),
+				new LazySortedCollectionBenchmark(LazySortedCollectionBenchmark.GET_RANGE),
+				new LazySortedCollectionBenchmark(LazySortedCollectionBenchmark.REMOVE_RANGE),
+				new LazySortedCollectionBenchmark(LazySortedCollectionBenchmark.UPDATE),
+				new ChangeQueueBenchmark(1),
+				new ChangeQueueBenchmark(4),
+				new ConcurrentSetModelBenchmark(1),
+				new ConcurrentSetModelBenchmark(4) };
+	}
+}
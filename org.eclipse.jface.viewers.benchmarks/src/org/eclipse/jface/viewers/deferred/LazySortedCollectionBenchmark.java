@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.deferred;
+
+import java.util.Comparator;
+
+import org.eclipse.jface.viewers.benchmarks.Benchmark;
+
+/**
+ * Measures the operations <code>BackgroundContentProvider</code> performs on
+ * its <code>LazySortedCollection</code>: filling it, sorting a visible page
+ * out of the middle, truncating it, and repositioning elements whose sort key
+ * changed. The range operations start from a freshly filled, unsorted
+ * collection on every invocation; the update starts from a collection whose
+ * middle page has been sorted, and changes the keys of one element in a
+ * hundred by a small amount.
+ * 
+ * @since 1.0
+ */
+final class LazySortedCollectionBenchmark extends Benchmark {
+
+	static final int ADD = 0;
+
+	static final int GET_RANGE = 1;
+
+	static final int REMOVE_RANGE = 2;
+
+	static final int UPDATE = 3;
+
+	/**
+	 * Number of rows in a visible page.
+	 */
+	private static final int PAGE = 50;
+
+	private static final String[] NAMES = { "LazySortedCollection.addAll", //$NON-NLS-1$
+			"LazySortedCollection.getRange", //$NON-NLS-1$
+			"LazySortedCollection.removeRange", //$NON-NLS-1$
+			"LazySortedCollection.updateAll" }; //$NON-NLS-1$
+
+	/**
+	 * Orders the integer elements by their entry in <code>keys</code>.
+	 */
+	private final Comparator order = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			int i1 = keys[((Integer) o1).intValue()];
+			int i2 = keys[((Integer) o2).intValue()];
+			return i1 < i2 ? -1 : (i1 == i2 ? 0 : 1);
+		}
+	};
+
+	private int mode;
+
+	private Object[] elements;
+
+	private int[] keys;
+
+	private Object[] changed;
+
+	private LazySortedCollection collection;
+
+	LazySortedCollectionBenchmark(int mode) {
+		super(NAMES[mode]);
+		this.mode = mode;
+	}
+
+	public void setUp(int size) {
+		elements = createShuffledIntegers(size);
+		keys = new int[size];
+		changed = new Object[size / 100];
+		System.arraycopy(elements, 0, changed, 0, changed.length);
+	}
+
+	private LazySortedCollection fill() {
+		LazySortedCollection result = new LazySortedCollection(order);
+		result.addAll(elements);
+		return result;
+	}
+
+	public void prepare() {
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = i;
+		}
+		if (mode != ADD) {
+			collection = fill();
+		}
+		if (mode == UPDATE) {
+			Object[] page = new Object[Math.min(PAGE, elements.length)];
+			collection.getRange(page, (elements.length - page.length) / 2, true);
+			// looking up an element creates the index of elements once
+			collection.contains(elements[0]);
+			for (int i = 0; i < changed.length; i++) {
+				keys[((Integer) changed[i]).intValue()] += (i % 2 == 0) ? 3 : -3;
+			}
+		}
+	}
+
+	public Object run() {
+		switch (mode) {
+		case ADD:
+			return fill();
+		case GET_RANGE: {
+			Object[] page = new Object[Math.min(PAGE, elements.length)];
+			collection.getRange(page, (elements.length - page.length) / 2, true);
+			return page;
+		}
+		case REMOVE_RANGE:
+			collection.removeRange(elements.length / 4, elements.length / 2);
+			return collection;
+		default:
+			collection.updateAll(changed);
+			return collection;
+		}
+	}
+
+	public void tearDown() {
+		elements = null;
+		keys = null;
+		changed = null;
+		collection = null;
+	}
+}
@@ -131,6 +131,9 @@ public abstract class AbstractListViewer extends StructuredViewer {
      */
     public void add(Object[] elements) {
         assertElementsNotNull(elements);
+        if (recordBatchedAdd(null, elements)) {
+            return;
+        }
         Object[] filtered = filter(elements);
         ILabelProvider labelProvider = (ILabelProvider) getLabelProvider();
         for (int i = 0; i < filtered.length; i++) {
@@ -164,6 +167,7 @@ public abstract class AbstractListViewer extends StructuredViewer {
 	 * @since 3.3
 	 */
     public void insert(Object element, int position) {
+    	flushBatch();
     	if (getComparator() != null || hasFilters()) {
     		add(element);
     		return;
@@ -453,6 +457,9 @@ public abstract class AbstractListViewer extends StructuredViewer {
         if (elements.length == 0) {
         	return;
         }
+        if (recordBatchedRemove(elements)) {
+            return;
+        }
         preservingSelection(new Runnable() {
             public void run() {
                 internalRemove(elements);
@@ -460,6 +467,20 @@ public abstract class AbstractListViewer extends StructuredViewer {
         });
     }
 
+    /* (non-Javadoc)
+     * @see org.eclipse.jface.viewers.StructuredViewer#applyBatchedAdd(java.lang.Object, java.lang.Object[])
+     */
+    void applyBatchedAdd(Object parent, Object[] elements) {
+        add(elements);
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.jface.viewers.StructuredViewer#applyBatchedRemove(java.lang.Object[])
+     */
+    void applyBatchedRemove(Object[] elements) {
+        remove(elements);
+    }
+
     /**
      * Removes the given element from this list viewer.
      * The selection is updated if necessary.
@@ -45,7 +45,27 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 		 * ILazyStructuredContentProvider as an ILazyStructuredContentProvider
 		 * is only queried on the virtual callback.
 		 */
-		private Object[] cachedElements = new Object[0];
+		private VirtualElementCache cachedElements = new VirtualElementCache();
+
+		/**
+		 * Indices of the rows to request from an ILazyRangeContentProvider,
+		 * collected since the last call to requestRanges.
+		 */
+		private int[] pendingIndices = new int[16];
+
+		private int pendingCount = 0;
+
+		/**
+		 * The first row of the last requested ranges, used to determine the
+		 * direction of scrolling.
+		 */
+		private int lastRequestStart = 0;
+
+		private Runnable requestRunnable = new Runnable() {
+			public void run() {
+				requestRanges();
+			}
+		};
 
 		/**
 		 * Create a new instance of the receiver.
@@ -80,6 +100,12 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 						// Didn't find it so make a request
 						// Keep looking if it is not in the cache.
 						IContentProvider contentProvider = getContentProvider();
+						// Rows of a range provider are requested together once the 
+						// pending events have been handled
+						if (contentProvider instanceof ILazyRangeContentProvider) {
+							addPendingIndex(index);
+							return;
+						}
 						// If we are building lazily then request lookup now
 						if (contentProvider instanceof ILazyContentProvider) {
 							((ILazyContentProvider) contentProvider)
@@ -95,6 +121,97 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 			});
 		}
 
+		/**
+		 * Remembers that the given row needs to be requested, and schedules
+		 * the request if it is the first one since the last request.
+		 * 
+		 * @param index
+		 */
+		private void addPendingIndex(int index) {
+			if (pendingCount == 0) {
+				getControl().getDisplay().asyncExec(requestRunnable);
+			}
+			if (pendingCount == pendingIndices.length) {
+				int[] newIndices = new int[pendingCount * 2];
+				System.arraycopy(pendingIndices, 0, newIndices, 0, pendingCount);
+				pendingIndices = newIndices;
+			}
+			pendingIndices[pendingCount++] = index;
+		}
+
+		/**
+		 * Requests the pending rows from the content provider, one call per
+		 * contiguous range of rows. The ranges are extended by the read-ahead
+		 * in the direction of scrolling.
+		 */
+		private void requestRanges() {
+			int[] indices = new int[pendingCount];
+			System.arraycopy(pendingIndices, 0, indices, 0, pendingCount);
+			pendingCount = 0;
+			if (virtualManager != this || getControl().isDisposed()
+					|| !(getContentProvider() instanceof ILazyRangeContentProvider)) {
+				return;
+			}
+			ILazyRangeContentProvider provider = (ILazyRangeContentProvider) getContentProvider();
+			int itemCount = doGetItemCount();
+
+			// Skip the rows that have been removed or replaced in the meantime
+			int count = 0;
+			for (int i = 0; i < indices.length; i++) {
+				int index = indices[i];
+				if (index < itemCount && doGetItem(index).getData() == null) {
+					indices[count++] = index;
+				}
+			}
+			Arrays.sort(indices, 0, count);
+			
+			// Split the rows into ranges
+			int[] starts = new int[count];
+			int[] ends = new int[count];
+			int ranges = 0;
+			for (int i = 0; i < count;) {
+				int start = indices[i];
+				int end = start + 1;
+				while (++i < count && indices[i] <= end) {
+					end = indices[i] + 1;
+				}
+				starts[ranges] = start;
+				ends[ranges] = end;
+				ranges++;
+			}
+			if (ranges == 0) {
+				return;
+			}
+
+			// Extend the first range upwards when scrolling up, and the last
+			// range downwards otherwise, up to the first row that has an element
+			if (readAhead > 0) {
+				if (starts[0] < lastRequestStart) {
+					int limit = Math.max(starts[0] - readAhead, 0);
+					while (starts[0] > limit
+							&& doGetItem(starts[0] - 1).getData() == null) {
+						starts[0]--;
+					}
+				} else {
+					int last = ranges - 1;
+					int limit = Math.min(ends[last] + readAhead, itemCount);
+					while (ends[last] < limit
+							&& doGetItem(ends[last]).getData() == null) {
+						ends[last]++;
+					}
+				}
+			}
+			lastRequestStart = starts[0];
+
+			for (int i = 0; i < ranges; i++) {
+				// The content provider may have changed the number of rows
+				int end = Math.min(ends[i], doGetItemCount());
+				if (starts[i] < end) {
+					provider.updateElements(starts[i], end - starts[i]);
+				}
+			}
+		}
+
 		/**
 		 * Get the element at index.Resolve it lazily if this is available.
 		 *
@@ -104,8 +221,8 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 		protected Object resolveElement(int index) {
 
 			Object element = null;
-			if (index < cachedElements.length) {
-				element = cachedElements[index];
+			if (index < cachedElements.size()) {
+				element = cachedElements.get(index);
 			}
 
 			return element;
@@ -121,14 +238,11 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 
 			int requiredCount = doGetItemCount() + 1;
 
-			Object[] newCache = new Object[requiredCount];
-			System.arraycopy(cachedElements, 0, newCache, 0, index);
-			if (index < cachedElements.length) {
-				System.arraycopy(cachedElements, index, newCache, index + 1,
-						cachedElements.length - index);
+			if (cachedElements.size() < index) {
+				cachedElements.setSize(index);
 			}
-			newCache[index] = element;
-			cachedElements = newCache;
+			cachedElements.insert(element, index);
+			cachedElements.setSize(requiredCount);
 
 			doSetItemCount(requiredCount);
 		}
@@ -140,23 +254,12 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 		 * @param indices
 		 */
 		public void removeIndices(int[] indices) {
-			if (indices.length == 1) {
-				removeIndicesFromTo(indices[0], indices[0]);
-			}
-			int requiredCount = doGetItemCount() - indices.length;
-
-			Arrays.sort(indices);
-			Object[] newCache = new Object[requiredCount];
-			int indexInNewCache = 0;
-			int nextToSkip = 0;
-			for (int i = 0; i < cachedElements.length; i++) {
-				if (nextToSkip < indices.length && i == indices[nextToSkip]) {
-					nextToSkip++;
-				} else {
-					newCache[indexInNewCache++] = cachedElements[i];
-				}
-			}
-			cachedElements = newCache;
+			int itemCount = doGetItemCount();
+			// repeated indices and indices beyond the items remove nothing
+			int[] removed = VirtualElementCache.distinctIndices(indices,
+					itemCount);
+			cachedElements.removeIndices(removed);
+			cachedElements.setSize(itemCount - removed.length);
 		}
 
 		/**
@@ -167,46 +270,37 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 		 * @param to
 		 */
 		public void removeIndicesFromTo(int from, int to) {
-			int indexAfterTo = to + 1;
-			Object[] newCache = new Object[cachedElements.length
-					- (indexAfterTo - from)];
-			System.arraycopy(cachedElements, 0, newCache, 0, from);
-			if (indexAfterTo < cachedElements.length) {
-				System.arraycopy(cachedElements, indexAfterTo, newCache, from,
-						cachedElements.length - indexAfterTo);
-			}
+			cachedElements.removeRange(from, Math.min(to,
+					cachedElements.size() - 1));
 		}
 
 		/**
 		 * @param element
-		 * @return the index of the element in the cache, or null
+		 * @return the index of the element in the cache, or -1
 		 */
 		public int find(Object element) {
-			return Arrays.asList(cachedElements).indexOf(element);
+			return cachedElements.indexOf(element, getComparer());
 		}
 
 		/**
 		 * @param count
 		 */
 		public void adjustCacheSize(int count) {
-			if (count == cachedElements.length) {
-				return;
-			} else if (count < cachedElements.length) {
-				Object[] newCache = new Object[count];
-				System.arraycopy(cachedElements, 0, newCache, 0, count);
-				cachedElements = newCache;
-			} else {
-				Object[] newCache = new Object[count];
-				System.arraycopy(cachedElements, 0, newCache, 0,
-						cachedElements.length);
-				cachedElements = newCache;
-			}
+			cachedElements.setSize(count);
 		}
 
 	}
 
 	private VirtualManager virtualManager;
 
+	private boolean useIncrementalRefresh;
+
+	/**
+	 * Number of rows beyond the visible rows that are requested from an
+	 * ILazyRangeContentProvider.
+	 */
+	private int readAhead = 0;
+
 	/**
 	 * Create the new viewer for table like widgets
 	 */
@@ -255,6 +349,9 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 		assertElementsNotNull(elements);
 		if (checkBusy())
 			return;
+		if (recordBatchedAdd(null, elements)) {
+			return;
+		}
 		Object[] filtered = filter(elements);
 
 		for (int i = 0; i < filtered.length; i++) {
@@ -524,8 +621,8 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 				Object element = null;
 				// See if it is cached
 				int selectionIndex = selectionIndices[i];
-				if (selectionIndex < virtualManager.cachedElements.length) {
-					element = virtualManager.cachedElements[selectionIndex];
+				if (selectionIndex < virtualManager.cachedElements.size()) {
+					element = virtualManager.cachedElements.get(selectionIndex);
 				}
 				if (element == null) {
 					// Not cached so try the item's data
@@ -585,6 +682,7 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 	 *      java.lang.Object)
 	 */
 	protected void inputChanged(Object input, Object oldInput) {
+		clearLabelCache();
 		getControl().setRedraw(false);
 		try {
 			preservingSelection(new Runnable() {
@@ -615,6 +713,7 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 	 */
 	public void insert(Object element, int position) {
 		applyEditorValue();
+		flushBatch();
 		if (getComparator() != null || hasFilters()) {
 			add(element);
 			return;
@@ -673,8 +772,9 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 				&& (contentProvider instanceof IStructuredContentProvider)) {
 			// Don't cache if the root is null but cache if it is not lazy.
 			if (root != null) {
-				virtualManager.cachedElements = getSortedChildren(root);
-				doSetItemCount(virtualManager.cachedElements.length);
+				Object[] children = getSortedChildren(root);
+				virtualManager.cachedElements.setElements(children);
+				doSetItemCount(children.length);
 			}
 		}
 		doClearAll();
@@ -700,6 +800,10 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 
 		Object[] children = getSortedChildren(getRoot());
 		Item[] items = doGetItems();
+		if (useIncrementalRefresh
+				&& internalIncrementalRefreshAll(children, items, updateLabels)) {
+			return;
+		}
 		int min = Math.min(children.length, items.length);
 		for (int i = 0; i < min; ++i) {
 
@@ -758,6 +862,84 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 		}
 	}
 
+	/**
+	 * Refreshes the table by applying a minimal edit script between the
+	 * elements of the current items and the given children. Items of kept
+	 * elements stay where they are and are only relabelled if
+	 * <code>updateLabels</code> is <code>true</code>; items of removed
+	 * elements are disposed and items for inserted elements are created.
+	 *
+	 * @param children
+	 *            the sorted and filtered children of the root
+	 * @param items
+	 *            the current items
+	 * @param updateLabels
+	 *            <code>true</code> to update the labels of kept elements
+	 * @return <code>false</code> if the elements differ too much, in which
+	 *         case nothing has been changed
+	 *
+	 * @since 3.6
+	 */
+	private boolean internalIncrementalRefreshAll(Object[] children,
+			Item[] items, boolean updateLabels) {
+		Object[] oldElements = new Object[items.length];
+		for (int i = 0; i < items.length; i++) {
+			oldElements[i] = items[i].getData();
+		}
+		int[] matches = ElementDiff.match(oldElements, children,
+				getComparer(), ElementDiff.DEFAULT_MAX_EDITS);
+		if (matches == null) {
+			return false;
+		}
+		boolean[] kept = new boolean[items.length];
+		for (int i = 0; i < matches.length; i++) {
+			if (matches[i] != -1) {
+				kept[matches[i]] = true;
+			}
+		}
+		// disassociate all removed items before any associate, see
+		// internalRefreshAll
+		int[] removed = new int[items.length];
+		int removedCount = 0;
+		for (int i = 0; i < items.length; i++) {
+			if (!kept[i]) {
+				if (items[i].getData() != null) {
+					disassociate(items[i]);
+				}
+				removed[removedCount++] = i;
+			}
+		}
+		if (removedCount > 0) {
+			if (removedCount < removed.length) {
+				System.arraycopy(removed, 0, removed = new int[removedCount],
+						0, removedCount);
+			}
+			doRemove(removed);
+			// Workaround for 1GDGN4Q: ITPUI:WIN2000 - TableViewer icons get
+			// scrunched
+			if (doGetItemCount() == 0) {
+				doRemoveAll();
+			}
+		}
+		// kept items are in the same order as their new elements, and each
+		// insertion happens at the index the new element will end up at
+		for (int i = 0; i < children.length; i++) {
+			if (matches[i] == -1) {
+				createItem(children[i], i);
+			} else {
+				Item item = items[matches[i]];
+				if (updateLabels) {
+					updateItem(item, children[i]);
+				} else {
+					// associate the new element, even if equal to the old
+					// one, to remove stale references (see bug 31314)
+					associate(children[i], item);
+				}
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Removes the given elements from this table viewer.
 	 *
@@ -829,6 +1011,9 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 		if (elements.length == 0) {
 			return;
 		}
+		if (recordBatchedRemove(elements)) {
+			return;
+		}
 		preservingSelection(new Runnable() {
 			public void run() {
 				internalRemove(elements);
@@ -987,8 +1172,9 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 			if (count != list.size()) {// As this is expensive skip it if all
 				// have been found
 				// If it is not lazy we can use the cache
-				for (int i = 0; i < virtualManager.cachedElements.length; i++) {
-					Object element = virtualManager.cachedElements[i];
+				int cacheSize = virtualManager.cachedElements.size();
+				for (int i = 0; i < cacheSize; i++) {
+					Object element = virtualManager.cachedElements.get(i);
 					if (virtualElements.contains(element)) {
 						Item item = doGetItem(i);
 						item.getText();// Be sure to fire the update
@@ -1024,6 +1210,7 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 	public void setItemCount(int count) {
 		if (checkBusy())
 			return;
+		flushBatch();
 		int oldCount = doGetItemCount();
 		if (count < oldCount) {
 			// need to disassociate elements that are being disposed
@@ -1041,6 +1228,74 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 		getControl().redraw();
 	}
 
+	/**
+	 * Configures whether a refresh of the whole table computes a minimal edit
+	 * script between the current items and the new children of the input.
+	 * When enabled, inserting or removing a few elements only creates or
+	 * disposes the affected items; the items of all other elements are kept
+	 * and are relabelled only if the refresh updates labels. When the elements
+	 * differ too much the viewer falls back to updating the items by position.
+	 * <p>
+	 * The default is <code>false</code>. This setting has no effect on tables
+	 * created with <code>SWT.VIRTUAL</code>.
+	 * </p>
+	 * 
+	 * @param enable
+	 *            <code>true</code> to refresh by edit script, and
+	 *            <code>false</code> to refresh by position
+	 * 
+	 * @since 3.6
+	 */
+	public void setUseIncrementalRefresh(boolean enable) {
+		this.useIncrementalRefresh = enable;
+	}
+
+	/**
+	 * Returns whether a refresh of the whole table computes a minimal edit
+	 * script.
+	 * 
+	 * @return <code>true</code> if refreshes use an edit script
+	 * @see #setUseIncrementalRefresh(boolean)
+	 * 
+	 * @since 3.6
+	 */
+	public boolean getUseIncrementalRefresh() {
+		return useIncrementalRefresh;
+	}
+
+	/**
+	 * Sets the number of rows that are requested from an
+	 * {@link ILazyRangeContentProvider} in addition to the rows that became
+	 * visible. The additional rows follow the visible rows in the direction of
+	 * scrolling, so that they are known before they are scrolled into view.
+	 * Rows that already have an element are not requested again.
+	 * <p>
+	 * The default is 0. This setting has no effect on other content providers.
+	 * </p>
+	 * 
+	 * @param rows
+	 *            the number of additional rows, at least 0
+	 * 
+	 * @since 3.6
+	 */
+	public void setReadAhead(int rows) {
+		Assert.isTrue(rows >= 0);
+		this.readAhead = rows;
+	}
+
+	/**
+	 * Returns the number of rows that are requested from an
+	 * {@link ILazyRangeContentProvider} in addition to the visible rows.
+	 * 
+	 * @return the number of additional rows
+	 * @see #setReadAhead(int)
+	 * 
+	 * @since 3.6
+	 */
+	public int getReadAhead() {
+		return readAhead;
+	}
+
 	/**
 	 * Replace the element at the given index with the given element. This
 	 * method will not call the content provider to verify. <strong>Note that
@@ -1055,6 +1310,7 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 	public void replace(Object element, int index) {
 		if (checkBusy())
 			return;
+		flushBatch();
 		Item item = doGetItem(index);
 		refreshItem(item, element);
 	}
@@ -1075,6 +1331,25 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 		doClear(index);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jface.viewers.StructuredViewer#applyBatchedAdd(java.lang.Object,
+	 *      java.lang.Object[])
+	 */
+	void applyBatchedAdd(Object parent, Object[] elements) {
+		add(elements);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jface.viewers.StructuredViewer#applyBatchedRemove(java.lang.Object[])
+	 */
+	void applyBatchedRemove(Object[] elements) {
+		remove(elements);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -24,7 +24,9 @@ import java.util.LinkedList;
 import java.util.List;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jface.util.SafeRunnable;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.BusyIndicator;
@@ -85,6 +87,37 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 */
 	private int expandToLevel = 0;
 
+	/**
+	 * Whether structural refreshes reconcile the children of an item by edit
+	 * script instead of by position.
+	 *
+	 * @see #setUseIncrementalRefresh(boolean)
+	 */
+	private boolean useIncrementalRefresh;
+
+	/**
+	 * The number of items relabelled while updating children during the
+	 * most recent refresh.
+	 *
+	 * @see #getRelabelCount()
+	 */
+	private int relabelCount;
+
+	/**
+	 * The incremental expansion in progress, or <code>null</code>.
+	 *
+	 * @see #expandToLevel(Object, int, IProgressMonitor)
+	 */
+	private IncrementalExpansion incrementalExpansion;
+
+	/**
+	 * Index used to find items by element key when hash lookup is disabled,
+	 * or <code>null</code> if no key provider has been set.
+	 *
+	 * @see #setElementKeyProvider(IElementKeyProvider)
+	 */
+	private ElementKeyIndex elementKeyIndex;
+
 	/**
 	 * Safe runnable used to update an item.
 	 */
@@ -134,6 +167,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		assertElementsNotNull(childElements);
 		if (checkBusy())
 			return;
+		if (recordBatchedAdd(parentElementOrTreePath, childElements)) {
+			return;
+		}
 		Widget[] widgets = internalFindItems(parentElementOrTreePath);
 		// If parent hasn't been realized yet, just ignore the add.
 		if (widgets.length == 0) {
@@ -797,6 +833,7 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 						} else {
 							children = getSortedChildren(parentElement);
 						}
+						reserveElementMap(children.length);
 						for (int i = 0; i < children.length; i++) {
 							createTreeItem(widget, children[i], -1);
 						}
@@ -834,9 +871,10 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	protected void disassociate(Item item) {
 		super.disassociate(item);
 		// recursively unmapping the items is only required when
-		// the hash map is used. In the other case disposing
-		// an item will recursively dispose its children.
-		if (usingElementMap()) {
+		// the hash map, the key index or the label cache is used. In the
+		// other case disposing an item will recursively dispose its children.
+		if (usingElementMap() || usingElementKeyIndex()
+				|| needsDisassociateChildren()) {
 			disassociateChildren(item);
 		}
 	}
@@ -857,6 +895,57 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 	}
 
+	/* (non-Javadoc) Method declared on StructuredViewer. */
+	protected void mapElement(Object element, Widget item) {
+		super.mapElement(element, item);
+		if (usingElementKeyIndex() && item instanceof Item) {
+			elementKeyIndex.add(element, item);
+		}
+	}
+
+	/* (non-Javadoc) Method declared on StructuredViewer. */
+	protected void unmapElement(Object element) {
+		super.unmapElement(element);
+		if (usingElementKeyIndex()) {
+			elementKeyIndex.removeAll(element);
+		}
+	}
+
+	/* (non-Javadoc) Method declared on StructuredViewer. */
+	protected void unmapElement(Object element, Widget item) {
+		super.unmapElement(element, item);
+		if (usingElementKeyIndex()) {
+			elementKeyIndex.remove(element, item);
+		}
+	}
+
+	/* (non-Javadoc) Method declared on StructuredViewer. */
+	protected void unmapAllElements() {
+		super.unmapAllElements();
+		if (usingElementKeyIndex()) {
+			elementKeyIndex.clear();
+		}
+	}
+
+	/* (non-Javadoc) Method declared on StructuredViewer. */
+	void reserveElementMap(int count) {
+		super.reserveElementMap(count);
+		if (usingElementKeyIndex()) {
+			elementKeyIndex.reserve(count);
+		}
+	}
+
+	/**
+	 * Returns whether items are found using the key index set up by
+	 * {@link #setElementKeyProvider(IElementKeyProvider)}, which is only the
+	 * case if hash lookup is disabled.
+	 *
+	 * @return <code>true</code> if the key index is used
+	 */
+	/* package */boolean usingElementKeyIndex() {
+		return elementKeyIndex != null && !usingElementMap();
+	}
+
 	/* (non-Javadoc) Method declared on StructuredViewer. */
 	protected Widget doFindInputItem(Object element) {
 		// compare with root
@@ -879,6 +968,10 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 			return null;
 		}
 
+		if (usingElementKeyIndex()) {
+			return elementKeyIndex.find(element);
+		}
+
 		Item[] items = getChildren(getControl());
 		if (items != null) {
 			for (int i = 0; i < items.length; i++) {
@@ -1054,6 +1147,87 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 	}
 
+	/**
+	 * Expands all nodes of the viewer's tree incrementally, starting with the
+	 * root. This method is equivalent to
+	 * <code>expandToLevel(getRoot(), ALL_LEVELS, monitor)</code>.
+	 *
+	 * @param monitor
+	 *            the monitor to report progress to and to check for
+	 *            cancellation, or <code>null</code>
+	 * @see #expandToLevel(Object, int, IProgressMonitor)
+	 *
+	 * @since 3.6
+	 */
+	public void expandAll(IProgressMonitor monitor) {
+		expandToLevel(getRoot(), ALL_LEVELS, monitor);
+	}
+
+	/**
+	 * Expands all ancestors of the given element or tree path so that the given
+	 * element becomes visible in this viewer's tree control, and then expands
+	 * the subtree rooted at the given element to the given level
+	 * incrementally.
+	 * <p>
+	 * This method returns after expanding the ancestors. The subtree is
+	 * expanded in slices of a few milliseconds each, which are run from the
+	 * event loop of the display, so that the user interface stays responsive
+	 * while a large subtree is expanded. The items that are visible in the tree
+	 * control when a slice starts are expanded first.
+	 * </p>
+	 * <p>
+	 * The monitor is told about one unit of work per expanded item, with an
+	 * unknown total. The expansion stops when the monitor is cancelled, when
+	 * the input of the viewer changes, when the control is disposed, or when
+	 * another incremental expansion is started. The monitor's
+	 * <code>done</code> method is called in all cases.
+	 * </p>
+	 *
+	 * @param elementOrTreePath
+	 *            the element
+	 * @param level
+	 *            non-negative level, or <code>ALL_LEVELS</code> to expand all
+	 *            levels of the tree
+	 * @param monitor
+	 *            the monitor to report progress to and to check for
+	 *            cancellation, or <code>null</code>
+	 *
+	 * @since 3.6
+	 */
+	public void expandToLevel(Object elementOrTreePath, int level,
+			IProgressMonitor monitor) {
+		if (monitor == null) {
+			monitor = new NullProgressMonitor();
+		}
+		cancelIncrementalExpansion();
+		if (checkBusy()) {
+			monitor.done();
+			return;
+		}
+		Widget w = internalExpand(elementOrTreePath, true);
+		if (w == null) {
+			monitor.done();
+			return;
+		}
+		incrementalExpansion = new IncrementalExpansion(this, w, level, monitor);
+		incrementalExpansion.start();
+	}
+
+	/**
+	 * Stops the incremental expansion in progress, if any. Items that have
+	 * been expanded already remain expanded.
+	 *
+	 * @see #expandToLevel(Object, int, IProgressMonitor)
+	 *
+	 * @since 3.6
+	 */
+	public void cancelIncrementalExpansion() {
+		if (incrementalExpansion != null) {
+			incrementalExpansion.cancel();
+			incrementalExpansion = null;
+		}
+	}
+
 	/**
 	 * Fires a tree collapsed event. Only listeners registered at the time this
 	 * method is called are notified.
@@ -1463,6 +1637,8 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 * tree and handles the automatic expand feature.
 	 */
 	protected void inputChanged(Object input, Object oldInput) {
+		clearLabelCache();
+		cancelIncrementalExpansion();
 		preservingSelection(new Runnable() {
 			public void run() {
 	            Control tree = getControl();
@@ -1701,14 +1877,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 */
 	protected void internalExpandToLevel(Widget widget, int level) {
 		if (level == ALL_LEVELS || level > 0) {
-			if (widget instanceof Item && widget.getData() != null
-					&& !isExpandable((Item) widget, null, widget.getData())) {
+			if (!internalExpandOne(widget)) {
 				return;
 			}
-			createChildren(widget);
-			if (widget instanceof Item) {
-				setExpanded((Item) widget, true);
-			}
 			if (level == ALL_LEVELS || level > 1) {
 				Item[] children = getChildren(widget);
 				if (children != null) {
@@ -1722,6 +1893,26 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 	}
 
+	/**
+	 * Creates the children of the given widget and expands it, without
+	 * expanding the children.
+	 *
+	 * @param widget
+	 *            the widget
+	 * @return <code>false</code> if the widget is not expandable
+	 */
+	/* package */boolean internalExpandOne(Widget widget) {
+		if (widget instanceof Item && widget.getData() != null
+				&& !isExpandable((Item) widget, null, widget.getData())) {
+			return false;
+		}
+		createChildren(widget);
+		if (widget instanceof Item) {
+			setExpanded((Item) widget, true);
+		}
+		return true;
+	}
+
 	/**
 	 * Non-recursively tries to find the given element as a child of the given
 	 * parent (item or tree).
@@ -1781,6 +1972,7 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 
 	/* (non-Javadoc) Method declared on StructuredViewer. */
 	protected void internalRefresh(Object element, boolean updateLabels) {
+		relabelCount = 0;
 		// If element is null, do a full refresh.
 		if (element == null) {
 			internalRefresh(getControl(), getRoot(), true, updateLabels);
@@ -2149,6 +2341,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 		if (checkBusy())
 			return;
+		if (recordBatchedRemove(elementsOrTreePaths)) {
+			return;
+		}
 		preservingSelection(new Runnable() {
 			public void run() {
 				internalRemove(elementsOrTreePaths);
@@ -2181,6 +2376,7 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 		if (checkBusy())
 			return;
+		flushBatch();
 		preservingSelection(new Runnable() {
 			public void run() {
 				internalRemove(parent, elements);
@@ -2206,6 +2402,25 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		remove(new Object[] { elementsOrTreePaths });
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jface.viewers.StructuredViewer#applyBatchedAdd(java.lang.Object,
+	 *      java.lang.Object[])
+	 */
+	void applyBatchedAdd(Object parent, Object[] elements) {
+		add(parent, elements);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jface.viewers.StructuredViewer#applyBatchedRemove(java.lang.Object[])
+	 */
+	void applyBatchedRemove(Object[] elements) {
+		remove(elements);
+	}
+
 	/**
 	 * Removes all items from the given control.
 	 *
@@ -2301,6 +2516,33 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		expandToLevel = level;
 	}
 
+	/**
+	 * Sets the provider of stable element keys used to find the items of
+	 * elements when hash lookup is disabled. The viewer then keeps an index
+	 * from the keys of the elements it shows to their items, so that finding
+	 * the item of an element no longer searches the whole tree. Unlike hash
+	 * lookup, the index does not rely on the <code>equals</code> and
+	 * <code>hashCode</code> methods of the elements, which may therefore
+	 * change while the elements are shown.
+	 * <p>
+	 * The index is not used if hash lookup is enabled. This must be called
+	 * before the viewer is given an input (via <code>setInput</code>).
+	 * </p>
+	 *
+	 * @param keyProvider
+	 *            the provider of the element keys, or <code>null</code> to
+	 *            search the tree for items
+	 * @see #setUseHashlookup(boolean)
+	 *
+	 * @since 3.6
+	 */
+	public void setElementKeyProvider(IElementKeyProvider keyProvider) {
+		Assert.isTrue(getInput() == null,
+				"Can only set the key provider before input has been set");//$NON-NLS-1$
+		elementKeyIndex = keyProvider == null ? null : new ElementKeyIndex(
+				keyProvider);
+	}
+
 	/**
 	 * The <code>AbstractTreeViewer</code> implementation of this method
 	 * checks to ensure that the content provider is an
@@ -2585,6 +2827,17 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 
 		Item[] items = getChildren(widget);
+
+		if (useIncrementalRefresh
+				&& reconcileChildren(widget, elementChildren, items,
+						updateLabels)) {
+			// WORKAROUND
+			if (widget == tree && oldCnt == 0 && getItemCount(tree) != 0) {
+				tree.setRedraw(false);
+				tree.setRedraw(true);
+			}
+			return;
+		}
 		
 		// save the expanded elements
 		CustomHashtable expanded = newHashtable(CustomHashtable.DEFAULT_CAPACITY); // assume
@@ -2676,11 +2929,13 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 				associate(newElement, item);
 				updatePlus(item, newElement);
 				updateItem(item, newElement);
+				relabelCount++;
 			} else {
 				// old and new elements are equal
 				updatePlus(item, newElement);
 				if (updateLabels) {
 					updateItem(item, newElement);
+					relabelCount++;
 				}
 			}
 		}
@@ -2702,6 +2957,7 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 			for (int i = min; i < elementChildren.length; ++i) {
 				createTreeItem(widget, elementChildren[i], i);
 			}
+			relabelCount += elementChildren.length - min;
 
 			// Need to restore expanded state in a separate pass
 			// because createTreeItem does not return the new item.
@@ -2731,6 +2987,279 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 	}
 
+	/**
+	 * Updates the given items to correspond to the given child elements by
+	 * applying a minimal edit script. Items of kept elements keep their
+	 * position relative to each other, their children and their expanded
+	 * state; they are only relabelled if <code>updateLabels</code> is
+	 * <code>true</code>. Elements that were removed at one position and
+	 * inserted at another, because they moved, are paired using the comparer.
+	 * Since items cannot be reordered, the item of a moved element is moved
+	 * by transplanting its data, labels, children and expanded states into a
+	 * new item at the new position, without asking the label provider. Items
+	 * of the other removed elements are disposed and new items are created
+	 * for the other inserted elements.
+	 * <p>
+	 * If the edit script is too long, for example because most children were
+	 * reordered, all items are treated as removed, so that the moved ones are
+	 * still transplanted, as long as at least half of the new children are
+	 * moved.
+	 * </p>
+	 *
+	 * @param widget
+	 *            the parent widget
+	 * @param elementChildren
+	 *            the new child elements
+	 * @param items
+	 *            the current child items
+	 * @param updateLabels
+	 *            <code>true</code> to update labels for kept and moved
+	 *            elements
+	 * @return <code>false</code> if the elements differ too much, in which
+	 *         case nothing has been changed
+	 */
+	private boolean reconcileChildren(Widget widget, Object[] elementChildren,
+			Item[] items, boolean updateLabels) {
+		Object[] oldElements = new Object[items.length];
+		for (int i = 0; i < items.length; i++) {
+			oldElements[i] = items[i].getData();
+		}
+		int[] matches = ElementDiff.match(oldElements, elementChildren,
+				getComparer(), ElementDiff.DEFAULT_MAX_EDITS);
+		boolean reordered = matches == null;
+		if (reordered) {
+			matches = new int[elementChildren.length];
+			Arrays.fill(matches, -1);
+		}
+		boolean[] kept = new boolean[items.length];
+		for (int i = 0; i < matches.length; i++) {
+			if (matches[i] != -1) {
+				kept[matches[i]] = true;
+			}
+		}
+
+		// pair the inserted elements with removed items showing them
+		CustomHashtable removed = newHashtable(CustomHashtable.DEFAULT_CAPACITY);
+		for (int i = items.length - 1; i >= 0; i--) {
+			Object data = oldElements[i];
+			if (!kept[i] && data != null) {
+				// a stack of indices, so that duplicates pair in order
+				List indices = (List) removed.get(data);
+				if (indices == null) {
+					indices = new ArrayList();
+					removed.put(data, indices);
+				}
+				indices.add(new Integer(i));
+			}
+		}
+		int[] moves = new int[elementChildren.length];
+		boolean[] moved = new boolean[items.length];
+		int moveCount = 0;
+		for (int i = 0; i < elementChildren.length; i++) {
+			moves[i] = -1;
+			if (matches[i] == -1 && removed.size() > 0) {
+				List indices = (List) removed.get(elementChildren[i]);
+				if (indices != null && !indices.isEmpty()) {
+					moves[i] = ((Integer) indices.remove(indices.size() - 1))
+							.intValue();
+					moved[moves[i]] = true;
+					moveCount++;
+				}
+			}
+		}
+		if (reordered && moveCount * 2 < elementChildren.length) {
+			return false;
+		}
+
+		// dispose of removed items first, since a later disassociate could
+		// remove a mapping made by an associate
+		for (int i = 0; i < items.length; i++) {
+			if (!kept[i] && !moved[i]) {
+				if (items[i].getData() != null) {
+					disassociate(items[i]);
+				}
+				items[i].dispose();
+			}
+		}
+
+		// Items of moved elements stay in place until they are transplanted.
+		// The widget index of the next new item is its index among the new
+		// children plus the number of such items before it, which are those
+		// before the next kept item.
+		int[] nextKeptIndices = new int[elementChildren.length];
+		int nextKeptIndex = items.length;
+		for (int i = elementChildren.length - 1; i >= 0; i--) {
+			nextKeptIndices[i] = nextKeptIndex;
+			if (matches[i] != -1) {
+				nextKeptIndex = matches[i];
+			}
+		}
+		int nextKept = 0;
+		int movedBefore = 0;
+		for (int i = 0; i < elementChildren.length; i++) {
+			Object newElement = elementChildren[i];
+			if (matches[i] == -1) {
+				while (nextKept < nextKeptIndices[i]) {
+					if (moved[nextKept]) {
+						movedBefore++;
+					}
+					nextKept++;
+				}
+				if (moves[i] == -1) {
+					createTreeItem(widget, newElement, i + movedBefore);
+					relabelCount++;
+					continue;
+				}
+				Item from = items[moves[i]];
+				Item item = newItem(widget, SWT.NULL, i + movedBefore);
+				transplantItem(from, item, newElement);
+				from.dispose();
+				moved[moves[i]] = false;
+				if (moves[i] < nextKept) {
+					movedBefore--;
+				}
+				updatePlus(item, newElement);
+				if (updateLabels) {
+					updateItem(item, newElement);
+					relabelCount++;
+				}
+				continue;
+			}
+			Item item = items[matches[i]];
+			Object oldElement = item.getData();
+			if (newElement != oldElement) {
+				// update the data to be the new element, since although the
+				// elements are equal, they may still have different labels or
+				// children
+				unmapElement(oldElement, item);
+				item.setData(newElement);
+				mapElement(newElement, item);
+			}
+			updatePlus(item, newElement);
+			if (updateLabels) {
+				updateItem(item, newElement);
+				relabelCount++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the state of an item into a new item: its element, its labels,
+	 * its children with their own state, and its expanded state. The source
+	 * item no longer shows its element afterwards and can be disposed.
+	 *
+	 * @param from
+	 *            the item to take the state from
+	 * @param to
+	 *            the new item
+	 * @param element
+	 *            the element for the new item, equal to the element of the
+	 *            source item
+	 */
+	private void transplantItem(Item from, Item to, Object element) {
+		Object data = from.getData();
+		if (data != null) {
+			unmapElement(data, from);
+			from.setData(null);
+		}
+		if (element != null) {
+			to.setData(element);
+			mapElement(element, to);
+		}
+		copyItemState(from, to);
+		Item[] children = getChildren(from);
+		for (int i = 0; i < children.length; i++) {
+			transplantItem(children[i], newItem(to, SWT.NULL, i), children[i]
+					.getData());
+		}
+		if (getExpanded(from)) {
+			setExpanded(to, true);
+		}
+	}
+
+	/**
+	 * Copies the labels shown by an item to a new item showing the same
+	 * element. Subclasses in this package extend this to copy further state
+	 * held by the items.
+	 *
+	 * @param from
+	 *            the item to copy from
+	 * @param to
+	 *            the item to copy to
+	 */
+	/* package */void copyItemState(Item from, Item to) {
+		ViewerRow source = getViewerRowFromItem(from);
+		if (source == null) {
+			to.setText(from.getText());
+			to.setImage(from.getImage());
+			return;
+		}
+		// the row may be shared, copy it before getting the other one
+		source = (ViewerRow) source.clone();
+		ViewerRow target = getViewerRowFromItem(to);
+		int columns = Math.max(source.getColumnCount(), 1);
+		for (int i = 0; i < columns; i++) {
+			target.setText(i, source.getText(i));
+			target.setImage(i, source.getImage(i));
+			target.setFont(i, source.getFont(i));
+			target.setForeground(i, source.getForeground(i));
+			target.setBackground(i, source.getBackground(i));
+		}
+	}
+
+	/**
+	 * Configures whether structural refreshes reconcile the children of each
+	 * refreshed item with a minimal edit script instead of by position. When
+	 * enabled, reordering, inserting or removing children keeps the items of
+	 * the other children, including their subtrees and expanded state, and
+	 * only relabels them if the refresh updates labels. Items of moved
+	 * children are moved along with their subtrees, and only new children are
+	 * labelled. When most children are replaced by different ones the viewer
+	 * falls back to updating the items by position.
+	 * <p>
+	 * The default is <code>false</code>. This setting has no effect on trees
+	 * with an <code>ILazyTreeContentProvider</code>.
+	 * </p>
+	 *
+	 * @param enable
+	 *            <code>true</code> to reconcile by edit script, and
+	 *            <code>false</code> to reconcile by position
+	 *
+	 * @since 3.6
+	 */
+	public void setUseIncrementalRefresh(boolean enable) {
+		this.useIncrementalRefresh = enable;
+	}
+
+	/**
+	 * Returns whether structural refreshes reconcile children with a minimal
+	 * edit script.
+	 *
+	 * @return <code>true</code> if refreshes use an edit script
+	 * @see #setUseIncrementalRefresh(boolean)
+	 *
+	 * @since 3.6
+	 */
+	public boolean getUseIncrementalRefresh() {
+		return useIncrementalRefresh;
+	}
+
+	/**
+	 * Returns the number of items whose labels were updated, or that were
+	 * created, while updating the children of refreshed items during the
+	 * most recent <code>refresh</code> or <code>refresh(Object)</code>. This
+	 * is intended for diagnostics, for example to compare the cost of the
+	 * positional and the incremental refresh.
+	 *
+	 * @return the number of relabelled items
+	 *
+	 * @since 3.6
+	 */
+	public int getRelabelCount() {
+		return relabelCount;
+	}
+
 	/** Returns true if children were pruned */
 	/*package*/ boolean optionallyPruneChildren(Item item, Object element) {
 		// need a dummy node if element is expandable;
@@ -2960,6 +3489,7 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		Assert.isNotNull(element);
 		if (checkBusy())
 			return;
+		flushBatch();
 		if (getComparator() != null || hasFilters()) {
 			add(parentElementOrTreePath, new Object[] { element });
 			return;
@@ -0,0 +1,715 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.jface.util.Policy;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Item;
+import org.eclipse.swt.widgets.Listener;
+
+/**
+ * A cell label provider that computes labels on a background thread, for
+ * label providers that need slow model lookups.
+ * <p>
+ * When a cell is updated and its label has not been computed yet, the cell
+ * shows a placeholder and the computation of the label is queued. A single
+ * background thread computes the queued labels by calling
+ * {@link #computeLabel(Object, int, ViewerLabel)}, most recently requested
+ * first. Computed labels are handed back to the UI thread in batches, and
+ * the viewer is updated once per batch for the elements whose labels were
+ * computed.
+ * </p>
+ * <p>
+ * For viewers created with <code>SWT.VIRTUAL</code>, requests for rows that
+ * have been scrolled out of view before their label was computed are
+ * dropped; when such rows are painted again, the labels they still lack are
+ * requested again.
+ * </p>
+ * <p>
+ * Computed labels are remembered until {@link #fireLabelProviderChanged}
+ * reports a change of the elements' labels, or until their element is
+ * removed from the viewer. At most a fixed number of labels is remembered;
+ * the oldest ones are discarded first. <code>fireLabelProviderChanged</code>,
+ * like all methods other than <code>computeLabel</code>, must be called from
+ * the UI thread. An instance of this class may be used for several columns
+ * of a single viewer.
+ * </p>
+ *
+ * @since 3.6
+ */
+public abstract class AsynchronousCellLabelProvider extends CellLabelProvider {
+
+	private static final String PENDING = JFaceResources
+			.getString("AsynchronousCellLabelProvider.pending"); //$NON-NLS-1$
+
+	/**
+	 * The maximum number of elements whose computed labels are remembered.
+	 */
+	private static final int LABEL_LIMIT = 10000;
+
+	/**
+	 * The computation of the label of an element in a column.
+	 */
+	private static final class Request {
+		Object element;
+
+		int column;
+
+		/**
+		 * The item the label was requested for, used to decide whether the
+		 * request is still visible.
+		 */
+		Item item;
+
+		ViewerLabel label;
+
+		/**
+		 * Set when the label is no longer wanted. Guarded by the lock of the
+		 * provider. Cancelled requests are skipped rather than searched for
+		 * and removed from the queue.
+		 */
+		boolean cancelled;
+
+		Request(Object element, int column, Item item) {
+			this.element = element;
+			this.column = column;
+			this.item = item;
+		}
+	}
+
+	/**
+	 * The computed labels of an element, linked into a list of all elements
+	 * with computed labels, oldest first.
+	 */
+	private static final class LabelEntry {
+		Object element;
+
+		/**
+		 * The labels indexed by column.
+		 */
+		ViewerLabel[] labels = new ViewerLabel[0];
+
+		LabelEntry previous = this;
+
+		LabelEntry next = this;
+
+		LabelEntry(Object element) {
+			this.element = element;
+		}
+	}
+
+	private ColumnViewer viewer;
+
+	private Display display;
+
+	private Listener paintListener;
+
+	private boolean disposed;
+
+	/**
+	 * Maps elements to their <code>LabelEntry</code>. Only accessed in the UI
+	 * thread.
+	 */
+	private ElementHashtable labels;
+
+	/**
+	 * The head of the list of the entries of <code>labels</code>, which is
+	 * ordered oldest first. Only accessed in the UI thread.
+	 */
+	private LabelEntry labelOrder = new LabelEntry(null);
+
+	/**
+	 * Maps elements to the outstanding <code>Request[]</code>, indexed by
+	 * column. Elements without outstanding requests are removed. Only
+	 * accessed in the UI thread.
+	 */
+	private ElementHashtable requests;
+
+	/**
+	 * Requests made since the last dispatch. Only accessed in the UI thread.
+	 */
+	private List newRequests = new ArrayList();
+
+	/**
+	 * Whether requests have been dropped because their row was not visible,
+	 * so that the visible rows must be checked for missing labels when the
+	 * control is painted. Only accessed in the UI thread.
+	 */
+	private boolean requestsDropped;
+
+	private boolean dispatchScheduled;
+
+	/**
+	 * Protects the fields below, shared with the background thread.
+	 */
+	private Object lock = new Object();
+
+	private LinkedList queue = new LinkedList();
+
+	private List finished = new ArrayList();
+
+	private boolean workerStarted;
+
+	private boolean applyScheduled;
+
+	/**
+	 * Dispatches the requests made since the last dispatch to the background
+	 * thread, and drops or makes requests depending on the visibility of
+	 * their rows. Runs in the UI thread.
+	 */
+	private Runnable dispatchRunnable = new Runnable() {
+		public void run() {
+			dispatchScheduled = false;
+			dispatch();
+		}
+	};
+
+	/**
+	 * Applies the labels computed by the background thread. Runs in the UI
+	 * thread.
+	 */
+	private Runnable applyRunnable = new Runnable() {
+		public void run() {
+			applyFinished();
+		}
+	};
+
+	/**
+	 * Computes queued labels until the queue is empty.
+	 */
+	private final class Worker extends Thread {
+		private Worker() {
+			super("Label Computation"); //$NON-NLS-1$
+		}
+
+		public void run() {
+			try {
+				computeQueued();
+			} finally {
+				// also if an error ended the loop, so that the next dispatch
+				// starts a new worker
+				synchronized (lock) {
+					workerStarted = false;
+				}
+			}
+		}
+
+		private void computeQueued() {
+			while (true) {
+				Request request;
+				synchronized (lock) {
+					if (queue.isEmpty() || disposed) {
+						// in the same block as the check, so that a dispatch
+						// queueing a request afterwards starts a new worker
+						workerStarted = false;
+						return;
+					}
+					request = (Request) queue.removeFirst();
+					if (request.cancelled) {
+						continue;
+					}
+				}
+				ViewerLabel label = new ViewerLabel(null, null);
+				try {
+					computeLabel(request.element, request.column, label);
+				} catch (RuntimeException e) {
+					Policy.getLog().log(
+							new Status(IStatus.ERROR, Policy.JFACE,
+									"Error computing label", e)); //$NON-NLS-1$
+					label = new ViewerLabel("", null); //$NON-NLS-1$
+				}
+				synchronized (lock) {
+					if (request.cancelled || disposed) {
+						continue;
+					}
+					request.label = label;
+					finished.add(request);
+					if (!applyScheduled) {
+						applyScheduled = true;
+						asyncExec(applyRunnable);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a new asynchronous cell label provider.
+	 */
+	public AsynchronousCellLabelProvider() {
+		super();
+	}
+
+	/**
+	 * Computes the label of the given element in the given column. Called on
+	 * a background thread; implementations must not access widgets, and must
+	 * obtain the images, fonts and colors they set on the label in a
+	 * thread-safe way, for example from a registry filled beforehand.
+	 *
+	 * @param element
+	 *            the element
+	 * @param columnIndex
+	 *            the index of the column
+	 * @param label
+	 *            the label to update, initially without text or image
+	 */
+	protected abstract void computeLabel(Object element, int columnIndex,
+			ViewerLabel label);
+
+	/**
+	 * Updates the given cell with a placeholder while its label is being
+	 * computed. The default implementation shows a localized "Pending..."
+	 * text and no image. Subclasses may override.
+	 *
+	 * @param cell
+	 *            the cell to update
+	 */
+	protected void updatePending(ViewerCell cell) {
+		cell.setText(PENDING);
+		cell.setImage(null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jface.viewers.CellLabelProvider#update(org.eclipse.jface.viewers.ViewerCell)
+	 */
+	public void update(ViewerCell cell) {
+		Object element = cell.getElement();
+		int column = cell.getColumnIndex();
+		if (labels == null || element == null) {
+			updatePending(cell);
+			return;
+		}
+		ViewerLabel computed = getLabel(element, column);
+		if (computed != null) {
+			apply(cell, computed);
+			return;
+		}
+		updatePending(cell);
+		Request request = getRequest(element, column);
+		if (request != null) {
+			request.item = (Item) cell.getItem();
+			return;
+		}
+		newRequests.add(addRequest(element, column, (Item) cell.getItem()));
+		scheduleDispatch();
+	}
+
+	private void apply(ViewerCell cell, ViewerLabel label) {
+		cell.setText(label.getText());
+		cell.setImage(label.getImage());
+		if (label.hasNewFont()) {
+			cell.setFont(label.getFont());
+		}
+		if (label.hasNewForeground()) {
+			cell.setForeground(label.getForeground());
+		}
+		if (label.hasNewBackground()) {
+			cell.setBackground(label.getBackground());
+		}
+	}
+
+	private ViewerLabel getLabel(Object element, int column) {
+		LabelEntry entry = (LabelEntry) labels.get(element);
+		if (entry == null || column >= entry.labels.length) {
+			return null;
+		}
+		return entry.labels[column];
+	}
+
+	/**
+	 * Forgets the computed labels of the given element.
+	 */
+	private void removeLabels(Object element) {
+		LabelEntry entry = (LabelEntry) labels.remove(element);
+		if (entry != null) {
+			entry.previous.next = entry.next;
+			entry.next.previous = entry.previous;
+		}
+	}
+
+	private void clearLabels() {
+		labels = new ElementHashtable(0, viewer.getComparer());
+		labelOrder.previous = labelOrder;
+		labelOrder.next = labelOrder;
+	}
+
+	private Request getRequest(Object element, int column) {
+		Request[] pending = (Request[]) requests.get(element);
+		return pending != null && column < pending.length ? pending[column]
+				: null;
+	}
+
+	/**
+	 * Creates a request and records it as outstanding.
+	 */
+	private Request addRequest(Object element, int column, Item item) {
+		Request request = new Request(element, column, item);
+		Request[] pending = (Request[]) requests.get(element);
+		if (pending == null || column >= pending.length) {
+			Request[] newPending = new Request[column + 1];
+			if (pending != null) {
+				System.arraycopy(pending, 0, newPending, 0, pending.length);
+			}
+			pending = newPending;
+			requests.put(element, pending);
+		}
+		pending[column] = request;
+		return request;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jface.viewers.CellLabelProvider#initialize(org.eclipse.jface.viewers.ColumnViewer,
+	 *      org.eclipse.jface.viewers.ViewerColumn)
+	 */
+	protected void initialize(ColumnViewer viewer, ViewerColumn column) {
+		super.initialize(viewer, column);
+		if (this.viewer == viewer) {
+			return;
+		}
+		this.viewer = viewer;
+		viewer.addAsynchronousLabelProvider(this);
+		Control control = viewer.getControl();
+		display = control.getDisplay();
+		clearLabels();
+		requests = new ElementHashtable(0, viewer.getComparer());
+		if ((control.getStyle() & SWT.VIRTUAL) != 0) {
+			// rows scrolled back into view do not get updated again
+			paintListener = new Listener() {
+				public void handleEvent(Event event) {
+					if (requestsDropped) {
+						scheduleDispatch();
+					}
+				}
+			};
+			control.addListener(SWT.Paint, paintListener);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.jface.viewers.BaseLabelProvider#dispose()
+	 */
+	public void dispose() {
+		synchronized (lock) {
+			disposed = true;
+			queue.clear();
+			finished.clear();
+		}
+		if (viewer != null) {
+			viewer.removeAsynchronousLabelProvider(this);
+		}
+		if (paintListener != null && !viewer.getControl().isDisposed()) {
+			viewer.getControl().removeListener(SWT.Paint, paintListener);
+		}
+		paintListener = null;
+		labels = null;
+		labelOrder.previous = labelOrder;
+		labelOrder.next = labelOrder;
+		requests = null;
+		newRequests.clear();
+		super.dispose();
+	}
+
+	/**
+	 * Forgets the computed labels and cancels the outstanding requests of the
+	 * elements in the event, or of all elements if the event does not name
+	 * any, before notifying the listeners.
+	 *
+	 * @param event
+	 *            the label provider changed event
+	 * @see org.eclipse.jface.viewers.BaseLabelProvider#fireLabelProviderChanged(org.eclipse.jface.viewers.LabelProviderChangedEvent)
+	 */
+	protected void fireLabelProviderChanged(LabelProviderChangedEvent event) {
+		if (labels != null) {
+			Object[] elements = event.getElements();
+			if (elements == null) {
+				synchronized (lock) {
+					for (int i = 0; i < queue.size(); i++) {
+						((Request) queue.get(i)).cancelled = true;
+					}
+					queue.clear();
+					for (int i = 0; i < finished.size(); i++) {
+						((Request) finished.get(i)).cancelled = true;
+					}
+					finished.clear();
+				}
+				clearLabels();
+				requests = new ElementHashtable(0, viewer.getComparer());
+				newRequests.clear();
+			} else {
+				for (int i = 0; i < elements.length; i++) {
+					removeLabels(elements[i]);
+					Request[] pending = (Request[]) requests
+							.remove(elements[i]);
+					if (pending != null) {
+						synchronized (lock) {
+							for (int j = 0; j < pending.length; j++) {
+								if (pending[j] != null) {
+									pending[j].cancelled = true;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		super.fireLabelProviderChanged(event);
+	}
+
+	/**
+	 * Called by the viewer when the given item no longer shows the given
+	 * element. Forgets the computed labels of the element, and cancels the
+	 * requests made for the item.
+	 *
+	 * @param element
+	 *            the element
+	 * @param item
+	 *            the item
+	 */
+	void disassociated(Object element, Item item) {
+		if (labels == null || element == null) {
+			return;
+		}
+		removeLabels(element);
+		Request[] pending = (Request[]) requests.get(element);
+		if (pending != null) {
+			for (int i = 0; i < pending.length; i++) {
+				if (pending[i] != null && pending[i].item == item) {
+					Request request = pending[i];
+					synchronized (lock) {
+						request.cancelled = true;
+					}
+					forget(request);
+				}
+			}
+		}
+	}
+
+	private void scheduleDispatch() {
+		if (!dispatchScheduled) {
+			dispatchScheduled = true;
+			asyncExec(dispatchRunnable);
+		}
+	}
+
+	private void asyncExec(Runnable runnable) {
+		if (!display.isDisposed()) {
+			display.asyncExec(runnable);
+		}
+	}
+
+	/**
+	 * Queues new requests of visible rows at the front of the queue, drops
+	 * requests of rows that are not visible, and requests the missing labels
+	 * of visible rows if requests have been dropped before.
+	 */
+	private void dispatch() {
+		if (labels == null || viewer.getControl().isDisposed()) {
+			return;
+		}
+		Control control = viewer.getControl();
+		boolean virtual = (control.getStyle() & SWT.VIRTUAL) != 0;
+		Rectangle area = virtual ? control.getClientArea() : null;
+
+		List toQueue = new ArrayList();
+		List toDrop = new ArrayList();
+		for (int i = 0; i < newRequests.size(); i++) {
+			Request request = (Request) newRequests.get(i);
+			if (request.cancelled) {
+				continue;
+			}
+			if (!isShowing(request) || !isVisible(request, area)) {
+				toDrop.add(request);
+			} else {
+				toQueue.add(request);
+			}
+		}
+		newRequests.clear();
+
+		if (virtual) {
+			Object[] queued;
+			synchronized (lock) {
+				queued = queue.toArray();
+			}
+			for (int i = 0; i < queued.length; i++) {
+				Request request = (Request) queued[i];
+				if (!request.cancelled
+						&& (!isShowing(request) || !isVisible(request, area))) {
+					toDrop.add(request);
+				}
+			}
+		}
+
+		synchronized (lock) {
+			for (int i = 0; i < toDrop.size(); i++) {
+				((Request) toDrop.get(i)).cancelled = true;
+			}
+		}
+		for (int i = 0; i < toDrop.size(); i++) {
+			forget((Request) toDrop.get(i));
+		}
+		if (!toDrop.isEmpty()) {
+			requestsDropped = true;
+		}
+		if (virtual && requestsDropped) {
+			addVisibleRequests(toQueue);
+		}
+
+		synchronized (lock) {
+			if (!toDrop.isEmpty()) {
+				for (Iterator it = queue.iterator(); it.hasNext();) {
+					if (((Request) it.next()).cancelled) {
+						it.remove();
+					}
+				}
+			}
+			// most recently requested first
+			queue.addAll(0, toQueue);
+			if (!workerStarted && !queue.isEmpty()) {
+				workerStarted = true;
+				Worker worker = new Worker();
+				worker.setDaemon(true);
+				worker.setPriority(Thread.NORM_PRIORITY - 1);
+				worker.start();
+			}
+		}
+	}
+
+	/**
+	 * Makes requests for the labels that the visible rows lack and that are
+	 * not requested yet.
+	 */
+	private void addVisibleRequests(List toQueue) {
+		Item[] items = viewer.getVisibleItems();
+		int columnCount = Math.max(viewer.doGetColumnCount(), 1);
+		for (int i = 0; i < items.length; i++) {
+			Item item = items[i];
+			Object element = item.isDisposed() ? null : item.getData();
+			if (element == null) {
+				continue;
+			}
+			for (int column = 0; column < columnCount; column++) {
+				ViewerColumn viewerColumn = viewer.getViewerColumn(column);
+				if (viewerColumn == null
+						|| viewerColumn.getLabelProvider() != this
+						|| getLabel(element, column) != null
+						|| getRequest(element, column) != null) {
+					continue;
+				}
+				toQueue.add(addRequest(element, column, item));
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the item of the given request still shows its element.
+	 */
+	private boolean isShowing(Request request) {
+		if (request.item.isDisposed()) {
+			return false;
+		}
+		Object data = request.item.getData();
+		return data != null && viewer.equals(data, request.element);
+	}
+
+	private boolean isVisible(Request request, Rectangle area) {
+		if (area == null) {
+			return true;
+		}
+		ViewerRow row = viewer.getViewerRowFromItem(request.item);
+		return row != null && row.getBounds().intersects(area);
+	}
+
+	/**
+	 * Drops a request that is finished or no longer wanted, so that the label
+	 * is requested again the next time the element is shown without one.
+	 */
+	private void forget(Request request) {
+		Request[] pending = (Request[]) requests.get(request.element);
+		if (pending != null && request.column < pending.length
+				&& pending[request.column] == request) {
+			pending[request.column] = null;
+			for (int i = 0; i < pending.length; i++) {
+				if (pending[i] != null) {
+					return;
+				}
+			}
+			requests.remove(request.element);
+		}
+	}
+
+	/**
+	 * Remembers the finished labels and updates the elements they belong to.
+	 */
+	private void applyFinished() {
+		Object[] done;
+		synchronized (lock) {
+			applyScheduled = false;
+			done = finished.toArray();
+			finished.clear();
+		}
+		if (labels == null || viewer.getControl().isDisposed()) {
+			return;
+		}
+		List elements = new ArrayList(done.length);
+		ElementHashtable updated = new ElementHashtable(done.length, viewer
+				.getComparer());
+		for (int i = 0; i < done.length; i++) {
+			Request request = (Request) done[i];
+			if (request.cancelled) {
+				continue;
+			}
+			forget(request);
+			LabelEntry entry = (LabelEntry) labels.get(request.element);
+			if (entry == null) {
+				entry = new LabelEntry(request.element);
+				entry.previous = labelOrder.previous;
+				entry.next = labelOrder;
+				labelOrder.previous.next = entry;
+				labelOrder.previous = entry;
+				labels.put(request.element, entry);
+			}
+			if (request.column >= entry.labels.length) {
+				ViewerLabel[] newLabels = new ViewerLabel[request.column + 1];
+				System.arraycopy(entry.labels, 0, newLabels, 0,
+						entry.labels.length);
+				entry.labels = newLabels;
+			}
+			entry.labels[request.column] = request.label;
+			if (updated.put(request.element, request.element) == null) {
+				elements.add(request.element);
+			}
+		}
+		viewer.update(elements.toArray(), null);
+		// discard the oldest labels only now, they have been applied
+		while (labels.size() > LABEL_LIMIT) {
+			removeLabels(labelOrder.next.element);
+		}
+	}
+}
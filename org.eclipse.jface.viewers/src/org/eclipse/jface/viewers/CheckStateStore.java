@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CheckStateStore holds the checked and grayed states of the elements of a
+ * <code>CheckboxTreeViewer</code>, independently of the items of the tree.
+ * The elements are traversed using the <code>ITreeContentProvider</code> of
+ * the viewer.
+ * <p>
+ * To derive the state of a parent from the states of its children, the store
+ * keeps for some parents the number of children, the number of children that
+ * are checked but not grayed, and the number of children that are grayed. The
+ * counts are computed from the children when first needed and then kept up to
+ * date as the states of the children change. They are dropped when the
+ * structure of the tree may have changed.
+ * </p>
+ *
+ * @see CheckboxTreeViewer#setUseCheckStateModel(boolean)
+ * @since 3.6
+ */
+/* package */final class CheckStateStore {
+
+	private static final int CHECKED = 1;
+
+	private static final int GRAYED = 2;
+
+	private static final int CHILD_COUNT = 0;
+
+	private static final int FULL_COUNT = 1;
+
+	private static final int GRAYED_COUNT = 2;
+
+	private final AbstractTreeViewer viewer;
+
+	/**
+	 * The checked elements, mapped onto themselves.
+	 */
+	private final ElementHashtable checked;
+
+	/**
+	 * The grayed elements, mapped onto themselves.
+	 */
+	private final ElementHashtable grayed;
+
+	/**
+	 * Maps parents onto an <code>int[]</code> holding their child counts,
+	 * indexed by <code>CHILD_COUNT</code>, <code>FULL_COUNT</code> and
+	 * <code>GRAYED_COUNT</code>.
+	 */
+	private final ElementHashtable counts;
+
+	/**
+	 * Creates an empty store.
+	 *
+	 * @param viewer
+	 *            the viewer whose content provider is used to traverse the
+	 *            tree
+	 * @param comparer
+	 *            the element comparer, or <code>null</code> to use the
+	 *            <code>equals</code> and <code>hashCode</code> methods of the
+	 *            elements
+	 */
+	CheckStateStore(AbstractTreeViewer viewer, IElementComparer comparer) {
+		this.viewer = viewer;
+		checked = new ElementHashtable(CustomHashtable.DEFAULT_CAPACITY,
+				comparer);
+		grayed = new ElementHashtable(CustomHashtable.DEFAULT_CAPACITY,
+				comparer);
+		counts = new ElementHashtable(CustomHashtable.DEFAULT_CAPACITY,
+				comparer);
+	}
+
+	boolean isChecked(Object element) {
+		return checked.containsKey(element);
+	}
+
+	boolean isGrayed(Object element) {
+		return grayed.containsKey(element);
+	}
+
+	/**
+	 * Sets the state of a single element.
+	 *
+	 * @param element
+	 *            the element
+	 * @param check
+	 *            the new checked state
+	 * @param gray
+	 *            the new grayed state
+	 * @return <code>true</code> if the state of the element changed
+	 */
+	boolean setState(Object element, boolean check, boolean gray) {
+		int state = (check ? CHECKED : 0) | (gray ? GRAYED : 0);
+		int oldState = putState(element, state);
+		if (oldState == state) {
+			return false;
+		}
+		if (counts.size() > 0) {
+			Object parent = getParent(element);
+			if (parent != null) {
+				int[] parentCounts = (int[]) counts.get(parent);
+				if (parentCounts != null) {
+					count(parentCounts, oldState, -1);
+					count(parentCounts, state, 1);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks or unchecks the given element and all its descendants, and
+	 * updates the states of its ancestors: an ancestor is checked if all its
+	 * children are checked and not grayed, checked and grayed if some of its
+	 * children are checked or grayed, and unchecked otherwise.
+	 *
+	 * @param element
+	 *            the element
+	 * @param state
+	 *            the new checked state
+	 * @param changedAncestors
+	 *            a writable list receiving the ancestors whose state changed
+	 */
+	void setSubtreeChecked(Object element, boolean state, List changedAncestors) {
+		setState(element, state, false);
+		int newState = state ? CHECKED : 0;
+		List pending = new ArrayList();
+		pending.add(element);
+		while (!pending.isEmpty()) {
+			Object parent = pending.remove(pending.size() - 1);
+			// the counts of parents inside the subtree are recomputed when
+			// needed, rather than updated child by child
+			counts.remove(parent);
+			Object[] children = getChildren(parent);
+			for (int i = 0; i < children.length; i++) {
+				putState(children[i], newState);
+				pending.add(children[i]);
+			}
+		}
+
+		Object root = viewer.getRoot();
+		Object parent = getParent(element);
+		while (parent != null && !viewer.equals(parent, root)) {
+			int[] parentCounts = getCounts(parent);
+			boolean check = parentCounts[FULL_COUNT] + parentCounts[GRAYED_COUNT] > 0;
+			boolean gray = check
+					&& parentCounts[FULL_COUNT] < parentCounts[CHILD_COUNT];
+			if (!setState(parent, check, gray)) {
+				break;
+			}
+			changedAncestors.add(parent);
+			parent = getParent(parent);
+		}
+	}
+
+	/**
+	 * Replaces the set of checked elements.
+	 *
+	 * @param elements
+	 *            the elements to check
+	 */
+	void setCheckedElements(Object[] elements) {
+		checked.clear();
+		checked.ensureCapacity(elements.length);
+		for (int i = 0; i < elements.length; i++) {
+			checked.put(elements[i], elements[i]);
+		}
+		counts.clear();
+	}
+
+	/**
+	 * Replaces the set of grayed elements.
+	 *
+	 * @param elements
+	 *            the elements to gray
+	 */
+	void setGrayedElements(Object[] elements) {
+		grayed.clear();
+		grayed.ensureCapacity(elements.length);
+		for (int i = 0; i < elements.length; i++) {
+			grayed.put(elements[i], elements[i]);
+		}
+		counts.clear();
+	}
+
+	/**
+	 * Checks or unchecks all elements of the tree, traversing it from the
+	 * root elements. The grayed states are left unchanged.
+	 *
+	 * @param state
+	 *            the new checked state
+	 */
+	void setAllChecked(boolean state) {
+		Object[] roots = ((ITreeContentProvider) viewer.getContentProvider())
+				.getElements(viewer.getRoot());
+		List pending = new ArrayList();
+		addAll(pending, roots);
+		while (!pending.isEmpty()) {
+			Object element = pending.remove(pending.size() - 1);
+			if (state) {
+				checked.put(element, element);
+			} else {
+				checked.remove(element);
+			}
+			addAll(pending, getChildren(element));
+		}
+		counts.clear();
+	}
+
+	/**
+	 * Discards the states of the given elements and of their descendants, and
+	 * drops the child counts.
+	 *
+	 * @param elements
+	 *            the elements that have been removed from the tree
+	 */
+	void remove(Object[] elements) {
+		counts.clear();
+		if (checked.size() == 0 && grayed.size() == 0) {
+			return;
+		}
+		List pending = new ArrayList();
+		addAll(pending, elements);
+		while (!pending.isEmpty()) {
+			Object element = pending.remove(pending.size() - 1);
+			checked.remove(element);
+			grayed.remove(element);
+			addAll(pending, getChildren(element));
+		}
+	}
+
+	Object[] getCheckedElements() {
+		return checked.keys();
+	}
+
+	Object[] getGrayedElements() {
+		return grayed.keys();
+	}
+
+	/**
+	 * Drops the child counts, because children may have been added or
+	 * removed.
+	 */
+	void invalidateCounts() {
+		counts.clear();
+	}
+
+	/**
+	 * Stores the given state without updating any counts.
+	 *
+	 * @return the previous state
+	 */
+	private int putState(Object element, int state) {
+		int oldState = 0;
+		if ((state & CHECKED) != 0) {
+			if (checked.put(element, element) != null) {
+				oldState |= CHECKED;
+			}
+		} else if (checked.remove(element) != null) {
+			oldState |= CHECKED;
+		}
+		if ((state & GRAYED) != 0) {
+			if (grayed.put(element, element) != null) {
+				oldState |= GRAYED;
+			}
+		} else if (grayed.remove(element) != null) {
+			oldState |= GRAYED;
+		}
+		return oldState;
+	}
+
+	/**
+	 * Returns the counts of the given parent, computing them from its children
+	 * if necessary.
+	 */
+	private int[] getCounts(Object parent) {
+		int[] parentCounts = (int[]) counts.get(parent);
+		if (parentCounts == null) {
+			Object[] children = getChildren(parent);
+			parentCounts = new int[3];
+			parentCounts[CHILD_COUNT] = children.length;
+			for (int i = 0; i < children.length; i++) {
+				int state = (isChecked(children[i]) ? CHECKED : 0)
+						| (isGrayed(children[i]) ? GRAYED : 0);
+				count(parentCounts, state, 1);
+			}
+			counts.put(parent, parentCounts);
+		}
+		return parentCounts;
+	}
+
+	private static void count(int[] parentCounts, int state, int delta) {
+		if (state == CHECKED) {
+			parentCounts[FULL_COUNT] += delta;
+		} else if ((state & GRAYED) != 0) {
+			parentCounts[GRAYED_COUNT] += delta;
+		}
+	}
+
+	private static void addAll(List list, Object[] elements) {
+		if (elements != null) {
+			for (int i = 0; i < elements.length; i++) {
+				list.add(elements[i]);
+			}
+		}
+	}
+
+	private Object[] getChildren(Object parent) {
+		Object[] children = ((ITreeContentProvider) viewer.getContentProvider())
+				.getChildren(parent);
+		return children == null ? new Object[0] : children;
+	}
+
+	private Object getParent(Object element) {
+		return ((ITreeContentProvider) viewer.getContentProvider())
+				.getParent(element);
+	}
+}
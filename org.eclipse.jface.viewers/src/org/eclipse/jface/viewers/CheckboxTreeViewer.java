@@ -56,6 +56,14 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      */
     private TreeItem lastClickedItem = null;
 
+    /**
+     * Holds the check states of the elements if the check state model is
+     * used, or <code>null</code>.
+     *
+     * @see #setUseCheckStateModel(boolean)
+     */
+    private CheckStateStore checkStateStore;
+
     /**
      * Creates a tree viewer on a newly-created tree control under the given parent.
      * The tree control is created using the SWT style bits: <code>CHECK</code> and <code>BORDER</code>.
@@ -112,7 +120,61 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
     	this.checkStateProvider = checkStateProvider;
     	refresh();
     }
-    
+
+    /**
+     * Configures whether this viewer keeps the checked and grayed states of
+     * its elements in a model that is independent of the items of the tree.
+     * This must be called before the viewer is given an input (via
+     * <code>setInput</code>), and requires an
+     * <code>ITreeContentProvider</code>.
+     * <p>
+     * With the check state model, the states of elements whose items have not
+     * been created yet are kept, and the items are given the state of their
+     * element when they are created. Querying the state of an element takes
+     * constant time, <code>getCheckedElements</code> and
+     * <code>getGrayedElements</code> return the states of all elements in no
+     * particular order without traversing the tree, and the methods setting
+     * states do not create items. <code>setSubtreeChecked</code> traverses
+     * the subtree using the content provider, and also updates the ancestors
+     * of the element: an ancestor becomes checked if all its children are
+     * checked and not grayed, checked and grayed if some of its children are
+     * checked or grayed, and unchecked otherwise. To apply this to the check
+     * boxes clicked by the user, call <code>setSubtreeChecked</code> from a
+     * check state listener.
+     * </p>
+     * <p>
+     * The states of elements passed to <code>remove</code>, and of their
+     * descendants, are discarded. The states of elements that disappear from
+     * the model without being removed, for example during a
+     * <code>refresh</code>, are kept; clients should prune them using
+     * <code>setCheckedElements</code> and <code>setGrayedElements</code>. All
+     * states are discarded when the input changes.
+     * </p>
+     *
+     * @param enable
+     *            <code>true</code> to keep the check states in a model, and
+     *            <code>false</code> to keep them in the items of the tree
+     *
+     * @since 3.6
+     */
+    public void setUseCheckStateModel(boolean enable) {
+        Assert.isTrue(getInput() == null,
+                "Can only enable the check state model before input has been set");//$NON-NLS-1$
+        checkStateStore = enable ? new CheckStateStore(this, getComparer())
+                : null;
+    }
+
+    /*
+     * Extends this method to discard the check states of the old input.
+     */
+    protected void inputChanged(Object input, Object oldInput) {
+        if (checkStateStore != null) {
+            Assert.isTrue(getContentProvider() instanceof ITreeContentProvider);
+            checkStateStore = new CheckStateStore(this, getComparer());
+        }
+        super.inputChanged(input, oldInput);
+    }
+
     /*
      * Extends this method to update check box states.
      */
@@ -121,9 +183,72 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
     	if(!item.isDisposed() && checkStateProvider != null) {
 			setChecked(element, checkStateProvider.isChecked(element));
 			setGrayed(element, checkStateProvider.isGrayed(element));
+    	} else if (!item.isDisposed() && checkStateStore != null) {
+    		applyStoredState(item);
     	}
 	}
 
+    /*
+     * Extends this method to copy check box states to moved items.
+     */
+    void copyItemState(Item from, Item to) {
+        super.copyItemState(from, to);
+        if (from instanceof TreeItem && to instanceof TreeItem) {
+            ((TreeItem) to).setChecked(((TreeItem) from).getChecked());
+            ((TreeItem) to).setGrayed(((TreeItem) from).getGrayed());
+        }
+    }
+
+    /**
+     * Sets the checked and grayed states of the given item to the states
+     * held by the check state model.
+     *
+     * @param item the item
+     */
+    private void applyStoredState(Item item) {
+        Object data = item.getData();
+        if (data != null && item instanceof TreeItem) {
+            TreeItem ti = (TreeItem) item;
+            boolean checked = checkStateStore.isChecked(data);
+            if (checked != ti.getChecked()) {
+                ti.setChecked(checked);
+            }
+            boolean grayed = checkStateStore.isGrayed(data);
+            if (grayed != ti.getGrayed()) {
+                ti.setGrayed(grayed);
+            }
+        }
+    }
+
+    /**
+     * Sets the checked and grayed states of the existing items of the given
+     * element to the states held by the check state model.
+     *
+     * @param element the element
+     */
+    private void updateCheckState(Object element) {
+        Widget[] items = findItems(element);
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] instanceof Item) {
+                applyStoredState((Item) items[i]);
+            }
+        }
+    }
+
+    /**
+     * Sets the checked and grayed states of the existing descendents of the
+     * given widget to the states held by the check state model.
+     *
+     * @param widget the widget
+     */
+    private void applyStoredStateToChildren(Widget widget) {
+        Item[] items = getChildren(widget);
+        for (int i = 0; i < items.length; i++) {
+            applyStoredState(items[i]);
+            applyStoredStateToChildren(items[i]);
+        }
+    }
+
 	/**
      * Applies the checked and grayed states of the given widget and its
      * descendents.
@@ -203,6 +328,9 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      * Method declared on ICheckable.
      */
     public boolean getChecked(Object element) {
+        if (checkStateStore != null) {
+            return checkStateStore.isChecked(element);
+        }
         Widget widget = findItem(element);
         if (widget instanceof TreeItem) {
 			return ((TreeItem) widget).getChecked();
@@ -224,6 +352,9 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      * @see #setCheckedElements
      */
     public Object[] getCheckedElements() {
+        if (checkStateStore != null) {
+            return checkStateStore.getCheckedElements();
+        }
         ArrayList v = new ArrayList();
         Control tree = getControl();
         internalCollectChecked(v, tree);
@@ -238,6 +369,9 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      *   and <code>false</code> if not grayed
      */
     public boolean getGrayed(Object element) {
+        if (checkStateStore != null) {
+            return checkStateStore.isGrayed(element);
+        }
         Widget widget = findItem(element);
         if (widget instanceof TreeItem) {
             return ((TreeItem) widget).getGrayed();
@@ -259,6 +393,9 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      * @see #setGrayedElements
      */
     public Object[] getGrayedElements() {
+        if (checkStateStore != null) {
+            return checkStateStore.getGrayedElements();
+        }
         List result = new ArrayList();
         internalCollectGrayed(result, getControl());
         return result.toArray();
@@ -297,6 +434,10 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
 
             Object data = item.getData();
             if (data != null) {
+                if (checkStateStore != null) {
+                    checkStateStore.setState(data, item.getChecked(), item
+                            .getGrayed());
+                }
                 fireCheckStateChanged(new CheckStateChangedEvent(this, data,
                         item.getChecked()));
             }
@@ -405,6 +546,14 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
     		super.preservingSelection(updateCode);
     		return;
     	}
+    	//The check state model holds the check states, the items get them
+    	//when they are updated
+    	if (checkStateStore != null) {
+    		// children may be added or removed
+    		checkStateStore.invalidateCounts();
+    		super.preservingSelection(updateCode);
+    		return;
+    	}
     	
     	//Preserve checked items
         int n = getItemCount(getControl());
@@ -430,6 +579,13 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      */
     public boolean setChecked(Object element, boolean state) {
         Assert.isNotNull(element);
+        if (checkStateStore != null) {
+            if (checkStateStore.setState(element, state, checkStateStore
+                    .isGrayed(element))) {
+                updateCheckState(element);
+            }
+            return true;
+        }
         Widget widget = internalExpand(element, false);
         if (widget instanceof TreeItem) {
             ((TreeItem) widget).setChecked(state);
@@ -475,6 +631,11 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      */
     public void setCheckedElements(Object[] elements) {
         assertElementsNotNull(elements);
+        if (checkStateStore != null) {
+            checkStateStore.setCheckedElements(elements);
+            applyStoredStateToAll();
+            return;
+        }
         CustomHashtable checkedElements = newHashtable(elements.length * 2 + 1);
         for (int i = 0; i < elements.length; ++i) {
             Object element = elements[i];
@@ -499,6 +660,13 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      */
     public boolean setGrayed(Object element, boolean state) {
         Assert.isNotNull(element);
+        if (checkStateStore != null) {
+            if (checkStateStore.setState(element, checkStateStore
+                    .isChecked(element), state)) {
+                updateCheckState(element);
+            }
+            return true;
+        }
         Widget widget = internalExpand(element, false);
         if (widget instanceof TreeItem) {
             ((TreeItem) widget).setGrayed(state);
@@ -517,6 +685,12 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      */
     public boolean setGrayChecked(Object element, boolean state) {
         Assert.isNotNull(element);
+        if (checkStateStore != null) {
+            if (checkStateStore.setState(element, state, state)) {
+                updateCheckState(element);
+            }
+            return true;
+        }
         Widget widget = internalExpand(element, false);
         if (widget instanceof TreeItem) {
             TreeItem item = (TreeItem) widget;
@@ -542,6 +716,11 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      */
     public void setGrayedElements(Object[] elements) {
         assertElementsNotNull(elements);
+        if (checkStateStore != null) {
+            checkStateStore.setGrayedElements(elements);
+            applyStoredStateToAll();
+            return;
+        }
         CustomHashtable grayedElements = newHashtable(elements.length * 2 + 1);
         for (int i = 0; i < elements.length; ++i) {
             Object element = elements[i];
@@ -568,6 +747,19 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      */
     public boolean setParentsGrayed(Object element, boolean state) {
         Assert.isNotNull(element);
+        if (checkStateStore != null) {
+            Object root = getRoot();
+            ITreeContentProvider provider = (ITreeContentProvider) getContentProvider();
+            for (Object current = element; current != null
+                    && !equals(current, root); current = provider
+                    .getParent(current)) {
+                if (checkStateStore.setState(current, checkStateStore
+                        .isChecked(current), state)) {
+                    updateCheckState(current);
+                }
+            }
+            return true;
+        }
         Widget widget = internalExpand(element, false);
         if (widget instanceof TreeItem) {
             TreeItem item = (TreeItem) widget;
@@ -597,6 +789,21 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      *  and <code>false</code> otherwise
      */
     public boolean setSubtreeChecked(Object element, boolean state) {
+        if (checkStateStore != null) {
+            List changedAncestors = new ArrayList();
+            checkStateStore.setSubtreeChecked(element, state, changedAncestors);
+            Widget[] items = findItems(element);
+            for (int i = 0; i < items.length; i++) {
+                if (items[i] instanceof Item) {
+                    applyStoredState((Item) items[i]);
+                    applyStoredStateToChildren(items[i]);
+                }
+            }
+            for (int i = 0; i < changedAncestors.size(); i++) {
+                updateCheckState(changedAncestors.get(i));
+            }
+            return true;
+        }
         Widget widget = internalExpand(element, false);
         if (widget instanceof TreeItem) {
             TreeItem item = (TreeItem) widget;
@@ -620,10 +827,18 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
      * is is recommended that {@link #setSubtreeChecked(Object, boolean)}
      * is used instead.
      * @see #setSubtreeChecked(Object, boolean) 
+     * @see #setUseCheckStateModel(boolean)
      *  
      *  @since 3.2
      */
 	public void setAllChecked(boolean state) {
+		// with the check state model, all elements of the model are checked
+		// or unchecked, whether or not their items have been created
+		if (checkStateStore != null) {
+			checkStateStore.setAllChecked(state);
+			applyStoredStateToAll();
+			return;
+		}
 		setAllChecked(state,  getTree().getItems());
 		
 	}
@@ -643,6 +858,64 @@ public class CheckboxTreeViewer extends TreeViewer implements ICheckable {
 		}
 	}
 	
+    /**
+     * Sets the checked and grayed states of all existing items to the states
+     * held by the check state model.
+     */
+    private void applyStoredStateToAll() {
+        Control tree = getControl();
+        tree.setRedraw(false);
+        applyStoredStateToChildren(tree);
+        tree.setRedraw(true);
+    }
+
+    /*
+     * Extends this method to keep the check state model up to date with the
+     * structure of the tree.
+     */
+    public void add(Object parentElementOrTreePath, Object[] childElements) {
+        if (checkStateStore != null) {
+            checkStateStore.invalidateCounts();
+        }
+        super.add(parentElementOrTreePath, childElements);
+    }
+
+    /*
+     * Extends this method to discard the check states of the removed elements
+     * and their descendants.
+     */
+    public void remove(Object[] elementsOrTreePaths) {
+        super.remove(elementsOrTreePaths);
+        if (checkStateStore != null) {
+            Object[] elements = new Object[elementsOrTreePaths.length];
+            for (int i = 0; i < elements.length; i++) {
+                Object element = elementsOrTreePaths[i];
+                if (element instanceof TreePath) {
+                    element = ((TreePath) element).getLastSegment();
+                }
+                elements[i] = element;
+            }
+            checkStateStore.remove(elements);
+        }
+    }
+
+    /*
+     * Extends this method to discard the check states of the removed elements
+     * that are no longer shown under another parent.
+     */
+    public void remove(Object parent, Object[] elements) {
+        super.remove(parent, elements);
+        if (checkStateStore != null) {
+            List removed = new ArrayList();
+            for (int i = 0; i < elements.length; i++) {
+                if (findItems(elements[i]).length == 0) {
+                    removed.add(elements[i]);
+                }
+            }
+            checkStateStore.remove(removed.toArray());
+        }
+    }
+
 	boolean optionallyPruneChildren(Item item, Object element) {
 		return false;
 	}
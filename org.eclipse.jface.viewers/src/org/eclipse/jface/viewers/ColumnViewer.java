@@ -13,6 +13,9 @@
 
 package org.eclipse.jface.viewers;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -51,6 +54,18 @@ public abstract class ColumnViewer extends StructuredViewer {
 
 	private ColumnViewerEditor viewerEditor;
 
+	/**
+	 * The labels computed by the cell label providers, or <code>null</code>
+	 * if labels are not cached.
+	 */
+	private LabelCache labelCache;
+
+	/**
+	 * The asynchronous label providers of the columns, or <code>null</code>
+	 * if there are none.
+	 */
+	private List asynchronousLabelProviders;
+
 	private boolean busy;
 	private boolean logWhenBusy = true; // initially true, set to false
 
@@ -363,6 +378,7 @@ public abstract class ColumnViewer extends StructuredViewer {
 		updateColumnParts(labelProvider);// Reset the label providers in the
 		// columns
 		super.setLabelProvider(labelProvider);
+		clearLabelCache();
 		if (labelProvider instanceof CellLabelProvider) {
 			((CellLabelProvider) labelProvider).initialize(this, null);
 		}
@@ -551,9 +567,246 @@ public abstract class ColumnViewer extends StructuredViewer {
 	public void update(Object element, String[] properties) {
 		if (checkBusy())
 			return;
+		if (labelCache != null && isLabelUpdate(element, properties)) {
+			labelCache.invalidate(element);
+		}
 		super.update(element, properties);
 	}
 
+	/**
+	 * Returns whether an update of the given properties of the given element
+	 * may change its label in any column.
+	 */
+	private boolean isLabelUpdate(Object element, String[] properties) {
+		if (properties == null) {
+			return true;
+		}
+		IBaseLabelProvider labelProvider = getLabelProvider();
+		int columnCount = Math.max(doGetColumnCount(), 1);
+		for (int i = 0; i < properties.length; i++) {
+			if (labelProvider.isLabelProperty(element, properties[i])) {
+				return true;
+			}
+			for (int column = 0; column < columnCount; column++) {
+				Widget columnOwner = getColumnViewerOwner(column);
+				ViewerColumn viewerColumn = columnOwner == null
+						|| columnOwner.isDisposed() ? null
+						: (ViewerColumn) columnOwner
+								.getData(ViewerColumn.COLUMN_VIEWER_KEY);
+				if (viewerColumn != null
+						&& viewerColumn.getLabelProvider() != null
+						&& viewerColumn.getLabelProvider().isLabelProperty(
+								element, properties[i])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Extends this method to discard the cached and asynchronously computed
+	 * labels of the element, so that removed elements do not keep their
+	 * images, fonts and colors.
+	 */
+	protected void disassociate(Item item) {
+		Object element = item.getData();
+		super.disassociate(item);
+		if (labelCache != null) {
+			labelCache.evict(element);
+		}
+		if (asynchronousLabelProviders != null) {
+			for (int i = 0; i < asynchronousLabelProviders.size(); i++) {
+				((AsynchronousCellLabelProvider) asynchronousLabelProviders
+						.get(i)).disassociated(element, item);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the descendants of a disposed item must be
+	 * disassociated too, because state is kept per element.
+	 * 
+	 * @return <code>true</code> if every item must be disassociated
+	 */
+	/* package */boolean needsDisassociateChildren() {
+		return labelCache != null || asynchronousLabelProviders != null;
+	}
+
+	/**
+	 * Registers an asynchronous label provider to be told when items stop
+	 * showing their elements.
+	 * 
+	 * @param provider
+	 *            the provider
+	 */
+	/* package */void addAsynchronousLabelProvider(
+			AsynchronousCellLabelProvider provider) {
+		if (asynchronousLabelProviders == null) {
+			asynchronousLabelProviders = new ArrayList();
+		}
+		if (!asynchronousLabelProviders.contains(provider)) {
+			asynchronousLabelProviders.add(provider);
+		}
+	}
+
+	/**
+	 * Unregisters an asynchronous label provider.
+	 * 
+	 * @param provider
+	 *            the provider
+	 */
+	/* package */void removeAsynchronousLabelProvider(
+			AsynchronousCellLabelProvider provider) {
+		if (asynchronousLabelProviders != null) {
+			asynchronousLabelProviders.remove(provider);
+			if (asynchronousLabelProviders.isEmpty()) {
+				asynchronousLabelProviders = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the items that are currently visible in the control, in the
+	 * order in which they are shown. Incremental expansion of trees expands
+	 * these items before the others, and asynchronous label providers request
+	 * the missing labels of these items after scrolling. The default
+	 * implementation returns an empty array. Subclasses may override.
+	 * 
+	 * @return the visible items
+	 * @see AbstractTreeViewer#expandToLevel(Object, int,
+	 *      org.eclipse.core.runtime.IProgressMonitor)
+	 * @see AsynchronousCellLabelProvider
+	 * 
+	 * @since 3.6
+	 */
+	protected Item[] getVisibleItems() {
+		return new Item[0];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.viewers.StructuredViewer#handleLabelProviderChanged(org.eclipse.jface.viewers.LabelProviderChangedEvent)
+	 */
+	protected void handleLabelProviderChanged(LabelProviderChangedEvent event) {
+		if (labelCache != null) {
+			Object[] elements = event.getElements();
+			if (elements == null) {
+				labelCache.invalidateAll();
+			} else {
+				for (int i = 0; i < elements.length; i++) {
+					labelCache.invalidate(elements[i]);
+				}
+			}
+		}
+		super.handleLabelProviderChanged(event);
+	}
+
+	/**
+	 * Sets whether this viewer caches the labels computed by its cell label
+	 * providers. When enabled, updating a cell of an element whose label has
+	 * been computed before replays the text, image, font, colors and style
+	 * ranges set by the label provider at that time, instead of calling the
+	 * label provider again. This avoids recomputing labels when items are
+	 * updated repeatedly, for example by <code>refresh(true)</code> or when
+	 * rows of a virtual viewer are shown again.
+	 * <p>
+	 * The labels of an element are discarded when the label provider fires a
+	 * <code>LabelProviderChangedEvent</code> for it, and when
+	 * <code>update</code> is called for it with no properties or with a
+	 * property for which a label provider's <code>isLabelProperty</code>
+	 * returns <code>true</code>. They are also discarded when an item stops
+	 * showing the element, for example because it is removed or moves to
+	 * another row. All labels are discarded when a label
+	 * provider is set, when the input changes, and by
+	 * {@link #clearLabelCache()}. Clients that change the label of an element
+	 * without any of these notifications must not enable the cache.
+	 * </p>
+	 * <p>
+	 * The cache assumes that the label of a cell depends only on its element
+	 * and column, and not on the tree path of the element. Enabling the cache
+	 * resets the hit and miss counts.
+	 * </p>
+	 * 
+	 * @param enable
+	 *            <code>true</code> to cache labels, <code>false</code> to
+	 *            discard the cache and always call the label providers
+	 * @since 3.6
+	 */
+	public void setUseLabelCache(boolean enable) {
+		if (enable) {
+			if (labelCache == null) {
+				labelCache = new LabelCache(getComparer());
+			}
+		} else {
+			labelCache = null;
+		}
+	}
+
+	/**
+	 * Returns whether this viewer caches the labels computed by its cell
+	 * label providers.
+	 * 
+	 * @return <code>true</code> if labels are cached
+	 * @see #setUseLabelCache(boolean)
+	 * @since 3.6
+	 */
+	public boolean getUseLabelCache() {
+		return labelCache != null;
+	}
+
+	/**
+	 * Discards all labels cached by this viewer, so that the label providers
+	 * are called again for every cell that is updated. Does nothing if labels
+	 * are not cached. Note that this does not update any cell; call
+	 * <code>refresh(true)</code> to do so.
+	 * 
+	 * @see #setUseLabelCache(boolean)
+	 * @since 3.6
+	 */
+	public void clearLabelCache() {
+		if (labelCache != null) {
+			labelCache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Returns the number of cell updates that were answered from the label
+	 * cache since it was enabled.
+	 * 
+	 * @return the number of cache hits, or 0 if labels are not cached
+	 * @see #setUseLabelCache(boolean)
+	 * @since 3.6
+	 */
+	public long getLabelCacheHits() {
+		return labelCache == null ? 0 : labelCache.getHits();
+	}
+
+	/**
+	 * Returns the number of cell updates that called a label provider since
+	 * the label cache was enabled.
+	 * 
+	 * @return the number of cache misses, or 0 if labels are not cached
+	 * @see #setUseLabelCache(boolean)
+	 * @since 3.6
+	 */
+	public long getLabelCacheMisses() {
+		return labelCache == null ? 0 : labelCache.getMisses();
+	}
+
+	/**
+	 * Returns the label cache, or <code>null</code> if labels are not cached.
+	 * 
+	 * @return the label cache or <code>null</code>
+	 */
+	/* package */LabelCache getLabelCache() {
+		if (labelCache != null && labelCache.getComparer() != getComparer()) {
+			labelCache.setComparer(getComparer());
+		}
+		return labelCache;
+	}
+
 	/**
 	 * Sets the cell editors of this column viewer. If editing is not supported
 	 * by this viewer the call simply has no effect.
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+/**
+ * Computes a minimal edit script between the elements currently shown by a
+ * viewer and the elements it should show, so that a refresh only has to touch
+ * the items of elements that were inserted or removed.
+ * <p>
+ * The script is computed with the greedy algorithm of Myers ("An O(ND)
+ * Difference Algorithm and Its Variations", 1986) after stripping the common
+ * prefix and suffix. Its cost grows with the number of edits, so the
+ * computation gives up once more than a given number of edits would be
+ * needed; callers then fall back to a positional update.
+ * </p>
+ * <p>
+ * Elements are compared like <code>StructuredViewer#equals</code> does,
+ * using the given <code>IElementComparer</code> if there is one.
+ * </p>
+ *
+ * @since 3.6
+ */
+/* package */final class ElementDiff {
+
+	/**
+	 * The default maximum number of inserted plus removed elements for which
+	 * an edit script is computed.
+	 */
+	static final int DEFAULT_MAX_EDITS = 512;
+
+	private ElementDiff() {
+		// not instantiated
+	}
+
+	/**
+	 * Matches the new elements to the old ones. The returned array has one
+	 * entry per new element: the index of the old element that it keeps, or
+	 * -1 if the new element is inserted. Matched old indices are strictly
+	 * increasing; old elements that are not matched are removed.
+	 *
+	 * @param oldElements
+	 *            the elements currently shown, may contain <code>null</code>
+	 * @param newElements
+	 *            the elements to show
+	 * @param comparer
+	 *            the comparer to use, or <code>null</code> to use
+	 *            <code>equals</code>
+	 * @param maxEdits
+	 *            the maximum number of inserted plus removed elements
+	 * @return the matches, or <code>null</code> if more than
+	 *         <code>maxEdits</code> edits are needed and they are not a
+	 *         single block of insertions or removals
+	 */
+	static int[] match(Object[] oldElements, Object[] newElements,
+			IElementComparer comparer, int maxEdits) {
+		int n = oldElements.length;
+		int m = newElements.length;
+		int[] result = new int[m];
+		int prefix = 0;
+		while (prefix < n && prefix < m
+				&& equals(oldElements[prefix], newElements[prefix], comparer)) {
+			result[prefix] = prefix;
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < n - prefix
+				&& suffix < m - prefix
+				&& equals(oldElements[n - 1 - suffix],
+						newElements[m - 1 - suffix], comparer)) {
+			result[m - 1 - suffix] = n - 1 - suffix;
+			suffix++;
+		}
+		int oldCount = n - prefix - suffix;
+		int newCount = m - prefix - suffix;
+		for (int j = prefix; j < prefix + newCount; j++) {
+			result[j] = -1;
+		}
+		if (oldCount == 0 || newCount == 0) {
+			// a block of insertions or removals, no search needed
+			return result;
+		}
+		int max = Math.min(oldCount + newCount, maxEdits);
+		if (Math.abs(oldCount - newCount) > max) {
+			return null;
+		}
+
+		// v[offset + k] is the furthest x reached on diagonal k = x - y
+		int offset = max + 1;
+		int[] v = new int[2 * max + 3];
+		int[][] trace = new int[max + 1][];
+		for (int d = 0; d <= max; d++) {
+			// remember the state after d - 1 edits, needed to backtrack
+			int[] snapshot = new int[2 * d + 3];
+			System.arraycopy(v, offset - d - 1, snapshot, 0, snapshot.length);
+			trace[d] = snapshot;
+			for (int k = -d; k <= d; k += 2) {
+				int x;
+				if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+					x = v[offset + k + 1];
+				} else {
+					x = v[offset + k - 1] + 1;
+				}
+				int y = x - k;
+				while (x < oldCount
+						&& y < newCount
+						&& equals(oldElements[prefix + x], newElements[prefix
+								+ y], comparer)) {
+					x++;
+					y++;
+				}
+				v[offset + k] = x;
+				if (x >= oldCount && y >= newCount) {
+					backtrack(trace, d, oldCount, newCount, prefix, result);
+					return result;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Walks the recorded states back from the end point and records the
+	 * diagonal moves, which are the kept elements.
+	 */
+	private static void backtrack(int[][] trace, int edits, int oldCount,
+			int newCount, int prefix, int[] result) {
+		int x = oldCount;
+		int y = newCount;
+		for (int d = edits; d >= 0; d--) {
+			int[] snapshot = trace[d];
+			// snapshot[0] corresponds to diagonal -d - 1
+			int base = d + 1;
+			int k = x - y;
+			int previousK;
+			if (k == -d
+					|| (k != d && snapshot[base + k - 1] < snapshot[base + k + 1])) {
+				previousK = k + 1;
+			} else {
+				previousK = k - 1;
+			}
+			int previousX = snapshot[base + previousK];
+			int previousY = previousX - previousK;
+			while (x > previousX && y > previousY) {
+				x--;
+				y--;
+				result[prefix + y] = prefix + x;
+			}
+			x = previousX;
+			y = previousY;
+		}
+	}
+
+	private static boolean equals(Object a, Object b, IElementComparer comparer) {
+		if (a == null || b == null) {
+			return a == b;
+		}
+		if (comparer == null) {
+			return a.equals(b);
+		}
+		return comparer.equals(a, b);
+	}
+}
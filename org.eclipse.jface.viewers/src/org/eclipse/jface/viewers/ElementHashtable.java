@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.Arrays;
+
+/**
+ * ElementHashtable is the element to widget map used by
+ * <code>StructuredViewer</code> when hash lookup is enabled. Keys and values
+ * cannot be null.
+ * <p>
+ * Unlike <code>CustomHashtable</code> this table does not allocate an entry
+ * object per mapping. Keys and values are stored in two parallel arrays whose
+ * length is a power of two, collisions are resolved by linear probing, and
+ * removal shifts the following entries of the probe sequence back so that no
+ * tombstones are needed. The table is kept at most half full.
+ * </p>
+ * <p>
+ * Like <code>CustomHashtable</code>, keys are hashed and compared using an
+ * optional <code>IElementComparer</code>.
+ * </p>
+ *
+ * @since 3.6
+ */
+/* package */final class ElementHashtable {
+
+	/**
+	 * The smallest capacity of a table.
+	 */
+	private static final int MINIMUM_CAPACITY = 8;
+
+	/**
+	 * The largest power of two that can be used as the length of an array.
+	 */
+	private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+	private Object[] keys;
+
+	private Object[] values;
+
+	private int elementCount;
+
+	private int threshold;
+
+	private IElementComparer comparer;
+
+	/**
+	 * Constructs a new hash table that can hold the given number of elements
+	 * without rehashing, using the given element comparer.
+	 *
+	 * @param capacity
+	 *            the number of elements that can be added without rehashing
+	 * @param comparer
+	 *            the element comparer to use to compare keys and obtain hash
+	 *            codes for keys, or <code>null</code> to use the normal
+	 *            <code>equals</code> and <code>hashCode</code> methods
+	 */
+	public ElementHashtable(int capacity, IElementComparer comparer) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.comparer = comparer;
+		allocate(tableSizeFor(capacity));
+	}
+
+	/**
+	 * Constructs a new hash table with enough capacity to hold all keys in the
+	 * given hash table, then adds all key/value pairs in the given hash table
+	 * to the new one, using the given element comparer.
+	 *
+	 * @param table
+	 *            the original hash table to copy from
+	 * @param comparer
+	 *            the element comparer to use to compare keys and obtain hash
+	 *            codes for keys, or <code>null</code> to use the normal
+	 *            <code>equals</code> and <code>hashCode</code> methods
+	 */
+	public ElementHashtable(ElementHashtable table, IElementComparer comparer) {
+		this(table.size(), comparer);
+		Object[] oldKeys = table.keys;
+		Object[] oldValues = table.values;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the element comparer used to compare keys and to obtain hash
+	 * codes for keys, or <code>null</code> if no comparer has been provided.
+	 *
+	 * @return the element comparer or <code>null</code>
+	 */
+	public IElementComparer getComparer() {
+		return comparer;
+	}
+
+	/**
+	 * Answers the value associated with the specified key in this table.
+	 *
+	 * @param key
+	 *            the key of the value returned
+	 * @return the value associated with the specified key, null if the
+	 *         specified key does not exist
+	 */
+	public Object get(Object key) {
+		int index = indexOf(key);
+		return index == -1 ? null : values[index];
+	}
+
+	/**
+	 * Answers if this table contains the specified object as a key of one of
+	 * the key/value pairs.
+	 *
+	 * @param key
+	 *            the object to look for as a key in this table
+	 * @return true if object is a key in this table, false otherwise
+	 */
+	public boolean containsKey(Object key) {
+		return indexOf(key) != -1;
+	}
+
+	/**
+	 * Associate the specified value with the specified key in this table. If
+	 * the key already exists, the old key and value are replaced. The key and
+	 * value cannot be null.
+	 *
+	 * @param key
+	 *            the key to add
+	 * @param value
+	 *            the value to add
+	 * @return the old value associated with the specified key, null if the key
+	 *         did not exist
+	 */
+	public Object put(Object key, Object value) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		Object current;
+		while ((current = keys[index]) != null) {
+			if (current == key || keyEquals(key, current)) {
+				Object result = values[index];
+				// important to avoid hanging onto keys that are equal but
+				// "old" -- see bug 30607
+				keys[index] = key;
+				values[index] = value;
+				return result;
+			}
+			index = (index + 1) & mask;
+		}
+		if (elementCount >= threshold) {
+			rehash(keys.length << 1);
+			mask = keys.length - 1;
+			index = hash(key) & mask;
+			while (keys[index] != null) {
+				index = (index + 1) & mask;
+			}
+		}
+		keys[index] = key;
+		values[index] = value;
+		elementCount++;
+		return null;
+	}
+
+	/**
+	 * Remove the key/value pair with the specified key from this table.
+	 *
+	 * @param key
+	 *            the key to remove
+	 * @return the value associated with the specified key, null if the
+	 *         specified key did not exist
+	 */
+	public Object remove(Object key) {
+		int index = indexOf(key);
+		if (index == -1) {
+			return null;
+		}
+		Object result = values[index];
+		int mask = keys.length - 1;
+		// Shift back the entries following the removed one in the same probe
+		// sequence, so that lookups never stop at the freed slot too early.
+		int hole = index;
+		int next = (hole + 1) & mask;
+		Object current;
+		while ((current = keys[next]) != null) {
+			int home = hash(current) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = current;
+				values[hole] = values[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[hole] = null;
+		values[hole] = null;
+		elementCount--;
+		return result;
+	}
+
+	/**
+	 * Removes all key/value pairs from this table. The capacity of the table
+	 * is retained.
+	 */
+	public void clear() {
+		if (elementCount > 0) {
+			Arrays.fill(keys, null);
+			Arrays.fill(values, null);
+			elementCount = 0;
+		}
+	}
+
+	/**
+	 * Grows this table, if necessary, so that it can hold the given number of
+	 * elements without rehashing.
+	 *
+	 * @param capacity
+	 *            the number of elements
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > threshold) {
+			rehash(tableSizeFor(capacity));
+		}
+	}
+
+	/**
+	 * Answers the keys of this table, in no particular order.
+	 *
+	 * @return a new array holding the keys of this table
+	 */
+	public Object[] keys() {
+		Object[] result = new Object[elementCount];
+		int count = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				result[count++] = keys[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Answers the number of key/value pairs in this table.
+	 *
+	 * @return the number of key/value pairs in this table
+	 */
+	public int size() {
+		return elementCount;
+	}
+
+	/**
+	 * Answers the string representation of this table.
+	 *
+	 * @return the string representation of this table
+	 */
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append('{');
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				if (buffer.length() > 1) {
+					buffer.append(", "); //$NON-NLS-1$
+				}
+				buffer.append(keys[i]);
+				buffer.append('=');
+				buffer.append(values[i]);
+			}
+		}
+		buffer.append('}');
+		return buffer.toString();
+	}
+
+	/**
+	 * Returns the slot holding the given key, or -1 if the key is not in this
+	 * table.
+	 */
+	private int indexOf(Object key) {
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		Object current;
+		while ((current = keys[index]) != null) {
+			if (current == key || keyEquals(key, current)) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Answers the hash code for the given key. The bits are mixed because the
+	 * slot is taken from the low bits only, and many <code>hashCode</code>
+	 * implementations (for example <code>Integer</code>) do not spread them.
+	 */
+	private int hash(Object key) {
+		int h = comparer == null ? key.hashCode() : comparer.hashCode(key);
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Compares two keys for equality.
+	 */
+	private boolean keyEquals(Object a, Object b) {
+		if (comparer == null) {
+			return a.equals(b);
+		}
+		return comparer.equals(a, b);
+	}
+
+	private void allocate(int length) {
+		keys = new Object[length];
+		values = new Object[length];
+		threshold = length == MAXIMUM_CAPACITY ? length - 1 : length >> 1;
+	}
+
+	private void rehash(int length) {
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(length);
+		int mask = length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			Object key = oldKeys[i];
+			if (key != null) {
+				int index = hash(key) & mask;
+				while (keys[index] != null) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = key;
+				values[index] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the smallest power of two table length that holds the given
+	 * number of elements without exceeding the load factor.
+	 */
+	private static int tableSizeFor(int capacity) {
+		int length = MINIMUM_CAPACITY;
+		while (length < MAXIMUM_CAPACITY && (length >> 1) < capacity) {
+			length <<= 1;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import org.eclipse.swt.widgets.Widget;
+
+/**
+ * ElementKeyIndex maps the keys that an <code>IElementKeyProvider</code>
+ * returns for the elements of a viewer onto the widgets showing them. It is
+ * used by <code>AbstractTreeViewer</code> to find items without hash lookup,
+ * so that the elements need not have stable <code>equals</code> and
+ * <code>hashCode</code> methods.
+ * <p>
+ * A key maps onto a single <code>Widget</code>, or onto a
+ * <code>Widget[]</code> if several items show elements with that key.
+ * Widgets that have been disposed, or whose element no longer has the key,
+ * are dropped when they are found.
+ * </p>
+ *
+ * @since 3.6
+ */
+/* package */final class ElementKeyIndex {
+
+	private final IElementKeyProvider keyProvider;
+
+	private final ElementHashtable widgets = new ElementHashtable(
+			CustomHashtable.DEFAULT_CAPACITY, null);
+
+	/**
+	 * Creates a new, empty index.
+	 *
+	 * @param keyProvider
+	 *            the provider of the element keys
+	 */
+	ElementKeyIndex(IElementKeyProvider keyProvider) {
+		this.keyProvider = keyProvider;
+	}
+
+	/**
+	 * Records that the given widget shows the given element.
+	 *
+	 * @param element
+	 *            the element
+	 * @param widget
+	 *            the widget
+	 */
+	void add(Object element, Widget widget) {
+		Object key = keyProvider.getKey(element);
+		Object widgetOrWidgets = widgets.get(key);
+		if (widgetOrWidgets == null) {
+			widgets.put(key, widget);
+		} else if (widgetOrWidgets instanceof Widget) {
+			if (widgetOrWidgets != widget) {
+				widgets.put(key, new Widget[] { (Widget) widgetOrWidgets,
+						widget });
+			}
+		} else {
+			Widget[] current = (Widget[]) widgetOrWidgets;
+			if (indexOf(current, widget) == -1) {
+				int length = current.length;
+				Widget[] added = new Widget[length + 1];
+				System.arraycopy(current, 0, added, 0, length);
+				added[length] = widget;
+				widgets.put(key, added);
+			}
+		}
+	}
+
+	/**
+	 * Records that the given widget no longer shows the given element. Does
+	 * nothing if it was not recorded.
+	 *
+	 * @param element
+	 *            the element
+	 * @param widget
+	 *            the widget
+	 */
+	void remove(Object element, Widget widget) {
+		Object key = keyProvider.getKey(element);
+		Object widgetOrWidgets = widgets.get(key);
+		if (widgetOrWidgets == widget) {
+			widgets.remove(key);
+		} else if (widgetOrWidgets instanceof Widget[]) {
+			Widget[] current = (Widget[]) widgetOrWidgets;
+			int index = indexOf(current, widget);
+			if (index != -1) {
+				removeAt(key, current, index);
+			}
+		}
+	}
+
+	/**
+	 * Forgets all widgets showing elements with the key of the given element.
+	 *
+	 * @param element
+	 *            the element
+	 */
+	void removeAll(Object element) {
+		widgets.remove(keyProvider.getKey(element));
+	}
+
+	/**
+	 * Returns a widget showing an element with the key of the given element.
+	 *
+	 * @param element
+	 *            the element
+	 * @return a widget, or <code>null</code> if none
+	 */
+	Widget find(Object element) {
+		Object key = keyProvider.getKey(element);
+		Object widgetOrWidgets;
+		while ((widgetOrWidgets = widgets.get(key)) != null) {
+			if (widgetOrWidgets instanceof Widget) {
+				Widget widget = (Widget) widgetOrWidgets;
+				if (isValid(widget, key)) {
+					return widget;
+				}
+				widgets.remove(key);
+			} else {
+				Widget[] current = (Widget[]) widgetOrWidgets;
+				if (isValid(current[0], key)) {
+					return current[0];
+				}
+				removeAt(key, current, 0);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Makes room for the given number of additional keys.
+	 *
+	 * @param count
+	 *            the number of keys about to be added
+	 */
+	void reserve(int count) {
+		widgets.ensureCapacity(widgets.size() + count);
+	}
+
+	/**
+	 * Forgets all widgets.
+	 */
+	void clear() {
+		widgets.clear();
+	}
+
+	private boolean isValid(Widget widget, Object key) {
+		if (widget.isDisposed()) {
+			return false;
+		}
+		Object data = widget.getData();
+		return data != null && key.equals(keyProvider.getKey(data));
+	}
+
+	private void removeAt(Object key, Widget[] current, int index) {
+		int length = current.length;
+		if (length == 2) {
+			widgets.put(key, current[1 - index]);
+		} else {
+			Widget[] removed = new Widget[length - 1];
+			System.arraycopy(current, 0, removed, 0, index);
+			System.arraycopy(current, index + 1, removed, index, length - index
+					- 1);
+			widgets.put(key, removed);
+		}
+	}
+
+	private static int indexOf(Widget[] widgets, Widget widget) {
+		for (int i = 0; i < widgets.length; i++) {
+			if (widgets[i] == widget) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+/**
+ * Provides stable keys for the elements of a viewer. A viewer that has been
+ * given a key provider can find the items of an element by its key, even if
+ * the <code>equals</code> and <code>hashCode</code> methods of the elements
+ * change as the elements are modified.
+ * <p>
+ * The key of an element must not change while the element is shown in the
+ * viewer, and two elements have equal keys exactly if the viewer's comparer
+ * considers them equal. Keys are compared using their own <code>equals</code>
+ * and <code>hashCode</code> methods.
+ * </p>
+ *
+ * @see AbstractTreeViewer#setElementKeyProvider(IElementKeyProvider)
+ * @since 3.6
+ */
+public interface IElementKeyProvider {
+
+	/**
+	 * Returns the key of the given element.
+	 *
+	 * @param element
+	 *            the element
+	 * @return the key of the element, not <code>null</code>
+	 */
+	public Object getKey(Object element);
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+/**
+ * A lazy content provider for table viewers created using the SWT.VIRTUAL
+ * flag that is asked for ranges of rows rather than for single rows. This
+ * allows content providers backed by a database or a remote service to fetch
+ * all rows that became visible with a single request.
+ * <p>
+ * The viewer collects the rows that become visible while the display handles
+ * its pending events, and calls {@link #updateElements(int, int)} once per
+ * contiguous range of them. If a read-ahead is set on the viewer, the ranges
+ * are extended by that many rows in the direction of scrolling.
+ * {@link #updateElement(int)} is still called where the viewer needs a
+ * single row immediately, for example when computing the selection.
+ * </p>
+ *
+ * @see AbstractTableViewer#setReadAhead(int)
+ * @since 3.6
+ */
+public interface ILazyRangeContentProvider extends ILazyContentProvider {
+	/**
+	 * Called when previously-blank items become visible in the table viewer.
+	 * For each row in the range that it knows the element of, the content
+	 * provider should respond by calling TableViewer#replace(Object, int),
+	 * either from this method or later from the UI thread.
+	 *
+	 * @param start
+	 *            the index of the first row to update
+	 * @param count
+	 *            the number of rows to update, at least 1
+	 */
+	public void updateElements(int start, int count);
+}
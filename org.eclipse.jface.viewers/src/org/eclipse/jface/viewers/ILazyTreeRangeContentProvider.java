@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers;
+
+/**
+ * A lazy tree content provider that is asked for ranges of children and for
+ * the child counts of several elements at once, rather than for one child or
+ * one child count at a time. This allows content providers backed by a remote
+ * service to resolve the visible children of a parent with a single request.
+ * <p>
+ * The tree viewer collects the children that become visible while the display
+ * handles its pending events, and calls
+ * {@link #updateElements(Object, int, int)} once per parent and contiguous
+ * range of indices. When an item is expanded, its children are requested the
+ * same way before the item is shown expanded. The child counts of the items
+ * that were replaced are requested with a single call to
+ * {@link #updateChildCounts(Object[])}.
+ * </p>
+ * <p>
+ * The single element methods of <code>ILazyTreeContentProvider</code> are
+ * still called where the viewer needs an answer immediately, for example when
+ * the child count of an item that is being expanded is not known yet.
+ * </p>
+ *
+ * @since 3.6
+ */
+public interface ILazyTreeRangeContentProvider extends ILazyTreeContentProvider {
+	/**
+	 * Called when previously-blank items become visible in the tree viewer. For
+	 * each child in the range that it knows, the content provider should
+	 * respond by calling {@link TreeViewer#replace(Object, int, Object)}, and
+	 * should update the child count of the replaced elements as described for
+	 * {@link ILazyTreeContentProvider#updateElement(Object, int)}.
+	 *
+	 * @param parent
+	 *            The parent of the elements, or the viewer's input if the
+	 *            elements to update are root elements
+	 * @param start
+	 *            The index of the first element to update
+	 * @param count
+	 *            The number of elements to update, at least 1
+	 */
+	public void updateElements(Object parent, int start, int count);
+
+	/**
+	 * Called when the tree viewer needs up-to-date child counts for the given
+	 * elements. For each element that it knows, the content provider should
+	 * respond by calling {@link TreeViewer#setChildCount(Object, int)} if the
+	 * child count shown in the viewer is not correct.
+	 *
+	 * @param elements
+	 *            The elements for which an up-to-date child count is needed
+	 */
+	public void updateChildCounts(Object[] elements);
+}
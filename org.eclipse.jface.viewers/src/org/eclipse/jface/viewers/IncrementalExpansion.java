@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Item;
+import org.eclipse.swt.widgets.Widget;
+
+/**
+ * Expands a subtree of an <code>AbstractTreeViewer</code> in slices of
+ * bounded duration that are run from the event loop of the display, so that
+ * input events are processed between slices. Items are expanded level by
+ * level, except that items currently visible in the tree are expanded before
+ * all others.
+ * <p>
+ * All methods must be called from the UI thread.
+ * </p>
+ *
+ * @see AbstractTreeViewer#expandToLevel(Object, int, IProgressMonitor)
+ * @since 3.6
+ */
+/* package */final class IncrementalExpansion implements Runnable {
+
+	/**
+	 * Maximum duration of a slice, in milliseconds.
+	 */
+	private static final int TIME_SLICE = 50;
+
+	private final AbstractTreeViewer viewer;
+
+	private final IProgressMonitor monitor;
+
+	/**
+	 * Widgets waiting to be expanded, in the order in which they were found.
+	 * May contain widgets that have been expanded already.
+	 */
+	private final LinkedList queue = new LinkedList();
+
+	/**
+	 * Maps the widgets waiting to be expanded onto the number of levels to
+	 * expand, as an <code>Integer</code>.
+	 */
+	private final Map levels = new HashMap();
+
+	private boolean finished;
+
+	/**
+	 * Creates a new expansion of the subtree rooted at the given widget.
+	 *
+	 * @param viewer
+	 *            the viewer
+	 * @param widget
+	 *            the root of the subtree
+	 * @param level
+	 *            non-negative level, or <code>ALL_LEVELS</code> to expand all
+	 *            levels of the tree
+	 * @param monitor
+	 *            monitor receiving one unit of work per expanded item
+	 */
+	IncrementalExpansion(AbstractTreeViewer viewer, Widget widget, int level,
+			IProgressMonitor monitor) {
+		this.viewer = viewer;
+		this.monitor = monitor;
+		if (level == AbstractTreeViewer.ALL_LEVELS || level > 0) {
+			enqueue(widget, level);
+		}
+	}
+
+	/**
+	 * Starts the expansion. The first slice runs once the current event has
+	 * been handled.
+	 */
+	void start() {
+		monitor.beginTask("", IProgressMonitor.UNKNOWN); //$NON-NLS-1$
+		viewer.getControl().getDisplay().asyncExec(this);
+	}
+
+	/**
+	 * Stops the expansion. Items expanded so far remain expanded.
+	 */
+	void cancel() {
+		finish();
+	}
+
+	/**
+	 * Runs one slice.
+	 */
+	public void run() {
+		if (finished) {
+			return;
+		}
+		Control control = viewer.getControl();
+		if (control.isDisposed() || monitor.isCanceled()) {
+			finish();
+			return;
+		}
+		if (viewer.isBusy()) {
+			// Try again once the viewer has finished its current operation
+			control.getDisplay().timerExec(TIME_SLICE, this);
+			return;
+		}
+
+		long end = System.currentTimeMillis() + TIME_SLICE;
+
+		Item[] visible = viewer.getVisibleItems();
+		for (int i = 0; i < visible.length
+				&& System.currentTimeMillis() < end; i++) {
+			if (levels.containsKey(visible[i])) {
+				expand(visible[i]);
+			}
+		}
+
+		while (!queue.isEmpty() && System.currentTimeMillis() < end
+				&& !monitor.isCanceled()) {
+			Widget next = (Widget) queue.removeFirst();
+			if (levels.containsKey(next)) {
+				expand(next);
+			}
+		}
+
+		if (levels.isEmpty() || monitor.isCanceled()) {
+			finish();
+		} else {
+			control.getDisplay().asyncExec(this);
+		}
+	}
+
+	/**
+	 * Expands the given widget and queues its children.
+	 *
+	 * @param widget
+	 *            a widget waiting to be expanded
+	 */
+	private void expand(Widget widget) {
+		int level = ((Integer) levels.remove(widget)).intValue();
+		if (widget.isDisposed()) {
+			return;
+		}
+		if (viewer.internalExpandOne(widget)
+				&& (level == AbstractTreeViewer.ALL_LEVELS || level > 1)) {
+			Item[] children = viewer.getChildren(widget);
+			if (children != null) {
+				int newLevel = (level == AbstractTreeViewer.ALL_LEVELS ? AbstractTreeViewer.ALL_LEVELS
+						: level - 1);
+				for (int i = 0; i < children.length; i++) {
+					enqueue(children[i], newLevel);
+				}
+			}
+		}
+		monitor.worked(1);
+	}
+
+	private void enqueue(Widget widget, int level) {
+		levels.put(widget, new Integer(level));
+		queue.addLast(widget);
+	}
+
+	private void finish() {
+		if (!finished) {
+			finished = true;
+			queue.clear();
+			levels.clear();
+			monitor.done();
+		}
+	}
+}
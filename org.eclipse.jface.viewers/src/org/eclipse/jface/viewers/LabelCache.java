@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.Image;
+
+/**
+ * Remembers the labels computed by the cell label providers of a
+ * <code>ColumnViewer</code>, per element and column, so that updating the
+ * cell of an unchanged element again replays the recorded label instead of
+ * calling the label provider.
+ * <p>
+ * A label is recorded by observing the setters the label provider calls on
+ * the <code>ViewerCell</code>; only those attributes are replayed. Every
+ * invalidation advances a generation counter, and a label is only stored if
+ * no invalidation happened while it was computed, so that a label provider
+ * firing a change from within <code>update</code> does not leave a stale
+ * label behind.
+ * </p>
+ * <p>
+ * Elements are compared using the viewer's <code>IElementComparer</code>,
+ * or <code>equals</code> if there is none.
+ * </p>
+ *
+ * @since 3.6
+ */
+/* package */final class LabelCache {
+
+	/**
+	 * The attributes set on a cell by a label provider.
+	 */
+	static final class Label {
+		private static final int TEXT = 1;
+
+		private static final int IMAGE = 1 << 1;
+
+		private static final int FONT = 1 << 2;
+
+		private static final int FOREGROUND = 1 << 3;
+
+		private static final int BACKGROUND = 1 << 4;
+
+		private static final int STYLE_RANGES = 1 << 5;
+
+		private int set;
+
+		private String text;
+
+		private Image image;
+
+		private Font font;
+
+		private Color foreground;
+
+		private Color background;
+
+		private StyleRange[] styleRanges;
+
+		void setText(String text) {
+			this.text = text;
+			set |= TEXT;
+		}
+
+		void setImage(Image image) {
+			this.image = image;
+			set |= IMAGE;
+		}
+
+		void setFont(Font font) {
+			this.font = font;
+			set |= FONT;
+		}
+
+		void setForeground(Color foreground) {
+			this.foreground = foreground;
+			set |= FOREGROUND;
+		}
+
+		void setBackground(Color background) {
+			this.background = background;
+			set |= BACKGROUND;
+		}
+
+		void setStyleRanges(StyleRange[] styleRanges) {
+			this.styleRanges = styleRanges;
+			set |= STYLE_RANGES;
+		}
+
+		void apply(ViewerCell cell) {
+			if ((set & TEXT) != 0) {
+				cell.setText(text);
+			}
+			if ((set & IMAGE) != 0) {
+				cell.setImage(image);
+			}
+			if ((set & FONT) != 0) {
+				cell.setFont(font);
+			}
+			if ((set & FOREGROUND) != 0) {
+				cell.setForeground(foreground);
+			}
+			if ((set & BACKGROUND) != 0) {
+				cell.setBackground(background);
+			}
+			if ((set & STYLE_RANGES) != 0) {
+				cell.setStyleRanges(styleRanges);
+			}
+		}
+	}
+
+	private static final Label[] NO_LABELS = new Label[0];
+
+	private IElementComparer comparer;
+
+	/**
+	 * Maps elements to a <code>Label[]</code> indexed by column.
+	 */
+	private ElementHashtable labels;
+
+	private int generation;
+
+	private long hits;
+
+	private long misses;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param comparer
+	 *            the viewer's comparer, or <code>null</code>
+	 */
+	LabelCache(IElementComparer comparer) {
+		this.comparer = comparer;
+		labels = new ElementHashtable(0, comparer);
+	}
+
+	/**
+	 * Updates the given cell, replaying the recorded label if there is one and
+	 * calling the given label provider otherwise.
+	 *
+	 * @param labelProvider
+	 *            the label provider of the cell's column
+	 * @param cell
+	 *            the cell to update
+	 */
+	void update(CellLabelProvider labelProvider, ViewerCell cell) {
+		Object element = cell.getElement();
+		if (element == null) {
+			labelProvider.update(cell);
+			return;
+		}
+		int column = cell.getColumnIndex();
+		Label[] columns = (Label[]) labels.get(element);
+		if (columns != null && column < columns.length
+				&& columns[column] != null) {
+			hits++;
+			columns[column].apply(cell);
+			return;
+		}
+		misses++;
+		int startGeneration = generation;
+		Label label = new Label();
+		Label previous = cell.recorder;
+		cell.recorder = label;
+		try {
+			labelProvider.update(cell);
+		} finally {
+			cell.recorder = previous;
+		}
+		if (generation != startGeneration) {
+			return;
+		}
+		// the map may have changed if the label provider updated other cells
+		columns = (Label[]) labels.get(element);
+		if (columns == null) {
+			columns = NO_LABELS;
+		}
+		if (column >= columns.length) {
+			Label[] newColumns = new Label[column + 1];
+			System.arraycopy(columns, 0, newColumns, 0, columns.length);
+			columns = newColumns;
+			labels.put(element, columns);
+		}
+		columns[column] = label;
+	}
+
+	/**
+	 * Discards the labels recorded for the given element.
+	 *
+	 * @param element
+	 *            the element
+	 */
+	void invalidate(Object element) {
+		generation++;
+		labels.remove(element);
+	}
+
+	/**
+	 * Discards the labels recorded for the given element because it is no
+	 * longer shown. Unlike <code>invalidate</code>, labels being computed are
+	 * still stored.
+	 *
+	 * @param element
+	 *            the element
+	 */
+	void evict(Object element) {
+		labels.remove(element);
+	}
+
+	/**
+	 * Discards all recorded labels.
+	 */
+	void invalidateAll() {
+		generation++;
+		if (labels.size() > 0) {
+			labels = new ElementHashtable(0, comparer);
+		}
+	}
+
+	/**
+	 * Returns the comparer used for elements.
+	 *
+	 * @return the comparer, or <code>null</code>
+	 */
+	IElementComparer getComparer() {
+		return comparer;
+	}
+
+	/**
+	 * Sets the comparer used for elements, discarding all recorded labels.
+	 *
+	 * @param comparer
+	 *            the viewer's comparer, or <code>null</code>
+	 */
+	void setComparer(IElementComparer comparer) {
+		this.comparer = comparer;
+		generation++;
+		labels = new ElementHashtable(0, comparer);
+	}
+
+	/**
+	 * Returns the number of cell updates answered from this cache.
+	 *
+	 * @return the number of hits
+	 */
+	long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of cell updates that called the label provider.
+	 *
+	 * @return the number of misses
+	 */
+	long getMisses() {
+		return misses;
+	}
+}
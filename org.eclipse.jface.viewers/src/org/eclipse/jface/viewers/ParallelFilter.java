@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+/**
+ * Runs thread-safe viewer filters over a large array of elements on several
+ * threads. The array is split into one contiguous range per thread; the
+ * calling thread processes the first range itself and waits for the others.
+ * The selected elements are returned in their original order.
+ * <p>
+ * Exceptions thrown by a filter on a worker thread are rethrown on the
+ * calling thread.
+ * </p>
+ *
+ * @see ViewerFilter#isThreadSafe()
+ * @since 3.6
+ */
+/* package */final class ParallelFilter {
+
+	/**
+	 * The smallest number of elements handled by one thread. Smaller arrays
+	 * are filtered on the calling thread only.
+	 */
+	static final int MINIMUM_RANGE = 8192;
+
+	private ParallelFilter() {
+		// not instantiated
+	}
+
+	/**
+	 * Returns whether the given filters may run in parallel over the given
+	 * number of elements.
+	 *
+	 * @param filters
+	 *            the filters
+	 * @param count
+	 *            the number of elements
+	 * @return <code>true</code> if all filters are thread-safe, there is more
+	 *         than one processor, and there are enough elements
+	 */
+	static boolean canFilter(ViewerFilter[] filters, int count) {
+		if (count < 2 * MINIMUM_RANGE
+				|| Runtime.getRuntime().availableProcessors() < 2) {
+			return false;
+		}
+		for (int i = 0; i < filters.length; i++) {
+			if (!filters[i].isThreadSafe()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the elements accepted by all of the given filters, in their
+	 * original order. The input array is not modified.
+	 *
+	 * @param viewer
+	 *            the viewer passed to <code>select</code>
+	 * @param parent
+	 *            the parent element passed to <code>select</code>
+	 * @param elements
+	 *            the elements to filter
+	 * @param filters
+	 *            the thread-safe filters to apply
+	 * @return the filtered elements
+	 */
+	static Object[] filter(final Viewer viewer, final Object parent,
+			final Object[] elements, final ViewerFilter[] filters) {
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+				elements.length / MINIMUM_RANGE);
+		final boolean[] selected = new boolean[elements.length];
+		final Throwable[] failure = new Throwable[1];
+		Thread[] workers = new Thread[threads - 1];
+		int rangeSize = (elements.length + threads - 1) / threads;
+		for (int i = 0; i < workers.length; i++) {
+			final int start = (i + 1) * rangeSize;
+			final int end = Math.min(start + rangeSize, elements.length);
+			workers[i] = new Thread("Viewer Filter") { //$NON-NLS-1$
+				public void run() {
+					try {
+						select(viewer, parent, elements, filters, selected,
+								start, end);
+					} catch (Throwable t) {
+						synchronized (failure) {
+							if (failure[0] == null) {
+								failure[0] = t;
+							}
+						}
+					}
+				}
+			};
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		try {
+			select(viewer, parent, elements, filters, selected, 0, Math.min(
+					rangeSize, elements.length));
+		} finally {
+			boolean interrupted = false;
+			for (int i = 0; i < workers.length; i++) {
+				while (workers[i].isAlive()) {
+					try {
+						workers[i].join();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (failure) {
+			if (failure[0] instanceof RuntimeException) {
+				throw (RuntimeException) failure[0];
+			}
+			if (failure[0] instanceof Error) {
+				throw (Error) failure[0];
+			}
+		}
+
+		int count = 0;
+		for (int i = 0; i < selected.length; i++) {
+			if (selected[i]) {
+				count++;
+			}
+		}
+		Object[] result = new Object[count];
+		for (int i = 0, j = 0; j < count; i++) {
+			if (selected[i]) {
+				result[j++] = elements[i];
+			}
+		}
+		return result;
+	}
+
+	private static void select(Viewer viewer, Object parent,
+			Object[] elements, ViewerFilter[] filters, boolean[] selected,
+			int start, int end) {
+		for (int i = start; i < end; i++) {
+			boolean add = true;
+			for (int j = 0; j < filters.length; j++) {
+				add = filters[j].select(viewer, parent, elements[i]);
+				if (!add) {
+					break;
+				}
+			}
+			selected[i] = add;
+		}
+	}
+}
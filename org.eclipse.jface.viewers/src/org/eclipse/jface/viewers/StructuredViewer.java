@@ -59,7 +59,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 * <code>Object</code>, value type: <code>Widget</code>, or <code>Widget[]</code>).
 	 * <code>null</code> means that the element map is disabled.
 	 */
-	private CustomHashtable elementMap;
+	private ElementHashtable elementMap;
 
 	/**
 	 * The comparer to use for comparing elements, or <code>null</code> to use
@@ -93,6 +93,20 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 * @see #setSelection(ISelection, boolean)
 	 */
 	private boolean inChange;
+
+	/**
+	 * The changes recorded while <code>runBatched</code> is running, or
+	 * <code>null</code> if no batch is running.
+	 * 
+	 * @see #runBatched(Runnable)
+	 */
+	private ViewerBatch batch;
+
+	/**
+	 * Indicates whether the changes of a batch are being applied, in which
+	 * case the selection is preserved once around all of them.
+	 */
+	private boolean applyingBatch;
 	
 	/**
 	 * Used while a selection change is in progress on this viewer to indicates
@@ -711,6 +725,8 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 
 	/**
 	 * Returns the result of running the given elements through the filters.
+	 * If all filters are thread-safe and there are many elements, the
+	 * elements are filtered on several threads.
 	 * 
 	 * @param elements
 	 *            the elements to filter
@@ -718,6 +734,11 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	protected Object[] filter(Object[] elements) {
 		if (filters != null) {
+			ViewerFilter[] filterArray = getFilters();
+			if (ParallelFilter.canFilter(filterArray, elements.length)) {
+				return ParallelFilter.filter(this, getRoot(), elements,
+						filterArray);
+			}
 			ArrayList filtered = new ArrayList(elements.length);
 			Object root = getRoot();
 			for (int i = 0; i < elements.length; i++) {
@@ -958,6 +979,11 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 			if (cp != null) {
 				result = cp.getElements(parent);
 				assertElementsNotNull(result);
+				if (elementMap != null) {
+					// all root elements will be mapped, avoid growing the map
+					// step by step while creating their items
+					elementMap.ensureCapacity(result.length);
+				}
 			}
 		}
 		return (result != null) ? result : new Object[0];
@@ -1315,6 +1341,22 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		return false;
 	}
 
+	/**
+	 * Makes room in the element map for the given number of elements that are
+	 * about to be mapped in addition to the ones already mapped. Does nothing
+	 * if mapping is disabled.
+	 * 
+	 * @param count
+	 *            the number of elements about to be mapped
+	 * 
+	 * @since 3.6
+	 */
+	void reserveElementMap(int count) {
+		if (elementMap != null) {
+			elementMap.ensureCapacity(elementMap.size() + count);
+		}
+	}
+
 	/**
 	 * Returns a new hashtable using the given capacity and this viewer's element comparer.
 	 * 
@@ -1378,6 +1420,11 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 * @since 3.3
 	 */
 	void preservingSelection(Runnable updateCode, boolean reveal) {
+		if (applyingBatch) {
+			// the selection is preserved around the whole batch
+			updateCode.run();
+			return;
+		}
 		if (!preserveSelection) {
 			return;
 		}
@@ -1407,6 +1454,162 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		}
 	}
 	
+	/**
+	 * Runs the given code, typically the reaction of a content provider to one
+	 * model transaction, and applies the changes it requests from this viewer
+	 * in one consolidated pass afterwards.
+	 * <p>
+	 * While the code runs, calls to <code>refresh</code>,
+	 * <code>update</code> and the <code>add</code> and <code>remove</code>
+	 * methods of the table, tree and list viewers are recorded rather than
+	 * applied. They are coalesced: removing an element added in the same batch
+	 * cancels the addition, repeated updates of an element collapse into one,
+	 * and a refresh subsumes the additions of children to the refreshed
+	 * element, the label updates of the refreshed element if it updates
+	 * labels, and everything else if it refreshes the root. The remaining
+	 * changes are applied with redraw turned off, in the order removals,
+	 * additions, refreshes, updates. The selection is preserved once around
+	 * all of them, so at most one selection changed event is sent.
+	 * </p>
+	 * <p>
+	 * Other methods that change the items of the viewer, such as
+	 * <code>insert</code>, first apply the changes recorded so far.
+	 * Batches may be nested; changes are applied when the outermost batch
+	 * ends, even if the code throws an exception.
+	 * </p>
+	 * 
+	 * @param runnable
+	 *            the code to run
+	 * 
+	 * @since 3.6
+	 */
+	public void runBatched(Runnable runnable) {
+		if (batch != null) {
+			runnable.run();
+			return;
+		}
+		batch = new ViewerBatch(getComparer());
+		try {
+			runnable.run();
+		} finally {
+			ViewerBatch changes = batch;
+			batch = null;
+			applyBatch(changes);
+		}
+	}
+
+	/**
+	 * Applies the changes recorded so far in the running batch, if any. The
+	 * batch continues to record later changes.
+	 * <p>
+	 * Called by methods that change the items of the viewer but are not
+	 * recorded, so that they see the items the recorded changes produce.
+	 * </p>
+	 */
+	void flushBatch() {
+		if (batch != null && !batch.isEmpty()) {
+			ViewerBatch changes = batch;
+			batch = null;
+			try {
+				applyBatch(changes);
+			} finally {
+				batch = new ViewerBatch(getComparer());
+			}
+		}
+	}
+
+	/**
+	 * Records the addition of the given elements if a batch is running.
+	 * 
+	 * @param parent
+	 *            the parent element or tree path, or <code>null</code> for
+	 *            viewers without structure
+	 * @param elements
+	 *            the added elements
+	 * @return <code>true</code> if the addition has been recorded and must
+	 *         not be applied now
+	 */
+	boolean recordBatchedAdd(Object parent, Object[] elements) {
+		if (batch == null) {
+			return false;
+		}
+		batch.add(parent, elements);
+		return true;
+	}
+
+	/**
+	 * Records the removal of the given elements if a batch is running.
+	 * 
+	 * @param elements
+	 *            the removed elements or tree paths
+	 * @return <code>true</code> if the removal has been recorded and must not
+	 *         be applied now
+	 */
+	boolean recordBatchedRemove(Object[] elements) {
+		if (batch == null) {
+			return false;
+		}
+		batch.remove(elements, getRoot());
+		return true;
+	}
+
+	/**
+	 * Applies an addition recorded by <code>recordBatchedAdd</code>.
+	 * Subclasses that record additions must override; the default
+	 * implementation refreshes the whole viewer.
+	 * 
+	 * @param parent
+	 *            the parent element or tree path, or <code>null</code>
+	 * @param elements
+	 *            the added elements
+	 */
+	void applyBatchedAdd(Object parent, Object[] elements) {
+		internalRefresh(getRoot());
+	}
+
+	/**
+	 * Applies a removal recorded by <code>recordBatchedRemove</code>.
+	 * Subclasses that record removals must override; the default
+	 * implementation refreshes the whole viewer.
+	 * 
+	 * @param elements
+	 *            the removed elements or tree paths
+	 */
+	void applyBatchedRemove(Object[] elements) {
+		internalRefresh(getRoot());
+	}
+
+	private void applyBatch(final ViewerBatch changes) {
+		Control control = getControl();
+		if (changes.isEmpty() || control == null || control.isDisposed()) {
+			return;
+		}
+		Runnable apply = new Runnable() {
+			public void run() {
+				applyingBatch = true;
+				try {
+					changes.apply(StructuredViewer.this);
+				} finally {
+					applyingBatch = false;
+				}
+			}
+		};
+		control.setRedraw(false);
+		try {
+			if (getPreserveSelection()) {
+				preservingSelection(apply);
+			} else {
+				apply.run();
+			}
+		} finally {
+			control.setRedraw(true);
+		}
+	}
+
+	private boolean isRootElement(Object element) {
+		return element == null || equals(element, getRoot());
+	}
+
 	/*
 	 * Non-Javadoc. Method declared on Viewer.
 	 */
@@ -1452,6 +1655,10 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 *            the element
 	 */
 	public void refresh(final Object element) {
+		if (batch != null) {
+			batch.refresh(element, isRootElement(element), true);
+			return;
+		}
 		preservingSelection(new Runnable() {
 			public void run() {
 				internalRefresh(element);
@@ -1479,6 +1686,10 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 * @since 2.0
 	 */
 	public void refresh(final Object element, final boolean updateLabels) {
+		if (batch != null) {
+			batch.refresh(element, isRootElement(element), updateLabels);
+			return;
+		}
 		preservingSelection(new Runnable() {
 			public void run() {
 				internalRefresh(element, updateLabels);
@@ -1766,7 +1977,8 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		Assert.isTrue(getInput() == null,
 				"Can only enable the hash look up before input has been set");//$NON-NLS-1$
 		if (enable) {
-			elementMap = newHashtable(CustomHashtable.DEFAULT_CAPACITY);
+			elementMap = new ElementHashtable(CustomHashtable.DEFAULT_CAPACITY,
+					getComparer());
 		} else {
 			elementMap = null;
 		}
@@ -1784,7 +1996,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	public void setComparer(IElementComparer comparer) {
 		this.comparer = comparer;
 		if (elementMap != null) {
-			elementMap = new CustomHashtable(elementMap, comparer);
+			elementMap = new ElementHashtable(elementMap, comparer);
 		}
 	}
 
@@ -1853,7 +2065,9 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	protected void unmapAllElements() {
 		if (elementMap != null) {
-			elementMap = newHashtable(CustomHashtable.DEFAULT_CAPACITY);
+			// keep the capacity, the map is usually refilled with about as
+			// many elements as before
+			elementMap.clear();
 		}
 	}
 
@@ -2026,6 +2240,10 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	public void update(Object element, String[] properties) {
 		Assert.isNotNull(element);
+		if (batch != null) {
+			batch.update(element, properties);
+			return;
+		}
 		Widget[] items = findItems(element);
 
 		boolean mayExitEarly = !refreshOccurred;
@@ -2274,7 +2492,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		comparer = null;
 		if (filters != null)
 			filters.clear();
-		elementMap = newHashtable(1);
+		elementMap = new ElementHashtable(0, getComparer());
 		openListeners.clear();
 		doubleClickListeners.clear();
 		colorAndFontCollector.clear();
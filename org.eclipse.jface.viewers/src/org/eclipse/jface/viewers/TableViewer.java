@@ -15,9 +15,13 @@
 
 package org.eclipse.jface.viewers;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Item;
@@ -204,6 +208,29 @@ public class TableViewer extends AbstractTableViewer {
 		return table.getItem(p);
 	}
 
+	/**
+	 * Returns the items that intersect the client area, starting with the top
+	 * item.
+	 * 
+	 * @see org.eclipse.jface.viewers.ColumnViewer#getVisibleItems()
+	 * @since 3.6
+	 */
+	protected Item[] getVisibleItems() {
+		int count = table.getItemCount();
+		int index = table.getTopIndex();
+		Rectangle area = table.getClientArea();
+		int bottom = area.y + area.height;
+		List result = new ArrayList();
+		while (index < count) {
+			TableItem item = table.getItem(index++);
+			if (item.getBounds().y >= bottom) {
+				break;
+			}
+			result.add(item);
+		}
+		return (Item[]) result.toArray(new Item[result.size()]);
+	}
+
 	// Methods to provide widget independency
 
 	protected int doGetItemCount() {
@@ -333,6 +360,7 @@ public class TableViewer extends AbstractTableViewer {
 			boolean reveal) {
 		if (checkBusy())
 			return;
+		flushBatch();
 
 		if (isCellEditorActive()) {
 			cancelEditing();
@@ -382,6 +410,9 @@ public class TableViewer extends AbstractTableViewer {
 		if (elements.length == 0) {
 			return;
 		}
+		if (recordBatchedRemove(elements)) {
+			return;
+		}
 
 		// deselect any items that are being removed, see bug 97786
 		boolean deselectedItems = false;
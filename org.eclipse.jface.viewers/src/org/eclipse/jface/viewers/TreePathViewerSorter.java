@@ -92,6 +92,11 @@ public class TreePathViewerSorter extends ViewerSorter {
      * calling {@link #compare(Viewer, TreePath, Object, Object)} to compare elements.
      * </p>
      * <p>
+     * If sort keys are enabled (see {@link #setUseSortKeys(boolean)}), the
+     * elements are sorted on their precomputed category and label instead,
+     * which is only correct if <code>compare</code> is not overridden.
+     * </p>
+     * <p>
      * Subclasses may reimplement this method to provide a more optimized implementation.
      * </p>
      *
@@ -100,6 +105,10 @@ public class TreePathViewerSorter extends ViewerSorter {
      * @param elements the elements to sort
      */
     public void sort(final Viewer viewer, final TreePath parentPath, Object[] elements) {
+        if (getUseSortKeys()) {
+            sortUsingKeys(viewer, elements);
+            return;
+        }
         Arrays.sort(elements, new Comparator() {
             public int compare(Object a, Object b) {
                 return TreePathViewerSorter.this.compare(viewer, parentPath, a, b);
@@ -14,10 +14,13 @@
 
 package org.eclipse.jface.viewers;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jface.util.Policy;
 import org.eclipse.swt.SWT;
@@ -26,6 +29,7 @@ import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.TreeEvent;
 import org.eclipse.swt.events.TreeListener;
 import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Event;
@@ -84,6 +88,27 @@ public class TreeViewer extends AbstractTreeViewer {
 
 	private boolean contentProviderIsTreeBased;
 
+	/**
+	 * true if the content provider is an ILazyTreeRangeContentProvider
+	 */
+	private boolean contentProviderIsRanged;
+
+	/**
+	 * Children requested by SetData events that have not been passed to the
+	 * ILazyTreeRangeContentProvider yet. Maps the parent widgets onto an
+	 * <code>int[]</code> whose first element is the number of indices that
+	 * follow it.
+	 */
+	private Map pendingElementRequests = new LinkedHashMap();
+
+	/**
+	 * Items whose child count has to be requested from the
+	 * ILazyTreeRangeContentProvider.
+	 */
+	private List pendingChildCountRequests = new ArrayList();
+
+	private boolean lazyRequestsScheduled;
+
 	/**
 	 * The row object reused
 	 */
@@ -287,9 +312,13 @@ public class TreeViewer extends AbstractTreeViewer {
 						TreeItem item = (TreeItem) event.item;
 						TreeItem parentItem = item.getParentItem();
 						int index = event.index;
-						virtualLazyUpdateWidget(
-								parentItem == null ? (Widget) getTree()
-										: parentItem, index);
+						Widget parent = parentItem == null ? (Widget) getTree()
+								: parentItem;
+						if (contentProviderIsRanged) {
+							addPendingElementRequest(parent, index);
+						} else {
+							virtualLazyUpdateWidget(parent, index);
+						}
 					}
 				}
 
@@ -359,6 +388,55 @@ public class TreeViewer extends AbstractTreeViewer {
 		getTree().showItem((TreeItem) item);
 	}
 
+	/**
+	 * Returns the items between the top item of the tree and the bottom of its
+	 * client area, walking the expanded items in the order in which they are
+	 * shown.
+	 *
+	 * @see org.eclipse.jface.viewers.ColumnViewer#getVisibleItems()
+	 * @since 3.6
+	 */
+	protected Item[] getVisibleItems() {
+		Tree tree = getTree();
+		TreeItem item = tree.getTopItem();
+		if (item == null) {
+			return new Item[0];
+		}
+		Rectangle area = tree.getClientArea();
+		int bottom = area.y + area.height;
+		List result = new ArrayList();
+
+		// The index of the current item in its parent is tracked, since
+		// looking it up is linear in the number of siblings
+		TreeItem parent = item.getParentItem();
+		int index = (parent == null) ? tree.indexOf(item) : parent.indexOf(item);
+		while (item != null && item.getBounds().y < bottom) {
+			result.add(item);
+			if (item.getExpanded() && item.getItemCount() > 0) {
+				parent = item;
+				index = 0;
+				item = item.getItem(0);
+				continue;
+			}
+			item = null;
+			while (true) {
+				int count = (parent == null) ? tree.getItemCount() : parent.getItemCount();
+				if (index + 1 < count) {
+					index++;
+					item = (parent == null) ? tree.getItem(index) : parent.getItem(index);
+					break;
+				}
+				if (parent == null) {
+					break;
+				}
+				TreeItem child = parent;
+				parent = parent.getParentItem();
+				index = (parent == null) ? tree.indexOf(child) : parent.indexOf(child);
+			}
+		}
+		return (Item[]) result.toArray(new Item[result.size()]);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -420,6 +498,7 @@ public class TreeViewer extends AbstractTreeViewer {
 	public void setChildCount(final Object elementOrTreePath, final int count) {
 		if (checkBusy())
 			return;
+		flushBatch();
 		preservingSelection(new Runnable() {
 			public void run() {
 				if (internalIsInputOrEmptyPath(elementOrTreePath)) {
@@ -463,6 +542,7 @@ public class TreeViewer extends AbstractTreeViewer {
 			final Object element) {
 		if (checkBusy())
 			return;
+		flushBatch();
 		Item[] selectedItems = getSelection(getControl());
 		TreeSelection selection = (TreeSelection) getSelection();
 		Widget[] itemsToDisassociate;
@@ -629,6 +709,17 @@ public class TreeViewer extends AbstractTreeViewer {
 				children = getChildren(widget);
 			}
 			// touch all children to make sure they are materialized
+			if (contentProviderIsRanged) {
+				int[] indices = new int[children.length];
+				int count = 0;
+				for (int i = 0; i < children.length; i++) {
+					if (children[i].getData() == null) {
+						indices[count++] = i;
+					}
+				}
+				virtualLazyUpdateWidgets(widget, indices, count);
+				return;
+			}
 			for (int i = 0; i < children.length; i++) {
 				if (children[i].getData() == null) {
 					virtualLazyUpdateWidget(widget, i);
@@ -763,7 +854,8 @@ public class TreeViewer extends AbstractTreeViewer {
 					public void widgetDisposed(DisposeEvent e) {
 						if (!treeIsDisposed) {
 							Object data = item.getData();
-							if (usingElementMap() && data != null) {
+							if ((usingElementMap() || usingElementKeyIndex())
+									&& data != null) {
 								unmapElement(data, item);
 							}
 						}
@@ -858,6 +950,7 @@ public class TreeViewer extends AbstractTreeViewer {
 	public void remove(final Object parentOrTreePath, final int index) {
 		if (checkBusy())
 			return;
+		flushBatch();
 		final List oldSelection = new LinkedList(Arrays
 				.asList(((TreeSelection) getSelection()).getPaths()));
 		preservingSelection(new Runnable() {
@@ -954,6 +1047,8 @@ public class TreeViewer extends AbstractTreeViewer {
 		contentProviderIsLazy = (provider instanceof ILazyTreeContentProvider)
 				|| (provider instanceof ILazyTreePathContentProvider);
 		contentProviderIsTreeBased = provider instanceof ILazyTreePathContentProvider;
+		contentProviderIsRanged = !contentProviderIsTreeBased
+				&& provider instanceof ILazyTreeRangeContentProvider;
 		super.setContentProvider(provider);
 	}
 
@@ -971,6 +1066,7 @@ public class TreeViewer extends AbstractTreeViewer {
 	public void setHasChildren(final Object elementOrTreePath, final boolean hasChildren) {
 		if (checkBusy())
 			return;
+		flushBatch();
 		preservingSelection(new Runnable() {
 			public void run() {
 				if (internalIsInputOrEmptyPath(elementOrTreePath)) {
@@ -1040,6 +1136,122 @@ public class TreeViewer extends AbstractTreeViewer {
 		}
 	}
 
+	/**
+	 * Update the children of the widget at the given indices, with one call to
+	 * the ILazyTreeRangeContentProvider per contiguous range of indices.
+	 * @param widget
+	 * @param indices the indices, in any order; sorted by this method
+	 * @param count the number of indices
+	 */
+	private void virtualLazyUpdateWidgets(Widget widget, int[] indices, int count) {
+		Arrays.sort(indices, 0, count);
+		boolean oldBusy = isBusy();
+		setBusy(false);
+		try {
+			ILazyTreeRangeContentProvider provider = (ILazyTreeRangeContentProvider) getContentProvider();
+			for (int i = 0; i < count;) {
+				int start = indices[i];
+				int end = start + 1;
+				while (++i < count && indices[i] <= end) {
+					end = indices[i] + 1;
+				}
+				if (widget.isDisposed()) {
+					return;
+				}
+				provider.updateElements(widget.getData(), start, end - start);
+			}
+		} finally {
+			setBusy(oldBusy);
+		}
+	}
+
+	/**
+	 * Remember that the child at index needs to be updated.
+	 * @param widget
+	 * @param index
+	 */
+	private void addPendingElementRequest(Widget widget, int index) {
+		int[] indices = (int[]) pendingElementRequests.get(widget);
+		if (indices == null) {
+			indices = new int[9];
+		} else if (indices[0] + 1 == indices.length) {
+			int[] newIndices = new int[indices.length * 2 - 1];
+			System.arraycopy(indices, 0, newIndices, 0, indices.length);
+			indices = newIndices;
+		}
+		indices[++indices[0]] = index;
+		pendingElementRequests.put(widget, indices);
+		scheduleLazyRequests();
+	}
+
+	/**
+	 * Make sure that the pending requests are passed to the content provider
+	 * once the pending events have been handled.
+	 */
+	private void scheduleLazyRequests() {
+		if (!lazyRequestsScheduled) {
+			lazyRequestsScheduled = true;
+			getControl().getDisplay().asyncExec(new Runnable() {
+				public void run() {
+					flushLazyRequests();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Pass the pending requests to the ILazyTreeRangeContentProvider. Requests
+	 * for items that have been disposed or materialized in the meantime are
+	 * dropped.
+	 */
+	private void flushLazyRequests() {
+		lazyRequestsScheduled = false;
+		Map elementRequests = pendingElementRequests;
+		List childCountRequests = pendingChildCountRequests;
+		pendingElementRequests = new LinkedHashMap();
+		pendingChildCountRequests = new ArrayList();
+		if (treeIsDisposed || !contentProviderIsRanged) {
+			return;
+		}
+
+		for (Iterator it = elementRequests.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			Widget widget = (Widget) entry.getKey();
+			if (widget.isDisposed()) {
+				continue;
+			}
+			int[] indices = (int[]) entry.getValue();
+			int itemCount = (widget instanceof Tree) ? ((Tree) widget).getItemCount()
+					: ((TreeItem) widget).getItemCount();
+			int count = 0;
+			for (int i = 1; i <= indices[0]; i++) {
+				int index = indices[i];
+				if (index < itemCount && getChild(widget, index).getData() == null) {
+					indices[count++] = index;
+				}
+			}
+			virtualLazyUpdateWidgets(widget, indices, count);
+		}
+
+		List elements = new ArrayList(childCountRequests.size());
+		for (int i = 0; i < childCountRequests.size(); i++) {
+			Item item = (Item) childCountRequests.get(i);
+			if (!item.isDisposed() && item.getData() != null) {
+				elements.add(item.getData());
+			}
+		}
+		if (!elements.isEmpty()) {
+			boolean oldBusy = isBusy();
+			setBusy(false);
+			try {
+				((ILazyTreeRangeContentProvider) getContentProvider())
+						.updateChildCounts(elements.toArray());
+			} finally {
+				setBusy(oldBusy);
+			}
+		}
+	}
+
 	/**
 	 * Update the child count
 	 * @param widget
@@ -1086,6 +1298,9 @@ public class TreeViewer extends AbstractTreeViewer {
 					((ILazyTreePathContentProvider) getContentProvider())
 					.updateChildCount(treePath, currentChildCount);
 				}
+			} else if (contentProviderIsRanged) {
+				pendingChildCountRequests.add(item);
+				scheduleLazyRequests();
 			} else {
 				((ILazyTreeContentProvider) getContentProvider()).updateChildCount(item.getData(), currentChildCount);
 			}
@@ -0,0 +1,392 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the changes requested from a <code>StructuredViewer</code> during
+ * <code>runBatched</code> and coalesces them:
+ * <ul>
+ * <li>removing an element that was added in the same batch cancels the
+ * addition; removing a tree path cancels the additions of its last segment
+ * to its parent</li>
+ * <li>repeated updates of an element collapse into one, with the union of
+ * the changed properties</li>
+ * <li>a refresh of the root subsumes all other changes, except label updates
+ * if it does not update labels itself</li>
+ * <li>a refresh of an element subsumes the additions of children to it, and
+ * its label updates if it updates labels</li>
+ * <li>removing an element drops its pending label updates</li>
+ * </ul>
+ * The recorded changes are applied by <code>StructuredViewer</code> in the
+ * order removals, additions, refreshes, updates.
+ *
+ * @since 3.6
+ */
+/* package */final class ViewerBatch {
+
+	/**
+	 * Marks an update of all properties.
+	 */
+	private static final String[] ALL_PROPERTIES = new String[0];
+
+	/**
+	 * A pending addition of an element to a parent.
+	 */
+	private static final class Addition {
+		Object parent;
+
+		Object element;
+
+		boolean cancelled;
+
+		Addition(Object parent, Object element) {
+			this.parent = parent;
+			this.element = element;
+		}
+	}
+
+	private IElementComparer comparer;
+
+	private boolean refreshAll;
+
+	private boolean refreshAllLabels;
+
+	private List additions = new ArrayList();
+
+	/**
+	 * Maps elements to the pending <code>Addition</code>, or to a
+	 * <code>List</code> of them if the element is added more than once.
+	 */
+	private ElementHashtable additionMap;
+
+	private List removals = new ArrayList();
+
+	private ElementHashtable removalMap;
+
+	private List refreshes = new ArrayList();
+
+	/**
+	 * Maps refreshed elements to <code>Boolean.TRUE</code> if labels are to
+	 * be updated, and <code>Boolean.FALSE</code> otherwise.
+	 */
+	private ElementHashtable refreshMap;
+
+	private List updates = new ArrayList();
+
+	/**
+	 * Maps updated elements to the changed properties, or to
+	 * <code>ALL_PROPERTIES</code>.
+	 */
+	private ElementHashtable updateMap;
+
+	/**
+	 * Creates a new batch comparing elements with the given comparer.
+	 *
+	 * @param comparer
+	 *            the viewer's comparer, or <code>null</code>
+	 */
+	ViewerBatch(IElementComparer comparer) {
+		this.comparer = comparer;
+		additionMap = new ElementHashtable(0, comparer);
+		removalMap = new ElementHashtable(0, comparer);
+		refreshMap = new ElementHashtable(0, comparer);
+		updateMap = new ElementHashtable(0, comparer);
+	}
+
+	/**
+	 * Records that the given elements are added to the given parent.
+	 *
+	 * @param parent
+	 *            the parent element or tree path, or <code>null</code> for
+	 *            viewers without structure
+	 * @param elements
+	 *            the added elements
+	 */
+	void add(Object parent, Object[] elements) {
+		if (refreshAll) {
+			return;
+		}
+		if (parent != null && !(parent instanceof TreePath)
+				&& refreshMap.containsKey(parent)) {
+			// the children of the parent are obtained again anyway
+			return;
+		}
+		for (int i = 0; i < elements.length; i++) {
+			Addition addition = new Addition(parent, elements[i]);
+			additions.add(addition);
+			Object existing = additionMap.get(elements[i]);
+			if (existing == null) {
+				additionMap.put(elements[i], addition);
+			} else if (existing instanceof Addition) {
+				List list = new ArrayList(2);
+				list.add(existing);
+				list.add(addition);
+				additionMap.put(elements[i], list);
+			} else {
+				((List) existing).add(addition);
+			}
+		}
+	}
+
+	/**
+	 * Records that the given elements are removed.
+	 *
+	 * @param elements
+	 *            the removed elements or tree paths
+	 * @param root
+	 *            the viewer's root, the parent of tree paths with a single
+	 *            segment
+	 */
+	void remove(Object[] elements, Object root) {
+		if (refreshAll) {
+			return;
+		}
+		for (int i = 0; i < elements.length; i++) {
+			Object element = elements[i];
+			if (element instanceof TreePath) {
+				cancelAdditions((TreePath) element, root);
+				removals.add(element);
+				continue;
+			}
+			// the element may also have been shown before the batch, so the
+			// removal is still applied
+			Object existing = additionMap.remove(element);
+			if (existing instanceof Addition) {
+				((Addition) existing).cancelled = true;
+			} else if (existing != null) {
+				List list = (List) existing;
+				for (int j = 0; j < list.size(); j++) {
+					((Addition) list.get(j)).cancelled = true;
+				}
+			}
+			updateMap.remove(element);
+			if (removalMap.put(element, element) == null) {
+				removals.add(element);
+			}
+		}
+	}
+
+	/**
+	 * Records that the given element is refreshed.
+	 *
+	 * @param element
+	 *            the element, or <code>null</code> for the root
+	 * @param isRoot
+	 *            whether the element is the viewer's root
+	 * @param updateLabels
+	 *            whether labels of existing elements are updated
+	 */
+	void refresh(Object element, boolean isRoot, boolean updateLabels) {
+		if (isRoot) {
+			if (!refreshAll) {
+				refreshAll = true;
+				additions.clear();
+				additionMap = new ElementHashtable(0, comparer);
+				removals.clear();
+				removalMap = new ElementHashtable(0, comparer);
+				refreshes.clear();
+				refreshMap = new ElementHashtable(0, comparer);
+			}
+			refreshAllLabels |= updateLabels;
+			if (refreshAllLabels) {
+				clearUpdates();
+			}
+			return;
+		}
+		if (refreshAll && (refreshAllLabels || !updateLabels)) {
+			return;
+		}
+		Boolean previous = (Boolean) refreshMap.get(element);
+		if (previous == null) {
+			refreshes.add(element);
+			// the children of the element are obtained again anyway
+			for (int i = 0; i < additions.size(); i++) {
+				Addition addition = (Addition) additions.get(i);
+				if (addition.parent != null
+						&& !(addition.parent instanceof TreePath)
+						&& equals(addition.parent, element)) {
+					addition.cancelled = true;
+				}
+			}
+		}
+		boolean labels = updateLabels
+				|| (previous != null && previous.booleanValue());
+		refreshMap.put(element, labels ? Boolean.TRUE : Boolean.FALSE);
+		if (labels) {
+			updateMap.remove(element);
+		}
+	}
+
+	/**
+	 * Records that the given properties of the given element changed.
+	 *
+	 * @param element
+	 *            the element
+	 * @param properties
+	 *            the properties, or <code>null</code> for all
+	 */
+	void update(Object element, String[] properties) {
+		if (refreshAll && refreshAllLabels) {
+			return;
+		}
+		if (refreshMap.get(element) == Boolean.TRUE) {
+			return;
+		}
+		String[] previous = (String[]) updateMap.get(element);
+		if (previous == null) {
+			// the element may already be listed if an earlier update was
+			// dropped, apply skips elements without properties
+			updates.add(element);
+			updateMap.put(element, properties == null ? ALL_PROPERTIES
+					: properties);
+		} else if (previous != ALL_PROPERTIES) {
+			if (properties == null) {
+				updateMap.put(element, ALL_PROPERTIES);
+			} else {
+				updateMap.put(element, union(previous, properties));
+			}
+		}
+	}
+
+	/**
+	 * Returns whether nothing has been recorded.
+	 *
+	 * @return <code>true</code> if there are no changes
+	 */
+	boolean isEmpty() {
+		return !refreshAll && additions.isEmpty() && removals.isEmpty()
+				&& refreshes.isEmpty() && updates.isEmpty();
+	}
+
+	/**
+	 * Applies the recorded changes to the given viewer.
+	 *
+	 * @param viewer
+	 *            the viewer, no longer batching
+	 */
+	void apply(StructuredViewer viewer) {
+		if (refreshAll) {
+			viewer.internalRefresh(viewer.getRoot(), refreshAllLabels);
+		}
+		if (!removals.isEmpty()) {
+			viewer.applyBatchedRemove(removals.toArray());
+		}
+		// add in the order of the first addition to each parent
+		List parents = new ArrayList();
+		List children = new ArrayList();
+		for (int i = 0; i < additions.size(); i++) {
+			Addition addition = (Addition) additions.get(i);
+			if (addition.cancelled) {
+				continue;
+			}
+			int index = indexOfParent(parents, addition.parent);
+			if (index == -1) {
+				parents.add(addition.parent);
+				children.add(new ArrayList());
+				index = parents.size() - 1;
+			}
+			((List) children.get(index)).add(addition.element);
+		}
+		for (int i = 0; i < parents.size(); i++) {
+			viewer.applyBatchedAdd(parents.get(i), ((List) children.get(i))
+					.toArray());
+		}
+		for (int i = 0; i < refreshes.size(); i++) {
+			Object element = refreshes.get(i);
+			viewer.internalRefresh(element, refreshMap.get(element) == Boolean.TRUE);
+		}
+		for (int i = 0; i < updates.size(); i++) {
+			Object element = updates.get(i);
+			String[] properties = (String[]) updateMap.remove(element);
+			if (properties != null) {
+				viewer.update(element, properties == ALL_PROPERTIES ? null
+						: properties);
+			}
+		}
+	}
+
+	/**
+	 * Cancels the pending additions of the last segment of the given path to
+	 * the parent of the path.
+	 */
+	private void cancelAdditions(TreePath path, Object root) {
+		if (path.getSegmentCount() == 0) {
+			return;
+		}
+		Object existing = additionMap.get(path.getLastSegment());
+		if (existing == null) {
+			return;
+		}
+		List list;
+		if (existing instanceof Addition) {
+			list = new ArrayList(1);
+			list.add(existing);
+		} else {
+			list = (List) existing;
+		}
+		TreePath parentPath = path.getParentPath();
+		Object parentElement = parentPath.getSegmentCount() == 0 ? root
+				: parentPath.getLastSegment();
+		for (int i = 0; i < list.size(); i++) {
+			Addition addition = (Addition) list.get(i);
+			Object parent = addition.parent;
+			if (parent instanceof TreePath) {
+				if (parentPath.equals((TreePath) parent, comparer)) {
+					addition.cancelled = true;
+				}
+			} else if (parent != null && parentElement != null
+					&& equals(parent, parentElement)) {
+				addition.cancelled = true;
+			}
+		}
+	}
+
+	private int indexOfParent(List parents, Object parent) {
+		for (int i = parents.size(); --i >= 0;) {
+			Object current = parents.get(i);
+			if (current == parent
+					|| (current != null && parent != null && equals(current,
+							parent))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void clearUpdates() {
+		updates.clear();
+		updateMap = new ElementHashtable(0, comparer);
+	}
+
+	private boolean equals(Object a, Object b) {
+		if (a instanceof TreePath || b instanceof TreePath) {
+			return a.equals(b);
+		}
+		return comparer == null ? a.equals(b) : comparer.equals(a, b);
+	}
+
+	private static String[] union(String[] a, String[] b) {
+		List result = new ArrayList(a.length + b.length);
+		for (int i = 0; i < a.length; i++) {
+			result.add(a[i]);
+		}
+		for (int i = 0; i < b.length; i++) {
+			if (!result.contains(b[i])) {
+				result.add(b[i]);
+			}
+		}
+		return (String[]) result.toArray(new String[result.size()]);
+	}
+}
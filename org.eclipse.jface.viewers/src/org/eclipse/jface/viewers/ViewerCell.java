@@ -35,6 +35,12 @@ public class ViewerCell {
 
 	private Object element;
 
+	/**
+	 * The label being recorded by the viewer's label cache while the label
+	 * provider updates this cell, or <code>null</code>.
+	 */
+	/* package */LabelCache.Label recorder;
+
 	/**
 	 * Constant denoting the cell above current one (value is 1).
 	 */
@@ -127,6 +133,9 @@ public class ViewerCell {
 	 */
 	public void setBackground(Color background) {
 		row.setBackground(columnIndex, background);
+		if (recorder != null) {
+			recorder.setBackground(background);
+		}
 
 	}
 
@@ -137,6 +146,9 @@ public class ViewerCell {
 	 */
 	public void setForeground(Color foreground) {
 		row.setForeground(columnIndex, foreground);
+		if (recorder != null) {
+			recorder.setForeground(foreground);
+		}
 
 	}
 
@@ -147,6 +159,9 @@ public class ViewerCell {
 	 */
 	public void setFont(Font font) {
 		row.setFont(columnIndex, font);
+		if (recorder != null) {
+			recorder.setFont(font);
+		}
 
 	}
 
@@ -157,6 +172,9 @@ public class ViewerCell {
 	 */
 	public void setText(String text) {
 		row.setText(columnIndex, text);
+		if (recorder != null) {
+			recorder.setText(text);
+		}
 
 	}
 
@@ -167,6 +185,9 @@ public class ViewerCell {
 	 */
 	public void setImage(Image image) {
 		row.setImage(columnIndex, image);
+		if (recorder != null) {
+			recorder.setImage(image);
+		}
 
 	}
 
@@ -181,6 +202,9 @@ public class ViewerCell {
 	 */
 	public void setStyleRanges(StyleRange[] styleRanges) {
 		row.setStyleRanges(columnIndex, styleRanges);
+		if (recorder != null) {
+			recorder.setStyleRanges(styleRanges);
+		}
 	}
 
 	/**
@@ -102,6 +102,9 @@ public abstract class ViewerColumn {
 		}
 
 		this.labelProvider = labelProvider;
+		if (viewer != null) {
+			viewer.clearLabelCache();
+		}
 
 		if (registerListener) {
 			this.labelProvider.initialize(viewer, this);
@@ -142,7 +145,12 @@ public abstract class ViewerColumn {
 	 *            {@link ViewerCell}
 	 */
 	/* package */void refresh(ViewerCell cell) {
-		getLabelProvider().update(cell);
+		LabelCache labelCache = viewer == null ? null : viewer.getLabelCache();
+		if (labelCache == null) {
+			getLabelProvider().update(cell);
+		} else {
+			labelCache.update(getLabelProvider(), cell);
+		}
 	}
 
 	/**
@@ -11,6 +11,8 @@
 
 package org.eclipse.jface.viewers;
 
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -32,6 +34,11 @@ import org.eclipse.jface.util.Policy;
  * categorization; and they may override the <code>compare</code> methods
  * to provide a totally different way of sorting elements.
  * </p>
+ * <p>
+ * Comparators that sort by category and label only can enable sort keys
+ * (see {@link #setUseSortKeys(boolean)}) so that the category and label of
+ * each element are computed once per sort instead of once per comparison.
+ * </p>
  * @see IStructuredContentProvider
  * @see StructuredViewer
  * 
@@ -43,6 +50,25 @@ public class ViewerComparator {
 	 */
 	private Comparator comparator;
 
+	/**
+	 * Whether <code>sort</code> precomputes a sort key for each element.
+	 */
+	private boolean useSortKeys;
+
+	/**
+	 * The category, label and element of one element, computed once per
+	 * sort.
+	 */
+	private static final class SortKey {
+		Object element;
+		int category;
+		/**
+		 * The label, or its <code>CollationKey</code> if the comparator
+		 * is a <code>Collator</code>.
+		 */
+		Object label;
+	}
+
 	/**
      * Creates a new {@link ViewerComparator}, which uses the default comparator
      * to sort strings.
@@ -121,33 +147,40 @@ public class ViewerComparator {
 			return cat1 - cat2;
 		}
     	
-        String name1;
-        String name2;
+        ILabelProvider lprov = getLabelProvider(viewer);
+        String name1 = getLabel(lprov, e1);
+        String name2 = getLabel(lprov, e2);
+
+        // use the comparator to compare the strings
+        return getComparator().compare(name1, name2);
+    }
 
-        if (viewer == null || !(viewer instanceof ContentViewer)) {
-            name1 = e1.toString();
-            name2 = e2.toString();
-        } else {
+    /**
+     * Returns the label provider of the given viewer if it is a content
+     * viewer with an <code>ILabelProvider</code>, and <code>null</code>
+     * otherwise.
+     */
+    private static ILabelProvider getLabelProvider(Viewer viewer) {
+        if (viewer instanceof ContentViewer) {
             IBaseLabelProvider prov = ((ContentViewer) viewer)
                     .getLabelProvider();
             if (prov instanceof ILabelProvider) {
-                ILabelProvider lprov = (ILabelProvider) prov;
-                name1 = lprov.getText(e1);
-                name2 = lprov.getText(e2);
-            } else {
-                name1 = e1.toString();
-                name2 = e2.toString();
+                return (ILabelProvider) prov;
             }
         }
-        if (name1 == null) {
-			name1 = "";//$NON-NLS-1$
-		}
-        if (name2 == null) {
-			name2 = "";//$NON-NLS-1$
-		}
+        return null;
+    }
 
-        // use the comparator to compare the strings
-        return getComparator().compare(name1, name2);
+    /**
+     * Returns the string used to compare the given element, never
+     * <code>null</code>.
+     */
+    private static String getLabel(ILabelProvider lprov, Object element) {
+        String name = lprov == null ? element.toString() : lprov.getText(element);
+        if (name == null) {
+			name = "";//$NON-NLS-1$
+		}
+        return name;
     }
 
     /**
@@ -182,10 +215,93 @@ public class ViewerComparator {
      * @param elements the elements to sort
      */
     public void sort(final Viewer viewer, Object[] elements) {
+        if (useSortKeys) {
+            sortUsingKeys(viewer, elements);
+            return;
+        }
         Arrays.sort(elements, new Comparator() {
             public int compare(Object a, Object b) {
                 return ViewerComparator.this.compare(viewer, a, b);
             }
         });
-    }	
+    }
+
+    /**
+     * Sets whether <code>sort</code> computes the category and label of each
+     * element once and sorts on these precomputed keys, instead of calling
+     * <code>compare</code> for every comparison. If the comparator returned
+     * by <code>getComparator</code> is a <code>Collator</code>, a
+     * <code>CollationKey</code> is computed for each label as well. For n
+     * elements this reduces the number of label provider calls from
+     * O(n log n) to n, at the cost of one temporary key per element.
+     * <p>
+     * Sort keys produce the same order as the default <code>compare</code>
+     * implementation. They must only be enabled if <code>compare</code> is
+     * not overridden, or if the override is consistent with comparing
+     * <code>category</code> and then the label. The default is
+     * <code>false</code>.
+     * </p>
+     * 
+     * @param enable
+     *            <code>true</code> to sort on precomputed keys, and
+     *            <code>false</code> to call <code>compare</code> for every
+     *            comparison
+     * @since 3.6
+     */
+    public void setUseSortKeys(boolean enable) {
+        useSortKeys = enable;
+    }
+
+    /**
+     * Returns whether <code>sort</code> sorts on precomputed keys.
+     * 
+     * @return <code>true</code> if sort keys are used, and
+     *         <code>false</code> otherwise
+     * @see #setUseSortKeys(boolean)
+     * @since 3.6
+     */
+    public boolean getUseSortKeys() {
+        return useSortKeys;
+    }
+
+    /**
+     * Sorts the given elements in-place by their category and label, computing
+     * both once per element. The keys are discarded when the sort is done.
+     * 
+     * @param viewer the viewer
+     * @param elements the elements to sort
+     */
+    final void sortUsingKeys(Viewer viewer, Object[] elements) {
+        ILabelProvider lprov = getLabelProvider(viewer);
+        final Comparator stringComparator = getComparator();
+        Collator collator = stringComparator instanceof Collator ? (Collator) stringComparator
+                : null;
+        SortKey[] keys = new SortKey[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            SortKey key = new SortKey();
+            key.element = elements[i];
+            key.category = category(elements[i]);
+            String name = getLabel(lprov, elements[i]);
+            key.label = collator == null ? (Object) name : collator.getCollationKey(name);
+            keys[i] = key;
+        }
+        final boolean collated = collator != null;
+        // Arrays.sort is stable, like the sort done by compare
+        Arrays.sort(keys, new Comparator() {
+            public int compare(Object a, Object b) {
+                SortKey key1 = (SortKey) a;
+                SortKey key2 = (SortKey) b;
+                if (key1.category != key2.category) {
+                    return key1.category - key2.category;
+                }
+                if (collated) {
+                    return ((CollationKey) key1.label).compareTo((CollationKey) key2.label);
+                }
+                return stringComparator.compare(key1.label, key2.label);
+            }
+        });
+        for (int i = 0; i < keys.length; i++) {
+            elements[i] = keys[i].element;
+        }
+    }
 }
@@ -36,14 +36,20 @@ public abstract class ViewerFilter {
      * The default implementation of this method calls 
      * <code>select</code> on each element in the array, 
      * and returns only those elements for which <code>select</code>
-     * returns <code>true</code>.
+     * returns <code>true</code>. If this filter is thread-safe and the
+     * array is large, <code>select</code> is called on several threads.
      * </p>
      * @param viewer the viewer
      * @param parent the parent element
      * @param elements the elements to filter
      * @return the filtered elements
+     * @see #isThreadSafe()
      */
     public Object[] filter(Viewer viewer, Object parent, Object[] elements) {
+        ViewerFilter[] filters = new ViewerFilter[] { this };
+        if (ParallelFilter.canFilter(filters, elements.length)) {
+            return ParallelFilter.filter(viewer, parent, elements, filters);
+        }
         int size = elements.length;
         ArrayList out = new ArrayList(size);
         for (int i = 0; i < size; ++i) {
@@ -90,6 +96,26 @@ public abstract class ViewerFilter {
         return false;
     }
 
+    /**
+     * Returns whether <code>select</code> may be called concurrently from
+     * threads other than the UI thread. A thread-safe filter must not access
+     * widgets or other state that is confined to the UI thread, and must not
+     * modify state shared between calls without synchronization. Viewers
+     * split large arrays of elements across several threads when all of
+     * their filters are thread-safe.
+     * <p>
+     * The default implementation of this method returns <code>false</code>.
+     * Subclasses may override.
+     * </p>
+     *
+     * @return <code>true</code> if <code>select</code> is thread-safe, and
+     *    <code>false</code> otherwise
+     * @since 3.6
+     */
+    public boolean isThreadSafe() {
+        return false;
+    }
+
     /**
      * Returns whether the given element makes it through this filter.
      *
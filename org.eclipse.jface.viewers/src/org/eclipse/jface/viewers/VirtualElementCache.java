@@ -0,0 +1,382 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.Arrays;
+
+/**
+ * The element cache of a virtual table viewer: a list of elements, indexed by
+ * row, which may contain <code>null</code> for rows whose element is not
+ * known.
+ * <p>
+ * Elements are stored in a gap buffer, so that a series of insertions or
+ * removals close to each other only moves the elements between them. An
+ * element to slot map answers <code>indexOf</code> in constant time. The map
+ * holds positions in the buffer rather than rows, so that inserting or
+ * removing a row does not change the entries of the other rows; only the
+ * entries of the elements the gap moves over are updated. The map is built
+ * by the first <code>indexOf</code>, and built again after
+ * <code>removeIndices</code>, which moves all elements anyway.
+ * </p>
+ * <p>
+ * If an element occurs in several rows, the map holds the first of them.
+ * When such an entry is removed, the map no longer knows the other rows of
+ * the element, and a lookup that misses builds the map again.
+ * </p>
+ * <p>
+ * Elements are compared using the given <code>IElementComparer</code>, or
+ * <code>equals</code> if there is none.
+ * </p>
+ *
+ * @since 3.6
+ */
+/* package */final class VirtualElementCache {
+
+	private static final Object[] EMPTY = new Object[0];
+
+	private Object[] buffer = EMPTY;
+
+	private int gapStart;
+
+	private int gapEnd;
+
+	/**
+	 * Maps elements to the <code>Integer</code> position in the buffer of
+	 * their first occurrence, or <code>null</code> if the map has not been
+	 * built.
+	 */
+	private ElementHashtable slotMap;
+
+	/**
+	 * Whether the map may lack an entry for an element that occurs in this
+	 * cache, because an entry of an element that occurs more than once was
+	 * removed.
+	 */
+	private boolean incomplete;
+
+	/**
+	 * Whether an element has been found to occur more than once since the map
+	 * was built.
+	 */
+	private boolean duplicates;
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return the number of rows
+	 */
+	int size() {
+		return buffer.length - (gapEnd - gapStart);
+	}
+
+	/**
+	 * Returns the element at the given row.
+	 *
+	 * @param index
+	 *            the row, between 0 and <code>size() - 1</code>
+	 * @return the element, or <code>null</code> if it is not known
+	 */
+	Object get(int index) {
+		return buffer[toSlot(index)];
+	}
+
+	/**
+	 * Replaces the contents of this cache with the given elements.
+	 *
+	 * @param elements
+	 *            the elements, one per row; the array is not modified
+	 */
+	void setElements(Object[] elements) {
+		buffer = (Object[]) elements.clone();
+		gapStart = gapEnd = buffer.length;
+		slotMap = null;
+	}
+
+	/**
+	 * Inserts the given element at the given row.
+	 *
+	 * @param element
+	 *            the element
+	 * @param index
+	 *            the row, between 0 and <code>size()</code>
+	 */
+	void insert(Object element, int index) {
+		if (gapStart == gapEnd) {
+			grow(1);
+		}
+		moveGap(index);
+		int slot = gapStart++;
+		buffer[slot] = element;
+		if (slotMap != null && element != null) {
+			Integer known = (Integer) slotMap.get(element);
+			if (known == null) {
+				// if entries are missing, the element may occur elsewhere;
+				// leave it to the next lookup to build the map again
+				if (!incomplete) {
+					slotMap.put(element, new Integer(slot));
+				}
+			} else {
+				duplicates = true;
+				// the new row comes first if the known one is after the gap
+				if (known.intValue() >= gapEnd) {
+					slotMap.put(element, new Integer(slot));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the rows between the given indices, inclusive.
+	 *
+	 * @param from
+	 *            the first row to remove
+	 * @param to
+	 *            the last row to remove
+	 */
+	void removeRange(int from, int to) {
+		if (to < from) {
+			return;
+		}
+		moveGap(from);
+		for (int i = gapEnd; i <= gapEnd + to - from; i++) {
+			forget(buffer[i], i);
+			buffer[i] = null;
+		}
+		gapEnd += to - from + 1;
+	}
+
+	/**
+	 * Removes the given rows. Rows that do not exist are ignored.
+	 *
+	 * @param indices
+	 *            the rows to remove, in any order and possibly repeated; the
+	 *            array is sorted
+	 */
+	void removeIndices(int[] indices) {
+		indices = distinctIndices(indices, size());
+		if (indices.length == 0) {
+			return;
+		}
+		int distinct = indices.length;
+		if (indices[distinct - 1] - indices[0] == distinct - 1) {
+			removeRange(indices[0], indices[distinct - 1]);
+			return;
+		}
+		// compact in one pass, leaving the gap at the end
+		int size = size();
+		Object[] newBuffer = new Object[Math.max(size - distinct,
+				buffer.length / 2)];
+		int count = 0;
+		int nextToSkip = 0;
+		for (int i = 0; i < size; i++) {
+			if (nextToSkip < distinct && i == indices[nextToSkip]) {
+				nextToSkip++;
+			} else {
+				newBuffer[count++] = get(i);
+			}
+		}
+		buffer = newBuffer;
+		gapStart = count;
+		gapEnd = newBuffer.length;
+		// every element has moved
+		slotMap = null;
+	}
+
+	/**
+	 * Returns the given rows in ascending order, without repetitions and
+	 * without the rows from <code>limit</code> on.
+	 *
+	 * @param indices
+	 *            the rows, in any order and possibly repeated; the array is
+	 *            sorted
+	 * @param limit
+	 *            the number of rows
+	 * @return the distinct rows below <code>limit</code>, the given array if
+	 *         it has neither repetitions nor such rows
+	 */
+	static int[] distinctIndices(int[] indices, int limit) {
+		Arrays.sort(indices);
+		int[] result = new int[indices.length];
+		int count = 0;
+		for (int i = 0; i < indices.length; i++) {
+			int index = indices[i];
+			if (index >= limit) {
+				break;
+			}
+			if (index >= 0 && (count == 0 || result[count - 1] != index)) {
+				result[count++] = index;
+			}
+		}
+		if (count == indices.length) {
+			return indices;
+		}
+		System.arraycopy(result, 0, result = new int[count], 0, count);
+		return result;
+	}
+
+	/**
+	 * Sets the number of rows, removing rows from the end or adding rows with
+	 * unknown elements.
+	 *
+	 * @param count
+	 *            the new number of rows
+	 */
+	void setSize(int count) {
+		int size = size();
+		if (count < size) {
+			removeRange(count, size - 1);
+		} else if (count > size) {
+			if (buffer.length - size < count - size) {
+				grow(count - size);
+			}
+			moveGap(size);
+			// the gap only ever contains nulls
+			gapStart += count - size;
+		}
+	}
+
+	/**
+	 * Returns the first row showing the given element.
+	 *
+	 * @param element
+	 *            the element
+	 * @param comparer
+	 *            the comparer to use, or <code>null</code> to use
+	 *            <code>equals</code>
+	 * @return the row, or -1 if the element is not in this cache
+	 */
+	int indexOf(Object element, IElementComparer comparer) {
+		if (element == null) {
+			return -1;
+		}
+		if (slotMap == null || slotMap.getComparer() != comparer) {
+			buildMap(comparer);
+		}
+		Integer slot = (Integer) slotMap.get(element);
+		if (slot == null && incomplete) {
+			buildMap(comparer);
+			slot = (Integer) slotMap.get(element);
+		}
+		return slot == null ? -1 : toIndex(slot.intValue());
+	}
+
+	/**
+	 * Builds the element to slot map from the rows, keeping the first
+	 * occurrence of each element.
+	 */
+	private void buildMap(IElementComparer comparer) {
+		slotMap = new ElementHashtable(size(), comparer);
+		incomplete = false;
+		duplicates = false;
+		for (int slot = 0; slot < gapStart; slot++) {
+			addFirst(buffer[slot], slot);
+		}
+		for (int slot = gapEnd; slot < buffer.length; slot++) {
+			addFirst(buffer[slot], slot);
+		}
+	}
+
+	private void addFirst(Object element, int slot) {
+		if (element != null) {
+			if (slotMap.containsKey(element)) {
+				duplicates = true;
+			} else {
+				slotMap.put(element, new Integer(slot));
+			}
+		}
+	}
+
+	private int toSlot(int index) {
+		return index < gapStart ? index : index + gapEnd - gapStart;
+	}
+
+	private int toIndex(int slot) {
+		return slot < gapStart ? slot : slot - (gapEnd - gapStart);
+	}
+
+	/**
+	 * Drops the map entry of an element removed from the given slot, so that
+	 * removed elements are not retained.
+	 */
+	private void forget(Object element, int slot) {
+		if (element != null && slotMap != null) {
+			Integer value = (Integer) slotMap.get(element);
+			if (value != null && value.intValue() == slot) {
+				slotMap.remove(element);
+				if (duplicates) {
+					incomplete = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the map entry of an element moved from one slot to another.
+	 * Elements moving to higher slots must be passed from the highest slot
+	 * down, and elements moving to lower slots from the lowest slot up, so
+	 * that an entry is never moved twice.
+	 */
+	private void moved(Object element, int from, int to) {
+		if (element != null) {
+			Integer value = (Integer) slotMap.get(element);
+			if (value != null && value.intValue() == from) {
+				slotMap.put(element, new Integer(to));
+			}
+		}
+	}
+
+	private void moveGap(int index) {
+		if (index < gapStart) {
+			int count = gapStart - index;
+			int delta = gapEnd - gapStart;
+			if (slotMap != null) {
+				for (int i = gapStart - 1; i >= index; i--) {
+					moved(buffer[i], i, i + delta);
+				}
+			}
+			System.arraycopy(buffer, index, buffer, gapEnd - count, count);
+			Arrays.fill(buffer, index, Math.min(gapStart, gapEnd - count), null);
+			gapStart -= count;
+			gapEnd -= count;
+		} else if (index > gapStart) {
+			int count = index - gapStart;
+			int delta = gapEnd - gapStart;
+			if (slotMap != null) {
+				for (int i = gapEnd; i < gapEnd + count; i++) {
+					moved(buffer[i], i, i - delta);
+				}
+			}
+			System.arraycopy(buffer, gapEnd, buffer, gapStart, count);
+			Arrays.fill(buffer, Math.max(gapEnd, gapStart + count), gapEnd
+					+ count, null);
+			gapStart += count;
+			gapEnd += count;
+		}
+	}
+
+	private void grow(int minimum) {
+		int size = size();
+		int length = Math.max(size + minimum, size + (size >> 1) + 16);
+		Object[] newBuffer = new Object[length];
+		int newGapEnd = length - (buffer.length - gapEnd);
+		if (slotMap != null) {
+			for (int i = buffer.length - 1; i >= gapEnd; i--) {
+				moved(buffer[i], i, i + newGapEnd - gapEnd);
+			}
+		}
+		System.arraycopy(buffer, 0, newBuffer, 0, gapStart);
+		System.arraycopy(buffer, gapEnd, newBuffer, newGapEnd, buffer.length
+				- gapEnd);
+		buffer = newBuffer;
+		gapEnd = newGapEnd;
+	}
+}
@@ -80,6 +80,13 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
      */
     private volatile IFilter filter = AcceptAllFilter.getInstance();
     
+    /**
+     * How the filter changed since the sort thread last applied it: one of the
+     * <code>DeferredContentProvider.FILTER_*</code> constants, or -1 if it has
+     * not changed. Guarded by this object.
+     */
+    private int filterChange = -1;
+    
     /**
      * Queued changes
      */
@@ -126,11 +133,55 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
     private ConcurrentTableUpdator updator;
     
     private IProgressMonitor sortingProgressMonitor = new NullProgressMonitor();
-    private Thread sortThread = null;
+
+    /**
+     * Scheduler that runs the sorting of this content provider
+     */
+    private SortScheduler scheduler;
 
 	private volatile FastProgressReporter sortMon = new FastProgressReporter();
 
 	private volatile Range range = new Range(0,0);
+
+	/**
+	 * Number of rows sorted on either side of the visible range, or -1 if all
+	 * rows are sorted
+	 */
+	private volatile int prefetchMargin = -1;
+
+	/**
+	 * Rows that have been sent to the updator in the current sort order
+	 */
+	private volatile Range sentRange = new Range(0,0);
+
+	/**
+	 * Known elements, kept between sorts so that partially-sorted information
+	 * is not lost. Also kept if a sort fails, since the rows sent to the
+	 * updator may only hold the elements near the visible range. Only
+	 * accessed by the sort thread.
+	 */
+	private LazySortedCollection sortedCollection;
+
+	/**
+	 * Sort order and filter that were applied to sortedCollection
+	 */
+	private Comparator sortedOrder;
+	private IFilter sortedFilter;
+
+	/**
+	 * Largest element kept by the last retainFirst on sortedCollection, or null
+	 * if the collection had fewer elements than the limit. Elements that sort
+	 * after it cannot be among the first limit elements, so they are dropped
+	 * without being inserted. Changing the limit refreshes the contents, which
+	 * resets the threshold. Only accessed by the sort thread.
+	 */
+	private Object sortedThreshold;
+
+	/**
+	 * Elements of the model that were rejected by sortedFilter. Only accessed
+	 * by the sort thread.
+	 */
+	private UnorderedSet rejected = new UnorderedSet();
     
     /**
      * Creates a new background content provider
@@ -141,10 +192,26 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
      */
     public BackgroundContentProvider(AbstractVirtualTable table, 
             IConcurrentModel model, Comparator sortOrder) {
+        this(table, model, sortOrder, SortScheduler.getDefault());
+    }
+    
+    /**
+     * Creates a new background content provider that sorts using the given scheduler
+     *  
+     * @param table table that will receive updates
+     * @param model data source
+     * @param sortOrder initial sort order
+     * @param scheduler scheduler that runs the sorting
+     * @since 3.6
+     */
+    public BackgroundContentProvider(AbstractVirtualTable table, 
+            IConcurrentModel model, Comparator sortOrder, SortScheduler scheduler) {
         
+    	Assert.isNotNull(scheduler);
         updator = new ConcurrentTableUpdator(table);
         this.model = model;
         this.sortOrder = sortOrder;
+        this.scheduler = scheduler;
         model.addListener(listener);
     }
     
@@ -154,6 +221,7 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
      */
     public void dispose() {
         cancelSortJob();
+        scheduler.cancel(this);
         updator.dispose();
         model.removeListener(listener);
     }
@@ -169,12 +237,27 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
     }
 
     /**
-     * Called from sortJob. Sorts the elements defined by sortStart and sortLength.
+     * Called by the scheduler in one of its threads. Sorts the pending changes.
+     * 
+     * @return true iff the sort gave up its thread to another content provider
+     * and needs to be run again
+     */
+    boolean sort() {
+    	if (updator.isDisposed()) {
+    		return false;
+    	}
+    	return doSort(sortingProgressMonitor) && !updator.isDisposed();
+    }
+
+    /**
+     * Called from sort. Sorts the elements defined by sortStart and sortLength.
      * Schedules a UI update when finished.
      * 
      * @param mon monitor where progress will be reported
+     * @return true iff the sort stopped early to let the scheduler run
+     * another content provider
      */
-    private void doSort(IProgressMonitor mon) {        
+    private boolean doSort(IProgressMonitor mon) {        
         
         // Workaround for some weirdness in the Jobs framework: if you cancel a monitor
         // for a job that has ended and reschedule that same job, it will start 
@@ -186,21 +269,52 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
 
        	mon.beginTask(SORTING, 100);
        	
-        // Create a LazySortedCollection
-        Comparator order = sortOrder;
-        IFilter f = filter;
-        LazySortedCollection collection = new LazySortedCollection(order);
+        // Continue with the collection of the previous sort. The collection
+        // stays stored while it is sorted, so that a comparator or filter that
+        // throws does not cause the next sort to start over from the rows sent
+        // to the updator. The threshold is only stored again if the sort
+        // terminates normally.
+        Comparator order = sortedOrder;
+        IFilter f = sortedFilter;
+        LazySortedCollection collection = sortedCollection;
+        Object threshold = sortedThreshold;
+        sortedThreshold = null;
         
-        // Fill it in with all existing known objects
         Object[] knownObjects = updator.getKnownObjects();
-        for (int i = 0; i < knownObjects.length; i++) {
-			Object object = knownObjects[i];
-			if (object != null) {
-				collection.add(object);
+        if (collection == null) {
+	        // Create a LazySortedCollection
+	        order = sortOrder;
+	        synchronized (this) {
+	        	f = filter;
+	        	filterChange = -1;
+	        }
+	        collection = new LazySortedCollection(order);
+	        rejected.clear();
+	        threshold = null;
+	        
+	        // Fill it in with all existing known objects
+	        Object[] toAdd = new Object[knownObjects.length];
+	        int count = 0;
+	        for (int i = 0; i < knownObjects.length; i++) {
+				Object object = knownObjects[i];
+				if (object != null) {
+					toAdd[count++] = object;
+				}
 			}
-		}
+	        if (count < toAdd.length) {
+	        	Object[] trimmed = new Object[count];
+	        	System.arraycopy(toAdd, 0, trimmed, 0, count);
+	        	toAdd = trimmed;
+	        }
+	        collection.addAll(toAdd);
+	        sortedCollection = collection;
+	        sortedOrder = order;
+	        sortedFilter = f;
+        }
 
         boolean dirty = false;
+        boolean processed = false;
+        boolean interruptedFilterChange = false;
         int prevSize = knownObjects.length;
         updator.setTotalItems(prevSize);
         
@@ -211,50 +325,105 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
         	if (order != sortOrder) {
         		dirty = true;
         		order = sortOrder;
+        		threshold = null;
         		// Copy all elements from the old collection to the new one 
         		LazySortedCollection newCollection = new LazySortedCollection(order);
         		
-        		Object[] items = collection.getItems(false);
-        		for (int j = 0; j < items.length && order == sortOrder; j++) {
-					Object item = items[j];
-					
-					newCollection.add(item);
-				}
+        		newCollection.addAll(collection.getItems(false));
         		
         		// If the sort order changed again, re-loop
 				if (order != sortOrder) {
 					continue;
 				}
 				collection = newCollection;
+				sortedCollection = collection;
+				sortedOrder = order;
 				continue;
         	} 
         	
         	// If the filter has changed
         	if (f != filter) {
         		dirty = true;
-        		f = filter;
+        		threshold = null;
+        		int change;
+        		synchronized (this) {
+        			f = filter;
+        			change = filterChange;
+        			filterChange = -1;
+        		}
+        		// sortedFilter keeps the previous filter until the sort ends, so
+        		// that a change interrupted by an exception is applied again in
+        		// both directions
+        		if (interruptedFilterChange) {
+        			// Some elements may not have been tested against the previous filter
+        			change = DeferredContentProvider.FILTER_CHANGED;
+        		}
+        		interruptedFilterChange = true;
         		
-        		Object[] items = collection.getItems(false);
+        		// Elements rejected by the previous filter only need to be tested
+        		// again if the new filter may accept more elements
+        		if (change != DeferredContentProvider.FILTER_NARROWED) {
+        			Object[] items = rejected.toArray();
+        			Object[] accepted = new Object[items.length];
+        			int count = 0;
+        			
+        			rejected.clear();
+        			for (int j = 0; j < items.length; j++) {
+        				Object toTest = items[j];
+        				
+        				if (f == filter && f.select(toTest)) {
+        					accepted[count++] = toTest;
+        				} else {
+        					rejected.add(toTest);
+        				}
+        			}
+        			
+        			Object[] toAdd = new Object[count];
+        			System.arraycopy(accepted, 0, toAdd, 0, count);
+        			collection.addAll(toAdd);
+        		}
         		
-        		// Remove any items that don't pass the new filter
-        		for (int j = 0; j < items.length && f == filter; j++) {
-					Object toTest = items[j];
-					
-					if (!f.select(toTest)) {
-						collection.remove(toTest);
+        		// Elements accepted by the previous filter only need to be tested
+        		// again if the new filter may reject more elements
+        		if (change != DeferredContentProvider.FILTER_WIDENED) {
+	        		Object[] items = collection.getItems(false);
+	        		
+	        		// Remove any items that don't pass the new filter
+	        		for (int j = 0; j < items.length && f == filter; j++) {
+						Object toTest = items[j];
+						
+						if (!f.select(toTest)) {
+							collection.remove(toTest);
+							rejected.add(toTest);
+						}
 					}
-				}
+        		}
+        		
+        		if (f == filter) {
+        			interruptedFilterChange = false;
+        		}
         		continue;
         	}
         
         	// If there are pending changes, process one of them
         	if (!changeQueue.isEmpty()) {
+        		// Let other tables sort if they are waiting for a thread. The 
+        		// remaining changes make the next run dirty again.
+        		if (processed && scheduler.shouldYield()) {
+        			sortedCollection = collection;
+        			sortedOrder = order;
+        			sortedFilter = f;
+        			sortedThreshold = threshold;
+        			mon.done();
+        			return true;
+        		}
+        		processed = true;
         		dirty = true;
 	        	ChangeQueue.Change next = changeQueue.dequeue();
 	        	
 	        	switch(next.getType()) {
 		        	case ChangeQueue.ADD: {
-		            	filteredAdd(collection, next.getElements(), f);
+		        		threshold = limitedAdd(collection, next.getElements(), f, threshold, order);
 		        		break;
 		        	}
 		        	case ChangeQueue.REMOVE: {
@@ -262,29 +431,36 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
 	
 		                flush(toRemove, collection);
 		                collection.removeAll(toRemove);
+		                
+		                // Elements that were dropped may be needed to fill up the
+		                // limit again, and will be sent by the following refresh
+		                if (threshold != null && collection.size() < limit) {
+		                	threshold = null;
+		                }
+		                if (rejected.size() > 0) {
+		                	for (int j = 0; j < toRemove.length; j++) {
+		                		rejected.remove(toRemove[j]);
+		                	}
+		                }
 	
 		        		break;
 		        	}
 		        	case ChangeQueue.UPDATE: {
 		        		Object[] items  = next.getElements();
 		        		
-	        	        for (int i = 0; i < items.length; i++) {
-	        	            Object item = items[i];
-	        	            
-	        	            if (collection.contains(item)) {
-	        	                // TODO: write a collection.update(...) method
-	        	                collection.remove(item);
-	        	                collection.add(item);
-	        	                updator.clear(item);        	                
-	        	            }
-	        	        }
+		        		collection.updateAll(items);
+		        		flush(items, collection);
+		        		
+		        		// An updated element may sort after the threshold now
+		        		threshold = null;
 		        	        
 		        		break;
 		        	}
 		        	case ChangeQueue.SET: {
 		        		Object[] items = next.getElements();
 		        		collection.clear();
-		        		filteredAdd(collection, items, f);
+		        		rejected.clear();
+		        		threshold = limitedAdd(collection, items, f, null, order);
 		        	        
 		        		break;
 		        	}
@@ -310,7 +486,7 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
             }
             
             // Terminate loop
-            if (!dirty) {
+            if (!dirty && isSent(totalElements)) {
             	break;
             }
         	
@@ -321,8 +497,9 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
             	int sortStart = updateRange.start;
             	int sortLength = updateRange.length;
             
-		        if (limit != -1) {
-		            collection.retainFirst(limit, sortMon);
+		        int currentLimit = limit;
+		        if (currentLimit != -1) {
+		        	threshold = retainFirst(collection, currentLimit, sortMon);
 		        }
 
 		        sortLength = Math.min(sortLength, totalElements - sortStart);
@@ -338,15 +515,42 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
 					updator.replace(object, sortStart + i);
 				}
 		        
-			    objectsOfInterest = new Object[collection.size()];
+		        int margin = prefetchMargin;
+		        if (margin == -1) {
+				    objectsOfInterest = new Object[collection.size()];
+				        
+				    collection.getFirst(objectsOfInterest, true, sortMon);
 			        
-			    collection.getFirst(objectsOfInterest, true, sortMon);
-		        
-		        // Send the new elements to the table
-		        for (int i = 0; i < totalElements; i++) {
-					Object object = objectsOfInterest[i];
-					updator.replace(object, i);
-				}
+			        // Send the new elements to the table
+			        for (int i = 0; i < totalElements; i++) {
+						Object object = objectsOfInterest[i];
+						updator.replace(object, i);
+					}
+			        
+			        sentRange = new Range(0, totalElements);
+		        } else {
+		        	// Only sort the rows near the visible range. The rest of the
+		        	// collection remains partially sorted until it is scrolled into view.
+		        	int windowStart = Math.max(sortStart - margin, 0);
+		        	int windowEnd = Math.max(Math.min(sortStart + sortLength + margin, totalElements), windowStart);
+		        	
+		        	objectsOfInterest = new Object[windowEnd - windowStart];
+		        	
+		        	collection.getRange(objectsOfInterest, windowStart, true, sortMon);
+		        	
+			        // Send the new elements to the table
+			        for (int i = 0; i < objectsOfInterest.length; i++) {
+						Object object = objectsOfInterest[i];
+						updator.replace(object, windowStart + i);
+					}
+			        
+			        // Rows sent for a previous sort order are out of date
+			        if (dirty) {
+			        	updator.clearOutside(windowStart, windowEnd);
+			        }
+			        
+			        sentRange = new Range(windowStart, windowEnd - windowStart);
+		        }
 
             } catch (InterruptedException e) {
             	continue;
@@ -355,22 +559,159 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
             dirty = false;
 	    }
         
+        sortedCollection = collection;
+        sortedOrder = order;
+        sortedFilter = f;
+        sortedThreshold = threshold;
+        
         mon.done();
+        return false;
+    }
+
+    /**
+     * Returns true iff the rows that need to be sorted have been sent to the updator.
+     * If a prefetch margin is set, these are the visible rows. Otherwise, they are all rows.
+     * 
+     * @param totalElements number of rows in the table
+     * @return true iff no rows need to be sorted
+     */
+    private boolean isSent(int totalElements) {
+    	Range sent = sentRange;
+    	if (prefetchMargin == -1) {
+    		return sent.start == 0 && sent.length == totalElements;
+    	}
+    	Range visible = updator.getVisibleRange();
+    	int visibleEnd = Math.min(visible.start + visible.length, totalElements);
+    	return visibleEnd <= visible.start 
+    		|| (visible.start >= sent.start && visibleEnd <= sent.start + sent.length);
     }
 
 	/**
+	 * Adds the elements that pass the filter to the collection, like 
+	 * filteredAdd. If a limit is set, the elements are added in chunks the size
+	 * of the limit. Elements that sort after the threshold are dropped without
+	 * being inserted, and the collection is truncated to the limit whenever it
+	 * grows beyond twice the limit, so that its size does not depend on the 
+	 * number of elements added.
+	 * 
+	 * @param collection
+	 * @param toAdd
+	 * @param filter
+	 * @param threshold last element retained by the collection, or null
+	 * @param order sort order of the collection
+	 * @return the new threshold
+	 */
+	private Object limitedAdd(LazySortedCollection collection, Object[] toAdd, 
+			IFilter filter, Object threshold, Comparator order) {
+		int currentLimit = limit;
+		if (currentLimit <= 0) {
+			filteredAdd(collection, rejected, toAdd, filter);
+			return threshold;
+		}
+		
+		try {
+			for (int start = 0; start < toAdd.length; start += currentLimit) {
+				int length = Math.min(currentLimit, toAdd.length - start);
+				filteredAdd(collection, rejected, 
+						selectBefore(toAdd, start, length, threshold, order), filter);
+				
+				if (collection.size() > 2 * currentLimit) {
+					threshold = retainFirst(collection, currentLimit, new FastProgressReporter());
+				}
+			}
+		} catch (InterruptedException e) {
+			// cannot happen, the progress reporter is never cancelled
+		}
+		return threshold;
+	}
+
+	/**
+	 * Removes all but the first limit elements from the collection and returns
+	 * the last remaining element. Later additions can be tested against this
+	 * element instead of being inserted. Finding it is cheap, since the path to
+	 * it has just been sorted by retainFirst.
+	 * 
+	 * @param collection collection to truncate
+	 * @param limit number of elements to retain
+	 * @param mon progress monitor
+	 * @return the largest retained element, or null if the collection has fewer
+	 * elements than the limit
+	 * @throws InterruptedException if the progress monitor is cancelled
+	 */
+	private static Object retainFirst(LazySortedCollection collection, int limit, 
+			FastProgressReporter mon) throws InterruptedException {
+		collection.retainFirst(limit, mon);
+		if (limit == 0 || collection.size() < limit) {
+			return null;
+		}
+		Object[] last = new Object[1];
+		collection.getRange(last, limit - 1, false, mon);
+		return last[0];
+	}
+
+	/**
+	 * Returns the elements in the given range that sort before the given 
+	 * threshold. Uses one comparison per element.
+	 * 
+	 * @param toTest elements to test
+	 * @param start index of the first element to test
+	 * @param length number of elements to test
+	 * @param threshold element that the result must sort before, or null to 
+	 * select all elements in the range
+	 * @param order sort order
+	 * @return the selected elements
+	 */
+	private static Object[] selectBefore(Object[] toTest, int start, int length, 
+			Object threshold, Comparator order) {
+		if (threshold == null && start == 0 && length == toTest.length) {
+			return toTest;
+		}
+		Object[] selected = new Object[length];
+		int count = 0;
+		for (int i = start; i < start + length; i++) {
+			Object object = toTest[i];
+			
+			if (threshold == null || order.compare(object, threshold) < 0) {
+				selected[count++] = object;
+			}
+		}
+		if (count == selected.length) {
+			return selected;
+		}
+		Object[] trimmed = new Object[count];
+		System.arraycopy(selected, 0, trimmed, 0, count);
+		return trimmed;
+	}
+
+	/**
+	 * Adds the elements that pass the filter to the collection and the others
+	 * to the rejected elements.
+	 * 
 	 * @param collection
+	 * @param rejected
 	 * @param toAdd
+	 * @param filter
 	 */
-	private static void filteredAdd(LazySortedCollection collection, Object[] toAdd, IFilter filter) {
+	private static void filteredAdd(LazySortedCollection collection, UnorderedSet rejected, 
+			Object[] toAdd, IFilter filter) {
 		if (filter != AcceptAllFilter.getInstance()) { 
+			Object[] selected = new Object[toAdd.length];
+			int count = 0;
 			for (int i = 0; i < toAdd.length; i++) {
 				Object object = toAdd[i];
 				
 				if (filter.select(object)) {
-					collection.add(object);
+					selected[count++] = object;
+				} else {
+					rejected.add(object);
 				}
 			}
+			if (count < selected.length) {
+				Object[] trimmed = new Object[count];
+				System.arraycopy(selected, 0, trimmed, 0, count);
+				selected = trimmed;
+			}
+			collection.addAll(selected);
 		} else {
 			collection.addAll(toAdd);
 		}
@@ -394,10 +735,44 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
      * @param toSet filter to set
      */
     public void setFilter(IFilter toSet) {
+    	setFilter(toSet, DeferredContentProvider.FILTER_CHANGED);
+    }
+    
+    /**
+     * Sets the filter for this content provider. Elements rejected by the
+     * previous filter are kept, so that the new filter can be applied without
+     * asking the model for its contents again. If the new filter is known to
+     * accept only elements that the previous filter accepted, only the shown
+     * elements are tested. If it is known to accept all elements that the
+     * previous filter accepted, only the rejected elements are tested.
+     * 
+     * @param toSet filter to set
+     * @param change how the new filter relates to the current one, one of the 
+     * <code>DeferredContentProvider.FILTER_*</code> constants
+     * @since 3.6
+     */
+    public void setFilter(IFilter toSet, int change) {
     	Assert.isNotNull(toSet);
-    	this.filter = toSet;
+    	Assert.isTrue(change == DeferredContentProvider.FILTER_CHANGED
+    			|| change == DeferredContentProvider.FILTER_NARROWED
+    			|| change == DeferredContentProvider.FILTER_WIDENED);
+    	synchronized (this) {
+    		// Changes in different directions since the sort thread last applied
+    		// the filter cannot be combined
+    		if (filterChange != -1 && filterChange != change) {
+    			change = DeferredContentProvider.FILTER_CHANGED;
+    		}
+    		filterChange = change;
+    		this.filter = toSet;
+    	}
     	sortMon.cancel();
-    	refresh();
+    	
+    	// Elements beyond the limit have been dropped and must be sent again
+    	if (limit != -1 && change != DeferredContentProvider.FILTER_WIDENED) {
+    		refresh();
+    	} else {
+    		makeDirty();
+    	}
     }
     
     /**
@@ -422,6 +797,70 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
         return limit;
     }
     
+    /**
+     * Sets the number of rows to sort on either side of the visible range. If
+     * a margin is set, only the visible rows and the rows within the margin are
+     * sorted and sent to the table, and other rows are sorted when they are
+     * scrolled into view. This makes the time needed to show a new sort order
+     * proportional to the size of the visible range rather than the size of the
+     * table.
+     * 
+     * @param margin number of rows to sort before and after the visible range,
+     * or -1 to sort all rows
+     * @since 3.6
+     */
+    public void setPrefetchMargin(int margin) {
+    	Assert.isTrue(margin >= -1);
+    	this.prefetchMargin = margin;
+    	makeDirty();
+    }
+    
+    /**
+     * Throttles the updates of the table. Changes are sent to the table at most
+     * the given number of times per second, and each update clears at most the 
+     * given number of rows outside the visible range. 
+     * 
+     * @param framesPerSecond maximum number of table updates per second, or 0
+     * if unbounded
+     * @param maxRows maximum number of rows outside the visible range cleared
+     * per update, or -1 if unbounded
+     * @since 3.6
+     */
+    public void setUpdateThrottle(int framesPerSecond, int maxRows) {
+    	Assert.isTrue(framesPerSecond >= 0 && maxRows >= -1);
+    	updator.setThrottle(framesPerSecond, maxRows);
+    }
+    
+    /**
+     * Returns a snapshot of the counters of the change queue and of the table
+     * updates. May be called from any thread.
+     * 
+     * @return the statistics of this provider
+     * @since 3.6
+     */
+    public UpdateStatistics getStatistics() {
+    	UpdateStatistics statistics = new UpdateStatistics();
+    	statistics.queuedElements = changeQueue.getDepth();
+    	statistics.enqueuedChanges = changeQueue.getEnqueuedCount();
+    	statistics.mergedChanges = changeQueue.getMergedCount();
+    	statistics.droppedElements = changeQueue.getDroppedCount();
+    	statistics.tableUpdates = updator.getFlushCount();
+    	statistics.droppedRowValues = updator.getDroppedCount();
+    	statistics.mergedRowClears = updator.getMergedCount();
+    	return statistics;
+    }
+    
+    /**
+     * Returns the number of rows sorted on either side of the visible range or -1
+     * if all rows are sorted
+     * 
+     * @return the prefetch margin or -1 if all rows are sorted
+     * @since 3.6
+     */
+    public int getPrefetchMargin() {
+    	return prefetchMargin;
+    }
+    
     /**
      * Checks if currently visible range has changed, and triggers and update
      * and resort if necessary. Must be called in the UI thread, typically
@@ -436,68 +875,22 @@ import org.eclipse.jface.viewers.deferred.ConcurrentTableUpdator.Range;
 		// If we're in the middle of processing an invalid range, cancel the sort
 		if (newRange.start != oldRange.start || newRange.length != oldRange.length) {
 			sortMon.cancel();
-		}
-    }
-    
-    /**
-     * This lock protects the two boolean variables sortThreadStarted and resortScheduled.
-     */
-    private Object lock = new Object();
-
-    /**
-     * true if the sort thread is running
-     */
-    private boolean sortThreadStarted = false;
-
-    /**
-     * true if we need to sort
-     */
-    private boolean sortScheduled = false;
-    
-	private final class SortThread extends Thread {
-		private SortThread(String name) {
-			super(name);
-		}
-
-		public void run() {
-			loop: while (true) {
-				synchronized (lock) {
-					sortScheduled = false;
-				}
-				try {
-					// this is the main work
-					doSort(sortingProgressMonitor);
-				} catch (Exception ex) {
-					// ignore
-				}
-				synchronized (lock) {
-					if (sortScheduled) {
-						continue loop;
-					}
-					sortThreadStarted = false;
-					break loop;
-				}
+			scheduler.prioritize(this);
+			
+			// Rows outside the sorted window are only sorted once they become visible
+			if (prefetchMargin != -1 && !isSent(updator.getKnownObjects().length)) {
+				makeDirty();
 			}
 		}
-	}
+    }
     
     /**
-     * Must be called whenever the model changes. Dirties this object and triggers a sort
-     * if necessary. 
+     * Must be called whenever the model changes or rows that have not been sorted
+     * become visible. Dirties this object and triggers a sort if necessary. 
      */
     private void makeDirty() {
-		synchronized (lock) {
-			sortMon.cancel();
-			// request sorting
-			sortScheduled = true;
-			if (!sortThreadStarted) {
-				sortThreadStarted = true;
-				sortThread = new SortThread(SORTING);
-				sortThread.setDaemon(true);
-				sortThread.setPriority(Thread.NORM_PRIORITY - 1);
-				sortThread.start();
-			}
-		}
+		sortMon.cancel();
+		scheduler.schedule(this);
 	}
     
     /**
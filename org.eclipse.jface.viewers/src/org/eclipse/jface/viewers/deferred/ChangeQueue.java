@@ -10,12 +10,31 @@
  *******************************************************************************/
 package org.eclipse.jface.viewers.deferred;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Holds a queue of additions, removals, updates, and SET calls for a
  * BackgroundContentProvider
+ * <p>
+ * Any number of threads may enqueue changes, but only a single thread may
+ * dequeue them. Producers append their changes to an incoming buffer, holding
+ * the lock only long enough to add to a list. The consumer takes the whole
+ * buffer at once and merges it into its own queue without holding the lock,
+ * coalescing adjacent changes on the way:
+ * </p>
+ * <ul>
+ * <li>consecutive ADDs, REMOVEs, and UPDATEs are merged into a single change,</li>
+ * <li>an element that is added and then removed again is dropped from both changes,</li>
+ * <li>repeated UPDATEs of the same element are collapsed into one,</li>
+ * <li>a SET makes all previous adds, removes, and sets redundant.</li>
+ * </ul>
+ * <p>
+ * Cancelling an add with a subsequent remove assumes, like the rest of the
+ * deferred package, that a model never adds an element that it already contains.
+ * </p>
  */
 final class ChangeQueue {
 	/**
@@ -81,8 +100,101 @@ final class ChangeQueue {
 		}
 	}
 	
+	/**
+	 * A change that is still waiting in the consumer's queue, and which may be
+	 * merged with the changes that follow it. Only accessed by the consumer.
+	 */
+	private static final class Batch {
+		private int type;
+		private List elements = new ArrayList();
+		
+		/**
+		 * Maps elements onto their position in the elements list, or null if not
+		 * created yet. Only needed for cancelling adds and collapsing updates.
+		 */
+		private IntHashMap positions;
+		
+		/**
+		 * Number of elements in the list that have been cancelled (set to null)
+		 */
+		private int cancelled;
+		
+		Batch(int type) {
+			this.type = type;
+		}
+		
+		int size() {
+			return elements.size() - cancelled;
+		}
+		
+		IntHashMap getPositions() {
+			if (positions == null) {
+				positions = new IntHashMap(elements.size() * 2, 0.75f);
+				for (int i = 0; i < elements.size(); i++) {
+					Object next = elements.get(i);
+					if (next != null) {
+						positions.put(next, i);
+					}
+				}
+			}
+			return positions;
+		}
+		
+		void add(Object element) {
+			if (positions != null) {
+				positions.put(element, elements.size());
+			}
+			elements.add(element);
+		}
+		
+		boolean cancel(Object element) {
+			int position = getPositions().get(element, -1);
+			if (position == -1) {
+				return false;
+			}
+			positions.remove(element);
+			elements.set(position, null);
+			cancelled++;
+			return true;
+		}
+		
+		Change toChange() {
+			Object[] result = new Object[size()];
+			int next = 0;
+			for (int i = 0; i < elements.size(); i++) {
+				Object element = elements.get(i);
+				if (element != null) {
+					result[next++] = element;
+				}
+			}
+			return new Change(type, result);
+		}
+	}
+	
+	/**
+	 * Changes enqueued since the consumer last took them. Guarded by this object.
+	 */
+	private ArrayList incoming = new ArrayList();
+	
+	/**
+	 * Number of elements in the incoming changes. Only written while holding the lock.
+	 */
+	private volatile int incomingWorkload = 0;
+	
+	/**
+	 * Coalesced changes, as a list of Batch. Only accessed by the consumer.
+	 */
 	private LinkedList queue = new LinkedList();
-	private int workload = 0;
+	
+	/**
+	 * Number of elements in the coalesced changes. Only written by the consumer.
+	 */
+	private volatile int workload = 0;
+	
+	// Metrics. Only written by the consumer.
+	private volatile long enqueuedCount = 0;
+	private volatile long mergedCount = 0;
+	private volatile long droppedCount = 0;
 	
 	/**
 	 * Create a change of the given type and elements and enqueue it.
@@ -90,7 +202,7 @@ final class ChangeQueue {
 	 * @param type the type of change to be created
 	 * @param elements the elements affected by the change
 	 */
-	public synchronized void enqueue(int type, Object[] elements) {
+	public void enqueue(int type, Object[] elements) {
 		enqueue(new Change(type, elements));
 	}
 	
@@ -98,45 +210,197 @@ final class ChangeQueue {
 	 * Add the specified change to the queue
 	 * @param toQueue the change to be added
 	 */
-	public synchronized void enqueue(Change toQueue) {
+	public void enqueue(Change toQueue) {
+		synchronized (this) {
+			incoming.add(toQueue);
+			incomingWorkload += toQueue.elements.length;
+		}
+	}
+	
+	/**
+	 * Remove the first change from the queue. May only be called by the consumer.
+	 * @return the first change
+	 */
+	public Change dequeue() {
+		takeIncoming();
+		Batch result = (Batch)queue.removeFirst();
+		
+		workload -= result.size();
+		return result.toChange();
+	}
+	
+	/**
+	 * Return whether the queue is empty. May only be called by the consumer.
+	 * @return <code>true</code> if empty, <code>false</code> otherwise
+	 */
+	public boolean isEmpty() {
+		if (incomingWorkload == 0 && queue.isEmpty()) {
+			// Empty changes can only be found by taking the incoming changes,
+			// so this needs the lock
+			synchronized (this) {
+				if (incoming.isEmpty()) {
+					return true;
+				}
+			}
+		}
+		takeIncoming();
+		return queue.isEmpty();
+	}
+	
+	/**
+	 * Returns the number of elements in all changes that have not been dequeued yet.
+	 * May be called from any thread.
+	 * 
+	 * @return the number of queued elements
+	 * @since 3.6
+	 */
+	public int getDepth() {
+		return workload + incomingWorkload;
+	}
+	
+	/**
+	 * Returns the number of changes that have been taken from the incoming buffer
+	 * by the consumer.
+	 * 
+	 * @return the number of changes taken by the consumer
+	 * @since 3.6
+	 */
+	public long getEnqueuedCount() {
+		return enqueuedCount;
+	}
+	
+	/**
+	 * Returns the number of changes that were merged into the change before them.
+	 * 
+	 * @return the number of merged changes
+	 * @since 3.6
+	 */
+	public long getMergedCount() {
+		return mergedCount;
+	}
+	
+	/**
+	 * Returns the number of elements that were dropped because they were
+	 * redundant: elements whose addition and removal cancelled out, repeated
+	 * updates of an element, and elements of changes that were superseded by
+	 * a SET.
+	 * 
+	 * @return the number of dropped elements
+	 * @since 3.6
+	 */
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+	
+	/**
+	 * Moves the incoming changes to the consumer's queue, coalescing them with
+	 * the changes already there.
+	 */
+	private void takeIncoming() {
+		ArrayList changes;
+		synchronized (this) {
+			if (incoming.isEmpty()) {
+				return;
+			}
+			changes = incoming;
+			incoming = new ArrayList();
+			incomingWorkload = 0;
+		}
+		
+		// Readers of getDepth may briefly miss the elements in changes
+		for (int i = 0; i < changes.size(); i++) {
+			coalesce((Change) changes.get(i));
+		}
+		enqueuedCount += changes.size();
+	}
+	
+	/**
+	 * Appends the given change to the consumer's queue, merging it with the
+	 * last change in the queue if possible.
+	 * 
+	 * @param toQueue the change to be added
+	 */
+	private void coalesce(Change toQueue) {
 		// A SET event makes all previous adds, removes, and sets redundant... so remove
 		// them from the queue
 		if (toQueue.type == SET) {
 			workload = 0;
 			LinkedList newQueue = new LinkedList();
 			for (Iterator iter = queue.iterator(); iter.hasNext();) {
-				Change next = (Change) iter.next();
+				Batch next = (Batch) iter.next();
 				
-				if (next.getType() == ADD || next.getType() == REMOVE || next.getType() == SET) {
+				if (next.type == ADD || next.type == REMOVE || next.type == SET) {
+					droppedCount += next.size();
 					continue;
 				}
 				
 				newQueue.add(next);
-				workload += next.elements.length;
+				workload += next.size();
 			}
 			queue = newQueue;
 		}
 		
-		queue.add(toQueue);
-		workload += toQueue.elements.length;
-	}
-	
-	/**
-	 * Remove the first change from the queue.
-	 * @return the first change
-	 */
-	public synchronized Change dequeue() {
-		Change result = (Change)queue.removeFirst();
+		Object[] elements = toQueue.elements;
+		Batch last = queue.isEmpty() ? null : (Batch) queue.getLast();
+		int oldSize = last == null ? 0 : last.size();
+		boolean merge = last != null && last.type == toQueue.type && toQueue.type != SET;
 		
-		workload -= result.elements.length;
-		return result;
-	}
-	
-	/**
-	 * Return whether the queue is empty
-	 * @return <code>true</code> if empty, <code>false</code> otherwise
-	 */
-	public synchronized boolean isEmpty() {
-		return queue.isEmpty();
+		if (toQueue.type == REMOVE && last != null && last.type == ADD) {
+			// Elements that are still waiting to be added need not be added at all
+			Batch removals = null;
+			for (int i = 0; i < elements.length; i++) {
+				Object element = elements[i];
+				
+				if (last.cancel(element)) {
+					droppedCount += 2;
+					continue;
+				}
+				
+				if (removals == null) {
+					removals = new Batch(REMOVE);
+				}
+				removals.add(element);
+			}
+			
+			workload += last.size() - oldSize;
+			if (last.size() == 0) {
+				queue.removeLast();
+			}
+			if (removals != null) {
+				queue.add(removals);
+				workload += removals.size();
+			}
+			return;
+		}
+		
+		Batch target;
+		if (merge) {
+			target = last;
+			mergedCount++;
+		} else {
+			target = new Batch(toQueue.type);
+			queue.add(target);
+			oldSize = 0;
+		}
+		
+		if (toQueue.type == UPDATE) {
+			// Repeated updates of an element only need to be processed once
+			IntHashMap positions = target.getPositions();
+			for (int i = 0; i < elements.length; i++) {
+				Object element = elements[i];
+				
+				if (positions.containsKey(element)) {
+					droppedCount++;
+				} else {
+					target.add(element);
+				}
+			}
+		} else {
+			for (int i = 0; i < elements.length; i++) {
+				target.add(elements[i]);
+			}
+		}
+		
+		workload += target.size() - oldSize;
 	}
 }
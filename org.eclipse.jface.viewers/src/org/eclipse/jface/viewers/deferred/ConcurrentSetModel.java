@@ -0,0 +1,575 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.deferred;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.Assert;
+
+/**
+ * Thread-safe implementation of an <code>IConcurrentModel</code>, for models
+ * that are fed by several threads at a high rate. Like <code>SetModel</code>,
+ * it implements an unordered set of elements.
+ * <p>
+ * The elements are spread over several independently locked partitions, so
+ * that threads adding or removing different elements rarely wait for each
+ * other. Changes are not sent to the listeners by the thread that makes them.
+ * They are collected for a short time, merged, and sent in large batches by a
+ * background thread that is started on demand. Listeners are notified without
+ * holding any lock of the model, so a slow listener never blocks the threads
+ * feeding the model.
+ * </p>
+ * <p>
+ * Listeners receive the net effect of the changes made since they were last
+ * notified: removals first, then additions, then updates. An element that was
+ * added and removed again in the meantime is not reported at all. Elements that
+ * are already contained are not added again, and elements that are not
+ * contained are not removed or updated.
+ * </p>
+ *
+ * @since 3.6
+ */
+public class ConcurrentSetModel extends AbstractConcurrentModel {
+
+	private static final int ADD = 0;
+	private static final int REMOVE = 1;
+	private static final int UPDATE = 2;
+
+	// Net changes of an element since the listeners were last notified
+	private static final Integer ADDED = new Integer(ADD);
+	private static final Integer REMOVED = new Integer(REMOVE);
+	private static final Integer UPDATED = new Integer(UPDATE);
+
+	// Operations performed while holding all partitions
+	private static final int SNAPSHOT = 0;
+	private static final int REPLACE = 1;
+	private static final int TAKE = 2;
+
+	/**
+	 * Number of partitions. Must be a power of two.
+	 */
+	private static final int SHARDS = 16;
+
+	/**
+	 * Changes that have not been sent to the listeners yet. Only the net change
+	 * of each element is kept: an element that is added and removed again is
+	 * dropped, and an element that is removed and added again is updated.
+	 */
+	private static final class Batch {
+		/**
+		 * Contents of the last call to set, with later changes applied, or null if the
+		 * contents have not been set
+		 */
+		private HashSet contents;
+
+		/**
+		 * Maps elements onto ADDED, REMOVED, or UPDATED
+		 */
+		private HashMap changes = new HashMap();
+
+		/**
+		 * Number of changes merged into this batch
+		 */
+		private int size = 0;
+
+		boolean isEmpty() {
+			return contents == null && changes.isEmpty();
+		}
+
+		void add(int type, List elements) {
+			size += elements.size();
+			if (contents != null) {
+				if (type == ADD) {
+					contents.addAll(elements);
+				} else if (type == REMOVE) {
+					contents.removeAll(elements);
+				}
+				return;
+			}
+
+			for (int i = 0; i < elements.size(); i++) {
+				Object element = elements.get(i);
+				Object current = changes.get(element);
+				if (type == ADD) {
+					changes.put(element, current == REMOVED ? UPDATED : ADDED);
+				} else if (type == REMOVE) {
+					if (current == ADDED) {
+						changes.remove(element);
+					} else {
+						changes.put(element, REMOVED);
+					}
+				} else if (current == null) {
+					changes.put(element, UPDATED);
+				}
+			}
+		}
+
+		/**
+		 * Returns the elements whose net change is of the given type
+		 */
+		Object[] getElements(Integer type) {
+			List result = new ArrayList();
+			for (Iterator iter = changes.entrySet().iterator(); iter.hasNext();) {
+				Map.Entry next = (Map.Entry) iter.next();
+				if (next.getValue() == type) {
+					result.add(next.getKey());
+				}
+			}
+			return result.toArray();
+		}
+	}
+
+	/**
+	 * The partitions of the set. Each partition is guarded by itself.
+	 */
+	private HashSet[] shards = new HashSet[SHARDS];
+
+	/**
+	 * Changes that have not been sent yet. Guarded by batchLock. A thread that
+	 * changes a partition adds the change to the batch before releasing the
+	 * partition, so the changes of each element are added in order.
+	 */
+	private Batch pending = new Batch();
+
+	/**
+	 * Listeners that requested the contents of the model. Guarded by batchLock.
+	 */
+	private Set pendingRequests = new LinkedHashSet();
+
+	/**
+	 * True iff the delivery thread is running. Guarded by batchLock.
+	 */
+	private boolean deliveryScheduled = false;
+
+	private Object batchLock = new Object();
+
+	/**
+	 * Held while changes are sent to the listeners, so that batches are sent in
+	 * order. Always acquired before any partition and batchLock.
+	 */
+	private Object deliveryLock = new Object();
+
+	private final int batchDelay;
+
+	private final int maxBatchSize;
+
+	private Runnable delivery = new Runnable() {
+		public void run() {
+			deliverPending();
+		}
+	};
+
+	/**
+	 * Creates a new model that collects changes for up to 50 milliseconds or
+	 * 10000 elements before sending them to its listeners.
+	 */
+	public ConcurrentSetModel() {
+		this(50, 10000);
+	}
+
+	/**
+	 * Creates a new model that collects changes for up to the given time or
+	 * number of elements before sending them to its listeners. If the delay is
+	 * 0, changes are sent synchronously by the thread that makes them.
+	 *
+	 * @param batchDelay maximum time in milliseconds a change waits before it
+	 * is sent to the listeners, or 0
+	 * @param maxBatchSize number of changed elements after which the changes
+	 * are sent without waiting for the delay to expire
+	 */
+	public ConcurrentSetModel(int batchDelay, int maxBatchSize) {
+		Assert.isTrue(batchDelay >= 0 && maxBatchSize > 0);
+		this.batchDelay = batchDelay;
+		this.maxBatchSize = maxBatchSize;
+		for (int i = 0; i < SHARDS; i++) {
+			shards[i] = new HashSet();
+		}
+	}
+
+	/**
+	 * Returns the contents of the model.
+	 *
+	 * @return the array of elements
+	 */
+	public Object[] getElements() {
+		return (Object[]) lockAll(0, SNAPSHOT, null);
+	}
+
+	/**
+	 * Returns the number of elements in the model
+	 *
+	 * @return the number of elements
+	 */
+	public int size() {
+		int result = 0;
+		for (int i = 0; i < SHARDS; i++) {
+			synchronized (shards[i]) {
+				result += shards[i].size();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the contents to the given array of elements
+	 *
+	 * @param newContents new contents of this set
+	 */
+	public void set(Object[] newContents) {
+		Assert.isNotNull(newContents);
+		lockAll(0, REPLACE, newContents);
+		schedule(false);
+	}
+
+	/**
+	 * Empties the set
+	 */
+	public void clear() {
+		set(new Object[0]);
+	}
+
+	/**
+	 * Adds the given elements to the set. Elements that are already contained
+	 * are ignored.
+	 *
+	 * @param toAdd elements to add
+	 */
+	public void addAll(Object[] toAdd) {
+		Assert.isNotNull(toAdd);
+		apply(ADD, toAdd);
+	}
+
+	/**
+	 * Adds the given elements to the set. Elements that are already contained
+	 * are ignored.
+	 *
+	 * @param toAdd elements to add
+	 */
+	public void addAll(Collection toAdd) {
+		Assert.isNotNull(toAdd);
+		addAll(toAdd.toArray());
+	}
+
+	/**
+	 * Fires a change notification for all elements in the given array that are
+	 * contained in the set
+	 *
+	 * @param changed array of elements that have changed
+	 */
+	public void changeAll(Object[] changed) {
+		Assert.isNotNull(changed);
+		apply(UPDATE, changed);
+	}
+
+	/**
+	 * Removes all of the given elements from the set.
+	 *
+	 * @param toRemove elements to remove
+	 */
+	public void removeAll(Object[] toRemove) {
+		Assert.isNotNull(toRemove);
+		apply(REMOVE, toRemove);
+	}
+
+	/**
+	 * Sends all pending changes to the listeners in the calling thread. Returns
+	 * when all changes made before the call have been sent.
+	 */
+	public void flush() {
+		deliver();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.viewers.deferred.IConcurrentModel#requestUpdate(org.eclipse.jface.viewers.deferred.IConcurrentModelListener)
+	 */
+	public void requestUpdate(IConcurrentModelListener listener) {
+		Assert.isNotNull(listener);
+		synchronized (batchLock) {
+			pendingRequests.add(listener);
+		}
+		schedule(true);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.viewers.deferred.AbstractConcurrentModel#removeListener(org.eclipse.jface.viewers.deferred.IConcurrentModelListener)
+	 */
+	public void removeListener(IConcurrentModelListener listener) {
+		super.removeListener(listener);
+		synchronized (batchLock) {
+			pendingRequests.remove(listener);
+		}
+	}
+
+	private static int shardOf(Object element) {
+		int h = element.hashCode();
+		h ^= (h >>> 16);
+		return h & (SHARDS - 1);
+	}
+
+	/**
+	 * Applies a change to the partitions, and queues the elements that actually
+	 * changed.
+	 */
+	private void apply(int type, Object[] elements) {
+		if (elements.length == 0) {
+			return;
+		}
+
+		// Group the elements by partition so that each partition is locked once
+		int[] counts = new int[SHARDS + 1];
+		for (int i = 0; i < elements.length; i++) {
+			Assert.isNotNull(elements[i]);
+			counts[shardOf(elements[i]) + 1]++;
+		}
+		for (int i = 1; i <= SHARDS; i++) {
+			counts[i] += counts[i - 1];
+		}
+		Object[] grouped = new Object[elements.length];
+		int[] next = new int[SHARDS];
+		System.arraycopy(counts, 0, next, 0, SHARDS);
+		for (int i = 0; i < elements.length; i++) {
+			grouped[next[shardOf(elements[i])]++] = elements[i];
+		}
+
+		boolean full = false;
+		for (int shard = 0; shard < SHARDS; shard++) {
+			int start = counts[shard];
+			int end = counts[shard + 1];
+			if (start == end) {
+				continue;
+			}
+
+			HashSet data = shards[shard];
+			synchronized (data) {
+				List changed = new ArrayList(end - start);
+				for (int i = start; i < end; i++) {
+					Object element = grouped[i];
+					boolean result;
+					if (type == ADD) {
+						result = data.add(element);
+					} else if (type == REMOVE) {
+						result = data.remove(element);
+					} else {
+						result = data.contains(element);
+					}
+					if (result) {
+						changed.add(element);
+					}
+				}
+
+				if (!changed.isEmpty()) {
+					full |= enqueue(type, changed);
+				}
+			}
+		}
+
+		schedule(full);
+	}
+
+	/**
+	 * Adds the given changed elements to the pending changes.
+	 *
+	 * @return true iff the pending changes should be sent without delay
+	 */
+	private boolean enqueue(int type, List elements) {
+		synchronized (batchLock) {
+			pending.add(type, elements);
+			return pending.size >= maxBatchSize;
+		}
+	}
+
+	/**
+	 * Performs the given operation while holding all partitions from the given
+	 * one, so that no other thread can change the set or the pending changes.
+	 *
+	 * @return for SNAPSHOT, the contents; for TAKE, an array containing the
+	 * contents and the pending batch; for REPLACE, null
+	 */
+	private Object lockAll(int shard, int operation, Object[] newContents) {
+		if (shard < SHARDS) {
+			synchronized (shards[shard]) {
+				return lockAll(shard + 1, operation, newContents);
+			}
+		}
+
+		if (operation == REPLACE) {
+			HashSet contents = new HashSet();
+			for (int i = 0; i < SHARDS; i++) {
+				shards[i].clear();
+			}
+			for (int i = 0; i < newContents.length; i++) {
+				Object element = newContents[i];
+				Assert.isNotNull(element);
+				if (shards[shardOf(element)].add(element)) {
+					contents.add(element);
+				}
+			}
+
+			// Setting the contents makes all previous changes redundant
+			synchronized (batchLock) {
+				pending = new Batch();
+				pending.contents = contents;
+			}
+			return null;
+		}
+
+		int size = 0;
+		for (int i = 0; i < SHARDS; i++) {
+			size += shards[i].size();
+		}
+		Object[] contents = new Object[size];
+		int idx = 0;
+		for (int i = 0; i < SHARDS; i++) {
+			for (Iterator iter = shards[i].iterator(); iter.hasNext();) {
+				contents[idx++] = iter.next();
+			}
+		}
+		if (operation == SNAPSHOT) {
+			return contents;
+		}
+		return new Object[] { contents, takePending() };
+	}
+
+	/**
+	 * Removes the pending changes and returns them
+	 */
+	private Batch takePending() {
+		synchronized (batchLock) {
+			Batch result = pending;
+			pending = new Batch();
+			return result;
+		}
+	}
+
+	/**
+	 * Makes sure that the pending changes will be sent.
+	 *
+	 * @param now true iff the changes should be sent without waiting for the delay
+	 */
+	private void schedule(boolean now) {
+		if (batchDelay == 0) {
+			deliver();
+			return;
+		}
+
+		synchronized (batchLock) {
+			if (now) {
+				batchLock.notifyAll();
+			}
+			if (deliveryScheduled) {
+				return;
+			}
+			deliveryScheduled = true;
+		}
+
+		Thread thread = new Thread(delivery, "ConcurrentSetModel"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Main loop of the delivery thread. Waits for changes to collect and sends
+	 * them until none are left.
+	 */
+	private void deliverPending() {
+		while (true) {
+			synchronized (batchLock) {
+				if (pending.isEmpty() && pendingRequests.isEmpty()) {
+					deliveryScheduled = false;
+					return;
+				}
+
+				long end = System.currentTimeMillis() + batchDelay;
+				long wait = batchDelay;
+				while (wait > 0 && pending.size < maxBatchSize && pendingRequests.isEmpty()) {
+					try {
+						batchLock.wait(wait);
+					} catch (InterruptedException e) {
+						break;
+					}
+					wait = end - System.currentTimeMillis();
+				}
+			}
+
+			try {
+				deliver();
+			} catch (RuntimeException e) {
+				// ignore, like the sorting of BackgroundContentProvider
+			}
+		}
+	}
+
+	/**
+	 * Takes the pending changes and sends them to the listeners.
+	 */
+	private void deliver() {
+		synchronized (deliveryLock) {
+			Batch changes;
+			IConcurrentModelListener[] requests;
+			Object[] contents = null;
+
+			synchronized (batchLock) {
+				if (pending.isEmpty() && pendingRequests.isEmpty()) {
+					return;
+				}
+				requests = (IConcurrentModelListener[]) pendingRequests
+						.toArray(new IConcurrentModelListener[pendingRequests.size()]);
+			}
+
+			if (requests.length > 0) {
+				// The contents must match the changes taken with them
+				Object[] result = (Object[]) lockAll(0, TAKE, null);
+				contents = (Object[]) result[0];
+				changes = (Batch) result[1];
+				synchronized (batchLock) {
+					pendingRequests.removeAll(Arrays.asList(requests));
+				}
+			} else {
+				changes = takePending();
+			}
+
+			if (changes.contents != null) {
+				Object[] elements = changes.contents.toArray();
+				IConcurrentModelListener[] listeners = getListeners();
+				for (int i = 0; i < listeners.length; i++) {
+					listeners[i].setContents(elements);
+				}
+			}
+			if (!changes.changes.isEmpty()) {
+				Object[] removed = changes.getElements(REMOVED);
+				if (removed.length > 0) {
+					fireRemove(removed);
+				}
+				Object[] added = changes.getElements(ADDED);
+				if (added.length > 0) {
+					fireAdd(added);
+				}
+				Object[] updated = changes.getElements(UPDATED);
+				if (updated.length > 0) {
+					fireUpdate(updated);
+				}
+			}
+
+			for (int i = 0; i < requests.length; i++) {
+				requests[i].setContents(contents);
+			}
+		}
+	}
+}
@@ -45,6 +45,14 @@ package org.eclipse.jface.viewers.deferred;
      */
     private Object[] knownObjects = new Object[0];
     
+    /**
+     * The rows of knownObjects outside [knownStart, knownEnd) are null. Lets
+     * clearOutside skip the rows that are known to be empty.
+     */
+    private int knownStart = 0;
+    
+    private int knownEnd = 0;
+    
     // Minimum length for the pendingFlushes stack
     private static final int MIN_FLUSHLENGTH = 64;
     
@@ -78,6 +86,28 @@ package org.eclipse.jface.viewers.deferred;
      */
     private volatile boolean disposed = false;
     
+    /**
+     * Minimum time between two scheduled UI updates in milliseconds, or 0 if
+     * updates are not throttled
+     */
+    private volatile int flushInterval = 0;
+    
+    /**
+     * Maximum number of rows outside the visible range that are cleared in one
+     * UI update, or -1 if unbounded
+     */
+    private volatile int maxRowsPerFlush = -1;
+    
+    /**
+     * Time of the last scheduled UI update. Only accessed in the UI thread.
+     */
+    private long lastFlush = 0;
+    
+    // Statistics. Guarded by this object.
+    private long flushCount = 0;
+    private long droppedCount = 0;
+    private long mergedCount = 0;
+    
     /**
      * Object that holds a start index and length. Allows
      * the visible range to be returned as an atomic operation.
@@ -102,10 +132,24 @@ package org.eclipse.jface.viewers.deferred;
      */
     Runnable uiRunnable = new Runnable() {
         public void run() {
+            if(table.getControl().isDisposed()) {
+            	updateScheduled = false;
+            	return;
+            }
+            
+            // Wait for the next frame if the last update was too recent 
+            int interval = flushInterval;
+            if (interval > 0) {
+            	long wait = lastFlush + interval - System.currentTimeMillis();
+            	if (wait > 0) {
+            		table.getControl().getDisplay().timerExec((int) wait, this);
+            		return;
+            	}
+            	lastFlush = System.currentTimeMillis();
+            }
+            
             updateScheduled = false;
-            if(!table.getControl().isDisposed()) {
-				updateTable();
-			}
+            updateTable();
         }
     };
     
@@ -134,6 +178,56 @@ package org.eclipse.jface.viewers.deferred;
     	return disposed;
     }
     
+    /**
+     * Throttles the updates of the table. Updates that arrive from the
+     * background thread are sent to the table at most the given number of
+     * times per second, and each update clears at most the given number of rows
+     * outside the visible range. The rest of the rows are cleared in the
+     * following updates. The visible rows are always updated completely.
+     * 
+     * @param framesPerSecond maximum number of updates per second, or 0 if unbounded
+     * @param maxRows maximum number of rows outside the visible range cleared
+     * per update, or -1 if unbounded
+     * @since 3.6
+     */
+    public void setThrottle(int framesPerSecond, int maxRows) {
+    	this.flushInterval = framesPerSecond > 0 ? Math.max(1000 / framesPerSecond, 1) : 0;
+    	this.maxRowsPerFlush = maxRows;
+    }
+    
+    /**
+     * Returns the number of updates that have been sent to the table
+     * 
+     * @return the number of table updates
+     * @since 3.6
+     */
+    public synchronized long getFlushCount() {
+    	return flushCount;
+    }
+    
+    /**
+     * Returns the number of values that were replaced by another value before
+     * they had been sent to the table
+     * 
+     * @return the number of values never sent to the table
+     * @since 3.6
+     */
+    public synchronized long getDroppedCount() {
+    	return droppedCount;
+    }
+    
+    /**
+     * Returns the number of requests to clear a row that were not passed on to
+     * the table, because the row was already waiting to be cleared or had not
+     * been sent yet
+     * 
+     * @return the number of merged clears
+     * @since 3.6
+     */
+    public synchronized long getMergedCount() {
+    	return mergedCount;
+    }
+    
     /**
      * Returns the currently visible range
      * 
@@ -187,6 +281,8 @@ package org.eclipse.jface.viewers.deferred;
 	            Object[] newKnownObjects = new Object[newTotal];
 	            System.arraycopy(knownObjects, 0, newKnownObjects, 0, minSize);
 	            knownObjects = newKnownObjects;
+	            knownEnd = Math.min(knownEnd, newTotal);
+	            knownStart = Math.min(knownStart, knownEnd);
 	            	            
 	            scheduleUIUpdate();
             }
@@ -207,6 +303,7 @@ package org.eclipse.jface.viewers.deferred;
     	
     	// If already flushed or never sent
         if (sentObjects[toClear] == null) {
+        	mergedCount++;
         	return;            
         }
 
@@ -214,7 +311,7 @@ package org.eclipse.jface.viewers.deferred;
         sentObjects[toClear] = null;
     	
         if (lastClear >= pendingClears.length) {
-            int newCapacity = Math.min(MIN_FLUSHLENGTH, lastClear * 2);
+            int newCapacity = Math.max(MIN_FLUSHLENGTH, lastClear * 2);
             int[] newPendingClears = new int[newCapacity];
             System.arraycopy(pendingClears, 0, newPendingClears, 0, lastClear);
             pendingClears = newPendingClears;
@@ -239,6 +336,10 @@ package org.eclipse.jface.viewers.deferred;
             if (oldObject != value) {
             	if (oldObject != null) {
             		knownIndices.remove(oldObject);
+            		
+            		if (idx >= sentObjects.length || sentObjects[idx] != oldObject) {
+            			droppedCount++;
+            		}
             	}
             	
                 knownObjects[idx] = value;
@@ -251,6 +352,14 @@ package org.eclipse.jface.viewers.deferred;
 	        		}
 	        		
 	        		knownIndices.put(value, idx);
+	        		
+	        		if (knownStart == knownEnd) {
+	        			knownStart = idx;
+	        			knownEnd = idx + 1;
+	        		} else {
+	        			knownStart = Math.min(knownStart, idx);
+	        			knownEnd = Math.max(knownEnd, idx + 1);
+	        		}
             	}
                 
                 pushClear(idx);
@@ -260,6 +369,55 @@ package org.eclipse.jface.viewers.deferred;
         } 
     }
 
+    /**
+     * Forgets the objects on all rows outside the given range and clears these
+     * rows in the table. May be called from a background thread.
+     *
+     * @param start first row to keep
+     * @param end row after the last row to keep
+     * @since 3.6
+     */
+    public void clearOutside(int start, int end) {
+        synchronized(this) {
+            // Only the rows that may have been sent before are visited
+            boolean changed = clearRows(knownStart, Math.min(start, knownEnd));
+            if (clearRows(Math.max(end, knownStart), knownEnd)) {
+                changed = true;
+            }
+
+            knownStart = Math.max(knownStart, start);
+            knownEnd = Math.min(knownEnd, end);
+            if (knownStart >= knownEnd) {
+                knownStart = 0;
+                knownEnd = 0;
+            }
+
+            if (changed) {
+                scheduleUIUpdate();
+            }
+        }
+    }
+
+    /**
+     * Forgets the objects on the rows from start up to end, and schedules
+     * these rows to be cleared. Must be called while holding the lock.
+     *
+     * @return whether any row was forgotten
+     */
+    private boolean clearRows(int start, int end) {
+        boolean changed = false;
+        for (int idx = start; idx < end; idx++) {
+            Object oldObject = knownObjects[idx];
+            if (oldObject != null) {
+                knownIndices.remove(oldObject);
+                knownObjects[idx] = null;
+                pushClear(idx);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
     /**
      * Schedules a UI update. Has no effect if an update has already been
      * scheduled.
@@ -295,24 +453,36 @@ package org.eclipse.jface.viewers.deferred;
      * Updates the table. Sends any unsent items in the visible range to the table,
      * and clears any previously-visible items that have not yet been sent to the table.
      * Must be called from the UI thread.
+     * <p>
+     * The changes are taken from the pending state while holding the lock, and
+     * sent to the table after releasing it, so that the background thread is
+     * not blocked while the table repaints.
+     * </p>
      */
     private void updateTable() {    	
+        int newItemCount = -1;
+        int[] clears;
+        int clearCount = 0;
+        Object[] replacements;
+        int[] replacementRows;
+        int replacementCount = 0;
+        boolean more = false;
         
         synchronized(this) {
 
         	// Resize the table if necessary
 	        if (sentObjects.length != knownObjects.length) {
 	        	Object[] newSentObjects = new Object[knownObjects.length];
-	        	System.arraycopy(newSentObjects, 0, sentObjects, 0, 
+	        	System.arraycopy(sentObjects, 0, newSentObjects, 0, 
 	        			Math.min(newSentObjects.length, sentObjects.length));
 	        	sentObjects = newSentObjects;
-	            table.setItemCount(newSentObjects.length);
+	        	newItemCount = newSentObjects.length;
 	        }
 
 	        // Compute the currently visible range
 	        int start = Math.min(table.getTopIndex(), knownObjects.length);
 	        int length = Math.min(table.getVisibleItemCount(), knownObjects.length - start);
-	        int itemCount = table.getItemCount();
+	        int itemCount = newItemCount != -1 ? newItemCount : table.getItemCount();
             
         	int oldStart = lastRange.start;
         	int oldLen = lastRange.length;
@@ -323,6 +493,8 @@ package org.eclipse.jface.viewers.deferred;
         	// the stored values -- this could cause infinite recursion.
         	lastRange = new Range(start, length);
         	
+        	clears = new int[oldLen + lastClear];
+        	
 			// Re-clear any items in the old range that were never filled in
 			for(int idx = 0; idx < oldLen; idx++) {
 				int row = idx + oldStart;
@@ -335,38 +507,69 @@ package org.eclipse.jface.viewers.deferred;
 					// The current way of doing things won't clear a row if its contents are
 					// up-to-date.
 					if (sentObjects[row] == null) {
-						table.clear(row);
+						clears[clearCount++] = row;
 					}
 				}
 			}
 			
-			// Process any pending clears
+			// Take the pending clears. Rows outside the visible range may be
+			// left for the next update if the number of rows per update is bounded.
 	        if (lastClear > 0) {
+	        	int budget = maxRowsPerFlush;
+	        	int kept = 0;
 				for (int i = 0; i < lastClear; i++) {
 					int row = pendingClears[i];
 		
-					if (row < sentObjects.length) {
-						table.clear(row);
+					if (row >= sentObjects.length) {
+						continue;
+					}
+					if (budget != -1 && (row < start || row >= start + length)) {
+						if (budget == 0) {
+							pendingClears[kept++] = row;
+							continue;
+						}
+						budget--;
 					}
+					clears[clearCount++] = row;
 				}
 	
-				if (pendingClears.length > MIN_FLUSHLENGTH) {
+				lastClear = kept;
+				if (kept > 0) {
+					more = true;
+				} else if (pendingClears.length > MIN_FLUSHLENGTH) {
 					pendingClears = new int[MIN_FLUSHLENGTH];
 				}
-				lastClear = 0;
 	        }
 		    
-	        // Send any unsent items in the visible range
+	        // Take any unsent items in the visible range
+	        replacements = new Object[length];
+	        replacementRows = new int[length];
 	        for (int idx = 0; idx < length; idx++) {
 	        	int row = idx + start;
 	        	
 	        	Object obj = knownObjects[row];
-	        	if (obj != null && obj != sentObjects[idx]) {
-	        		table.replace(obj, row);
-	        		sentObjects[idx] = obj;
+	        	if (obj != null && obj != sentObjects[row]) {
+	        		replacements[replacementCount] = obj;
+	        		replacementRows[replacementCount++] = row;
+	        		sentObjects[row] = obj;
 	        	}
 	        }
 	        
+	        flushCount++;
+        }
+        
+        if (newItemCount != -1) {
+        	table.setItemCount(newItemCount);
+        }
+        for (int i = 0; i < clearCount; i++) {
+        	table.clear(clears[i]);
+        }
+        for (int i = 0; i < replacementCount; i++) {
+        	table.replace(replacements[i], replacementRows[i]);
+        }
+        
+        if (more) {
+        	scheduleUIUpdate();
         }
     }
 
@@ -41,7 +41,37 @@ import org.eclipse.swt.widgets.Table;
  */
 public class DeferredContentProvider implements ILazyContentProvider {
 
+	/**
+	 * Constant for {@link #setFilter(IFilter, int)} indicating that nothing is
+	 * known about how the new filter relates to the previous one.
+	 * 
+	 * @since 3.6
+	 */
+	public static final int FILTER_CHANGED = 0;
+	
+	/**
+	 * Constant for {@link #setFilter(IFilter, int)} indicating that the new
+	 * filter only accepts elements that the previous filter accepted, for
+	 * example because more characters have been typed into a filter field.
+	 * 
+	 * @since 3.6
+	 */
+	public static final int FILTER_NARROWED = 1;
+	
+	/**
+	 * Constant for {@link #setFilter(IFilter, int)} indicating that the new
+	 * filter accepts all elements that the previous filter accepted, for
+	 * example because characters have been deleted from a filter field.
+	 * 
+	 * @since 3.6
+	 */
+	public static final int FILTER_WIDENED = 2;
+
 	private int limit = -1;
+	private int prefetchMargin = -1;
+	private int framesPerSecond = 0;
+	private int maxRowsPerUpdate = -1;
+	private SortScheduler scheduler = SortScheduler.getDefault();
 	private BackgroundContentProvider provider;
 	private Comparator sortOrder;
 	private IFilter filter = AcceptAllFilter.getInstance();
@@ -145,11 +175,13 @@ public class DeferredContentProvider implements ILazyContentProvider {
 		
 		BackgroundContentProvider newProvider = new BackgroundContentProvider(
 				table,
-				model, sortOrder); 
+				model, sortOrder, scheduler); 
 		
 		setProvider(newProvider);
 		
 		newProvider.setLimit(limit);
+		newProvider.setPrefetchMargin(prefetchMargin);
+		newProvider.setUpdateThrottle(framesPerSecond, maxRowsPerUpdate);
 		newProvider.setFilter(filter);
 	}
 	
@@ -176,9 +208,26 @@ public class DeferredContentProvider implements ILazyContentProvider {
 	 * @param toSet filter to set
 	 */
 	public void setFilter(IFilter toSet) {
+		setFilter(toSet, FILTER_CHANGED);
+	}
+	
+	/**
+	 * Sets the filter for this content provider, indicating how it relates to
+	 * the current filter. Elements rejected by a filter are remembered, so that
+	 * changing the filter never requires the model to send its contents again.
+	 * If the new filter is narrower, only the elements that are currently shown
+	 * are tested, and if it is wider, only the elements that are currently
+	 * rejected are tested. This makes filtering as the user types incremental.
+	 * 
+	 * @param toSet filter to set
+	 * @param change one of <code>FILTER_CHANGED</code>, <code>FILTER_NARROWED</code>,
+	 * or <code>FILTER_WIDENED</code>
+	 * @since 3.6
+	 */
+	public void setFilter(IFilter toSet, int change) {
 		this.filter = toSet;
 		if (provider != null) {
-			provider.setFilter(toSet);
+			provider.setFilter(toSet, change);
 		}
 	}
 	
@@ -205,6 +254,100 @@ public class DeferredContentProvider implements ILazyContentProvider {
 		return limit;
 	}
 	
+	/**
+	 * Sets the number of rows to sort on either side of the visible rows. By
+	 * default, all rows are sorted in the background after the visible rows have
+	 * been shown. If a margin is set, only the visible rows and the rows within
+	 * the margin are sorted, and other rows are sorted when they are scrolled
+	 * into view. For very large tables, this makes changing the sort order or
+	 * the contents of the table much cheaper.
+	 * 
+	 * @param margin number of rows to sort before and after the visible rows,
+	 * or -1 to sort all rows
+	 * @since 3.6
+	 */
+	public void setPrefetchMargin(int margin) {
+		Assert.isTrue(margin >= -1);
+		this.prefetchMargin = margin;
+		if (provider != null) {
+			provider.setPrefetchMargin(margin);
+		}
+	}
+	
+	/**
+	 * Returns the number of rows sorted on either side of the visible rows or -1
+	 * if all rows are sorted
+	 * 
+	 * @return the prefetch margin or -1 if all rows are sorted
+	 * @since 3.6
+	 */
+	public int getPrefetchMargin() {
+		return prefetchMargin;
+	}
+	
+	/**
+	 * Throttles the updates of the table. By default, changes are sent to the
+	 * table as soon as the UI thread is free. If the model changes constantly,
+	 * this keeps the UI thread busy with repainting the table. With a throttle,
+	 * changes are collected and sent at most the given number of times per
+	 * second, and each update clears at most the given number of rows outside
+	 * the visible rows. The visible rows are always updated completely.
+	 * 
+	 * @param framesPerSecond maximum number of table updates per second, or 0
+	 * if unbounded
+	 * @param maxRows maximum number of rows outside the visible rows cleared
+	 * per update, or -1 if unbounded
+	 * @since 3.6
+	 */
+	public void setUpdateThrottle(int framesPerSecond, int maxRows) {
+		Assert.isTrue(framesPerSecond >= 0 && maxRows >= -1);
+		this.framesPerSecond = framesPerSecond;
+		this.maxRowsPerUpdate = maxRows;
+		if (provider != null) {
+			provider.setUpdateThrottle(framesPerSecond, maxRows);
+		}
+	}
+	
+	/**
+	 * Returns a snapshot of the counters of this content provider, which show
+	 * how many changes of the model are waiting to be sorted, how well they
+	 * have been coalesced, and how many row updates were merged or dropped
+	 * before they reached the table. The counts start over when the input
+	 * changes.
+	 * 
+	 * @return the statistics of the current input, all zero if there is no
+	 * input
+	 * @since 3.6
+	 */
+	public UpdateStatistics getStatistics() {
+		BackgroundContentProvider current = provider;
+		return current == null ? new UpdateStatistics() : current.getStatistics();
+	}
+	
+	/**
+	 * Sets the scheduler that runs the background sorting. By default, all
+	 * deferred content providers share the scheduler returned by
+	 * {@link SortScheduler#getDefault()}. The new scheduler is used for inputs
+	 * set after this call.
+	 * 
+	 * @param scheduler the scheduler to use
+	 * @since 3.6
+	 */
+	public void setSortScheduler(SortScheduler scheduler) {
+		Assert.isNotNull(scheduler);
+		this.scheduler = scheduler;
+	}
+	
+	/**
+	 * Returns the scheduler that runs the background sorting
+	 * 
+	 * @return the scheduler
+	 * @since 3.6
+	 */
+	public SortScheduler getSortScheduler() {
+		return scheduler;
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.eclipse.jface.viewers.ILazyContentProvider#updateElement(int)
 	 */
@@ -0,0 +1,707 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.deferred;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.jface.viewers.AcceptAllFilter;
+import org.eclipse.jface.viewers.IElementComparer;
+import org.eclipse.jface.viewers.IFilter;
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.ITreeViewerListener;
+import org.eclipse.jface.viewers.TreeExpansionEvent;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Tree;
+import org.eclipse.swt.widgets.TreeItem;
+import org.eclipse.swt.widgets.Widget;
+
+/**
+ * Content provider that performs sorting and filtering of the children of
+ * each expanded node in a background thread. Requires a
+ * <code>TreeViewer</code> created with the <code>SWT.VIRTUAL</code> flag
+ * and an <code>IConcurrentTreeModel</code> as input.
+ * <p>
+ * Every expanded node, and the invisible root, gets its own
+ * <code>BackgroundContentProvider</code> that listens to the model for the
+ * children of that node, and sorts the children that are visible first.
+ * Nodes are released again when they are collapsed. Until the first batch
+ * of children of a node has been sorted, the node shows a single
+ * {@link PendingElement} child; label providers must be able to handle it
+ * (its <code>toString()</code> returns a localized "Pending..." text).
+ * </p>
+ * <p>
+ * The sorter and filter must be set directly on the content provider and
+ * apply to all nodes. Any sorter or filter on the TreeViewer will be ignored.
+ * The positions of elements in the tree are tracked using
+ * <code>equals</code> and <code>hashCode</code>.
+ * </p>
+ *
+ * @see DeferredContentProvider
+ * @since 3.6
+ */
+public class DeferredTreeContentProvider implements ILazyTreeContentProvider {
+
+	private static final String PENDING = JFaceResources
+			.getString("DeferredTreeContentProvider.pending"); //$NON-NLS-1$
+
+	/**
+	 * The placeholder child shown by a node whose children are not known yet.
+	 */
+	public static final class PendingElement {
+		private Object parent;
+
+		private PendingElement(Object parent) {
+			this.parent = parent;
+		}
+
+		/**
+		 * Returns the element whose children are pending.
+		 *
+		 * @return the parent element, or the model for the roots
+		 */
+		public Object getParent() {
+			return parent;
+		}
+
+		public String toString() {
+			return PENDING;
+		}
+	}
+
+	/**
+	 * The position of an element among the children of a node, as last sent
+	 * to the viewer.
+	 */
+	private static final class Position {
+		Node node;
+
+		int index;
+
+		Position(Node node, int index) {
+			this.node = node;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * The view of the model for the children of a single parent.
+	 */
+	private final class ParentModel implements IConcurrentModel {
+		private Object parent;
+
+		ParentModel(Object parent) {
+			this.parent = parent;
+		}
+
+		public void requestUpdate(IConcurrentModelListener listener) {
+			model.requestUpdate(parent, listener);
+		}
+
+		public void addListener(IConcurrentModelListener listener) {
+			model.addListener(parent, listener);
+		}
+
+		public void removeListener(IConcurrentModelListener listener) {
+			model.removeListener(parent, listener);
+		}
+	}
+
+	/**
+	 * The children of an expanded node, presented as a virtual table to its
+	 * <code>BackgroundContentProvider</code>. All methods are called in the
+	 * UI thread.
+	 */
+	private final class Node extends AbstractVirtualTable {
+		Object parent;
+
+		BackgroundContentProvider provider;
+
+		/**
+		 * The placeholder shown until the number of children is known, or
+		 * <code>null</code>.
+		 */
+		PendingElement pending;
+
+		boolean disposed;
+
+		/**
+		 * The elements last sent to the viewer, indexed by row. Rows that
+		 * have not been sent or have been cleared are <code>null</code>.
+		 */
+		Object[] rows = new Object[0];
+
+		private Widget widget;
+
+		Node(Object parent) {
+			this.parent = parent;
+		}
+
+		public void clear(int index) {
+			if (disposed) {
+				return;
+			}
+			forgetRow(index);
+			Widget w = getWidget();
+			if (w == null || index >= getItemCount(w)) {
+				return;
+			}
+			if (w instanceof Tree) {
+				((Tree) w).clear(index, false);
+			} else {
+				((TreeItem) w).clear(index, false);
+			}
+		}
+
+		public void replace(Object element, int itemIndex) {
+			if (disposed) {
+				return;
+			}
+			// the placeholder is overwritten
+			pending = null;
+			if (itemIndex < rows.length && rows[itemIndex] != element) {
+				forgetRow(itemIndex);
+			}
+			if (itemIndex >= rows.length) {
+				Object[] newRows = new Object[Math.max(itemIndex + 1,
+						rows.length * 2)];
+				System.arraycopy(rows, 0, newRows, 0, rows.length);
+				rows = newRows;
+			}
+			rows[itemIndex] = element;
+			positions.put(element, new Position(this, itemIndex));
+			viewer.replace(parent, itemIndex, element);
+		}
+
+		public void setItemCount(int total) {
+			if (disposed) {
+				return;
+			}
+			if (pending != null) {
+				// remove the placeholder item so that a blank item is
+				// requested again when it is shown
+				Object placeholder = pending;
+				pending = null;
+				viewer.remove(placeholder);
+			}
+			for (int i = total; i < rows.length; i++) {
+				forgetRow(i);
+			}
+			viewer.setChildCount(parent, total);
+		}
+
+		/**
+		 * Drops the position of the element last sent to the given row, unless
+		 * the element has been sent to another row since or is expanded.
+		 */
+		void forgetRow(int index) {
+			if (index >= rows.length || rows[index] == null) {
+				return;
+			}
+			Object element = rows[index];
+			rows[index] = null;
+			Position position = (Position) positions.get(element);
+			if (position != null && position.node == this
+					&& position.index == index && !nodes.containsKey(element)) {
+				positions.remove(element);
+			}
+		}
+
+		public int getItemCount() {
+			Widget w = getWidget();
+			return w == null ? 0 : getItemCount(w);
+		}
+
+		public int getTopIndex() {
+			Widget w = getWidget();
+			if (w == null || !isExpanded(w)) {
+				return 0;
+			}
+			// find the child of this node that contains the top item
+			TreeItem child = viewer.getTree().getTopItem();
+			while (child != null) {
+				TreeItem parentItem = child.getParentItem();
+				if (parentItem == w || (parentItem == null && w instanceof Tree)) {
+					int index = parentItem == null ? ((Tree) w).indexOf(child)
+							: parentItem.indexOf(child);
+					return Math.max(index - 1, 0);
+				}
+				child = parentItem;
+			}
+			return 0;
+		}
+
+		public int getVisibleItemCount() {
+			Widget w = getWidget();
+			if (w == null || !isExpanded(w)) {
+				return 0;
+			}
+			Tree tree = viewer.getTree();
+			Rectangle rect = tree.getClientArea();
+			int itemHeight = tree.getItemHeight();
+			int headerHeight = tree.getHeaderHeight();
+			return (rect.height - headerHeight + itemHeight - 1)
+					/ (itemHeight + tree.getGridLineWidth());
+		}
+
+		public Control getControl() {
+			return viewer.getControl();
+		}
+
+		/**
+		 * Returns the tree or tree item showing this node, or
+		 * <code>null</code> if it is not shown.
+		 */
+		Widget getWidget() {
+			if (parent == model) {
+				return viewer.getTree();
+			}
+			if (widget != null && !widget.isDisposed()
+					&& widget.getData() == parent) {
+				return widget;
+			}
+			widget = null;
+			Position position = (Position) positions.get(parent);
+			if (position == null) {
+				return null;
+			}
+			Widget parentWidget = position.node.getWidget();
+			if (parentWidget == null) {
+				return null;
+			}
+			int count = getItemCount(parentWidget);
+			if (position.index < count) {
+				TreeItem item = getItem(parentWidget, position.index);
+				if (isSameElement(item.getData(), parent)) {
+					widget = item;
+					return widget;
+				}
+			}
+			for (int i = 0; i < count; i++) {
+				TreeItem item = getItem(parentWidget, i);
+				if (isSameElement(item.getData(), parent)) {
+					widget = item;
+					break;
+				}
+			}
+			return widget;
+		}
+	}
+
+	private int limit = -1;
+
+	private int prefetchMargin = -1;
+
+	private int framesPerSecond = 0;
+
+	private int maxRowsPerUpdate = -1;
+
+	private SortScheduler scheduler = SortScheduler.getDefault();
+
+	private Comparator sortOrder;
+
+	private IFilter filter = AcceptAllFilter.getInstance();
+
+	private TreeViewer viewer;
+
+	private IConcurrentTreeModel model;
+
+	/**
+	 * Maps parent elements to their <code>Node</code>.
+	 */
+	private Map nodes = new HashMap();
+
+	/**
+	 * Maps elements to their last known <code>Position</code>.
+	 */
+	private Map positions = new HashMap();
+
+	private ITreeViewerListener treeListener = new ITreeViewerListener() {
+		public void treeExpanded(TreeExpansionEvent event) {
+			Object element = event.getElement();
+			if (!nodes.containsKey(element)) {
+				createNode(element);
+			}
+		}
+
+		public void treeCollapsed(TreeExpansionEvent event) {
+			disposeSubtree(event.getElement());
+		}
+	};
+
+	/**
+	 * Create a DeferredTreeContentProvider with the given sort order.
+	 *
+	 * @param sortOrder
+	 *            a comparator that sorts the children of each node.
+	 */
+	public DeferredTreeContentProvider(Comparator sortOrder) {
+		this.sortOrder = sortOrder;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.viewers.IContentProvider#dispose()
+	 */
+	public void dispose() {
+		disposeAll();
+		if (viewer != null) {
+			viewer.removeTreeListener(treeListener);
+			viewer = null;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.viewers.IContentProvider#inputChanged(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
+	 */
+	public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		disposeAll();
+		if (this.viewer != null) {
+			this.viewer.removeTreeListener(treeListener);
+			this.viewer = null;
+		}
+		model = null;
+		if (newInput == null) {
+			return;
+		}
+
+		Assert.isTrue(newInput instanceof IConcurrentTreeModel);
+		Assert.isTrue(viewer instanceof TreeViewer);
+		Assert.isTrue((viewer.getControl().getStyle() & SWT.VIRTUAL) != 0);
+		this.model = (IConcurrentTreeModel) newInput;
+		this.viewer = (TreeViewer) viewer;
+		this.viewer.addTreeListener(treeListener);
+	}
+
+	/**
+	 * Sets the sort order for this content provider. This sort order takes
+	 * priority over anything that was supplied to the <code>TreeViewer</code>.
+	 *
+	 * @param sortOrder
+	 *            new sort order. The comparator must be able to support being
+	 *            used in a background thread.
+	 */
+	public void setSortOrder(Comparator sortOrder) {
+		Assert.isNotNull(sortOrder);
+		this.sortOrder = sortOrder;
+		for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+			((Node) i.next()).provider.setSortOrder(sortOrder);
+		}
+	}
+
+	/**
+	 * Sets the filter for this content provider. This filter takes priority
+	 * over anything that was supplied to the <code>TreeViewer</code>. The
+	 * filter must be capable of being used in a background thread.
+	 *
+	 * @param toSet
+	 *            filter to set
+	 */
+	public void setFilter(IFilter toSet) {
+		setFilter(toSet, DeferredContentProvider.FILTER_CHANGED);
+	}
+
+	/**
+	 * Sets the filter for this content provider, indicating how it relates to
+	 * the current filter.
+	 *
+	 * @param toSet
+	 *            filter to set
+	 * @param change
+	 *            one of the <code>FILTER_*</code> constants of
+	 *            <code>DeferredContentProvider</code>
+	 * @see DeferredContentProvider#setFilter(IFilter, int)
+	 */
+	public void setFilter(IFilter toSet, int change) {
+		this.filter = toSet;
+		for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+			((Node) i.next()).provider.setFilter(toSet, change);
+		}
+	}
+
+	/**
+	 * Sets the maximum number of children shown for each node. If a node has
+	 * more than this number of children, only the top children will be shown
+	 * based on the current sort order.
+	 *
+	 * @param limit
+	 *            maximum number of children to show or -1 if unbounded
+	 */
+	public void setLimit(int limit) {
+		this.limit = limit;
+		for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+			((Node) i.next()).provider.setLimit(limit);
+		}
+	}
+
+	/**
+	 * Returns the current maximum number of children per node or -1 if
+	 * unbounded
+	 *
+	 * @return the current maximum number of children per node or -1 if
+	 *         unbounded
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Sets the number of children to sort on either side of the visible
+	 * children of each node. If a margin is set, other children are sorted
+	 * when they are scrolled into view.
+	 *
+	 * @param margin
+	 *            number of children to sort before and after the visible
+	 *            children, or -1 to sort all children
+	 * @see DeferredContentProvider#setPrefetchMargin(int)
+	 */
+	public void setPrefetchMargin(int margin) {
+		Assert.isTrue(margin >= -1);
+		this.prefetchMargin = margin;
+		for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+			((Node) i.next()).provider.setPrefetchMargin(margin);
+		}
+	}
+
+	/**
+	 * Returns the number of children sorted on either side of the visible
+	 * children of each node, or -1 if all children are sorted
+	 *
+	 * @return the prefetch margin or -1 if all children are sorted
+	 */
+	public int getPrefetchMargin() {
+		return prefetchMargin;
+	}
+
+	/**
+	 * Throttles the updates of the children of each node.
+	 *
+	 * @param framesPerSecond
+	 *            maximum number of updates per second and node, or 0 if
+	 *            unbounded
+	 * @param maxRows
+	 *            maximum number of children outside the visible children
+	 *            cleared per update, or -1 if unbounded
+	 * @see DeferredContentProvider#setUpdateThrottle(int, int)
+	 */
+	public void setUpdateThrottle(int framesPerSecond, int maxRows) {
+		Assert.isTrue(framesPerSecond >= 0 && maxRows >= -1);
+		this.framesPerSecond = framesPerSecond;
+		this.maxRowsPerUpdate = maxRows;
+		for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+			((Node) i.next()).provider.setUpdateThrottle(framesPerSecond, maxRows);
+		}
+	}
+
+	/**
+	 * Returns the sum of the counters of the nodes that are currently
+	 * expanded. The counts of a node are lost when it is collapsed. Must be
+	 * called from the UI thread.
+	 *
+	 * @return the statistics of the expanded nodes
+	 * @see DeferredContentProvider#getStatistics()
+	 */
+	public UpdateStatistics getStatistics() {
+		UpdateStatistics statistics = new UpdateStatistics();
+		for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+			statistics.add(((Node) i.next()).provider.getStatistics());
+		}
+		return statistics;
+	}
+
+	/**
+	 * Sets the scheduler that runs the background sorting of all nodes. The
+	 * new scheduler is used for nodes expanded after this call.
+	 *
+	 * @param scheduler
+	 *            the scheduler to use
+	 * @see DeferredContentProvider#setSortScheduler(SortScheduler)
+	 */
+	public void setSortScheduler(SortScheduler scheduler) {
+		Assert.isNotNull(scheduler);
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Returns the scheduler that runs the background sorting of all nodes
+	 *
+	 * @return the scheduler
+	 */
+	public SortScheduler getSortScheduler() {
+		return scheduler;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#updateElement(java.lang.Object, int)
+	 */
+	public void updateElement(Object parent, int index) {
+		Node node = (Node) nodes.get(parent);
+		if (node == null || node.provider == null) {
+			return;
+		}
+		if (node.pending != null) {
+			if (index == 0) {
+				viewer.replace(parent, 0, node.pending);
+			}
+			return;
+		}
+		node.provider.checkVisibleRange(index);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#updateChildCount(java.lang.Object, int)
+	 */
+	public void updateChildCount(Object element, int currentChildCount) {
+		if (model == null || element instanceof PendingElement) {
+			return;
+		}
+		Node node = (Node) nodes.get(element);
+		if (node != null) {
+			if (node.provider != null) {
+				node.provider.refresh();
+			}
+			return;
+		}
+		if (element == model) {
+			createNode(element);
+			return;
+		}
+		// not expanded, only show whether it can be expanded
+		boolean hasChildren = model.hasChildren(element);
+		if (hasChildren != (currentChildCount > 0)) {
+			viewer.setChildCount(element, hasChildren ? 1 : 0);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.jface.viewers.ILazyTreeContentProvider#getParent(java.lang.Object)
+	 */
+	public Object getParent(Object element) {
+		if (element instanceof PendingElement) {
+			return ((PendingElement) element).getParent();
+		}
+		Position position = (Position) positions.get(element);
+		return position == null ? null : position.node.parent;
+	}
+
+	/**
+	 * Starts tracking the children of the given expanded element, or of the
+	 * model for the roots.
+	 */
+	private void createNode(Object parent) {
+		Node node = new Node(parent);
+		nodes.put(parent, node);
+		Widget widget = node.getWidget();
+		if (widget == null || getItemCount(widget) == 0
+				|| (getItemCount(widget) == 1 && getItem(widget, 0).getData() == null)) {
+			// nothing to show yet
+			node.pending = new PendingElement(parent);
+			viewer.setChildCount(parent, 1);
+			viewer.replace(parent, 0, node.pending);
+		}
+		node.provider = new BackgroundContentProvider(node, new ParentModel(
+				parent), sortOrder, scheduler);
+		node.provider.setLimit(limit);
+		node.provider.setPrefetchMargin(prefetchMargin);
+		node.provider.setUpdateThrottle(framesPerSecond, maxRowsPerUpdate);
+		node.provider.setFilter(filter);
+	}
+
+	/**
+	 * Stops tracking the children of the given collapsed element and of all
+	 * expanded elements below it.
+	 */
+	private void disposeSubtree(Object element) {
+		List toDispose = new ArrayList();
+		for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+			Node node = (Node) i.next();
+			Object ancestor = node.parent;
+			while (ancestor != null) {
+				if (isSameElement(ancestor, element)) {
+					toDispose.add(node);
+					break;
+				}
+				Position position = (Position) positions.get(ancestor);
+				ancestor = position == null ? null : position.node.parent;
+			}
+		}
+		for (int i = 0; i < toDispose.size(); i++) {
+			disposeNode((Node) toDispose.get(i));
+		}
+	}
+
+	private void disposeNode(Node node) {
+		node.disposed = true;
+		node.provider.dispose();
+		nodes.remove(node.parent);
+		for (int i = 0; i < node.rows.length; i++) {
+			node.forgetRow(i);
+		}
+		// the position of an expanded element is kept while its row is
+		// cleared or removed; drop it now if the row no longer shows it
+		Position position = (Position) positions.get(node.parent);
+		if (position != null) {
+			Object[] parentRows = position.node.rows;
+			if (position.index >= parentRows.length
+					|| parentRows[position.index] != node.parent) {
+				positions.remove(node.parent);
+			}
+		}
+	}
+
+	private void disposeAll() {
+		for (Iterator i = nodes.values().iterator(); i.hasNext();) {
+			Node node = (Node) i.next();
+			node.disposed = true;
+			node.provider.dispose();
+		}
+		nodes.clear();
+		positions.clear();
+	}
+
+	private boolean isSameElement(Object a, Object b) {
+		if (a == b) {
+			return true;
+		}
+		if (a == null || b == null) {
+			return false;
+		}
+		IElementComparer comparer = viewer.getComparer();
+		return comparer == null ? a.equals(b) : comparer.equals(a, b);
+	}
+
+	private static boolean isExpanded(Widget widget) {
+		return widget instanceof Tree || ((TreeItem) widget).getExpanded();
+	}
+
+	private static int getItemCount(Widget widget) {
+		if (widget instanceof Tree) {
+			return ((Tree) widget).getItemCount();
+		}
+		return ((TreeItem) widget).getItemCount();
+	}
+
+	private static TreeItem getItem(Widget widget, int index) {
+		if (widget instanceof Tree) {
+			return ((Tree) widget).getItem(index);
+		}
+		return ((TreeItem) widget).getItem(index);
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.deferred;
+
+/**
+ * Tree variant of <code>IConcurrentModel</code>: a tree whose children are
+ * delivered per parent, as unordered sets of elements that can fire change
+ * notifications. Listeners are registered for the children of one parent;
+ * the children of the model itself are the roots of the tree.
+ *
+ * <p>
+ * Like <code>IConcurrentModel</code>, the model is allowed to send
+ * notifications to its listeners in any thread.
+ * </p>
+ *
+ * @see DeferredTreeContentProvider
+ * @since 3.6
+ */
+public interface IConcurrentTreeModel {
+
+	/**
+	 * Requests that the receiver call the given listener's setContents(...)
+	 * method with the children of the given parent at its earliest
+	 * convenience. The receiver is allowed to compute the children
+	 * asynchronously.
+	 * <p>
+	 * Has no effect if an update is already queued for an identical listener.
+	 * </p>
+	 *
+	 * @param parent
+	 *            the parent element, or this model for the roots
+	 * @param listener
+	 *            listener whose setContents method should be called. The
+	 *            listener must have been previously registered for the parent
+	 *            with addListener.
+	 */
+	public void requestUpdate(Object parent, IConcurrentModelListener listener);
+
+	/**
+	 * Adds a listener for the children of the given parent. The listener
+	 * should be given the current children of the parent (either through
+	 * setContents or a sequence of adds) at the receiver's earliest
+	 * convenience, and be notified about any changes to them until the
+	 * listener is removed.
+	 * <p>
+	 * Has no effect if an identical listener is already registered for the
+	 * parent.
+	 * </p>
+	 *
+	 * @param parent
+	 *            the parent element, or this model for the roots
+	 * @param listener
+	 *            listener to add
+	 */
+	public void addListener(Object parent, IConcurrentModelListener listener);
+
+	/**
+	 * Removes a listener for the children of the given parent. Any pending
+	 * updates for this listener will be cancelled.
+	 * <p>
+	 * Has no effect if the given listener is not registered for the parent.
+	 * </p>
+	 *
+	 * @param parent
+	 *            the parent element, or this model for the roots
+	 * @param listener
+	 *            listener to remove
+	 */
+	public void removeListener(Object parent, IConcurrentModelListener listener);
+
+	/**
+	 * Returns whether the given element has or may have children. Called in
+	 * the UI thread for every element shown, so this must return quickly;
+	 * return <code>true</code> if this is not known without a slow lookup.
+	 *
+	 * @param element
+	 *            the element
+	 * @return <code>true</code> if the element may have children
+	 */
+	public boolean hasChildren(Object element);
+}
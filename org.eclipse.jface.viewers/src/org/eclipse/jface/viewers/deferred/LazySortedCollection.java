@@ -10,9 +10,12 @@
  *******************************************************************************/
 package org.eclipse.jface.viewers.deferred;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 
 import org.eclipse.core.runtime.Assert;
 
@@ -275,9 +278,11 @@ public class LazySortedCollection {
         
         // If neither subtree has any children, add a pseudorandom chance of the
         // newly added element becoming the new pivot for this node. Note: instead
-        // of a real pseudorandom generator, we simply use a counter here.
+        // of a real pseudorandom generator, we simply use a counter here. A node flagged
+        // for lazy removal is kept as the pivot, since it must not become an unsorted node.
         if (!enableDebug && leftSubTree[subTree] == -1 && rightSubTree[subTree] == -1 
-                && leftSubTree[elementToAdd] == -1 && rightSubTree[elementToAdd] == -1) {
+                && leftSubTree[elementToAdd] == -1 && rightSubTree[elementToAdd] == -1
+                && contents[subTree] != lazyRemovalFlag) {
 	        counter--;
 	        
 	        if (counter % treeSize[subTree] == 0) {
@@ -751,26 +756,91 @@ public class LazySortedCollection {
      */
     public final void addAll(Collection toAdd) {
     	Assert.isNotNull(toAdd);
-        Iterator iter = toAdd.iterator();
-        while (iter.hasNext()) {
-            add(iter.next());
-        }
-        
-        testInvariants();
+        addAll(toAdd.toArray());
     }
     
     /**
-     * Adds all items from the given array to the collection
+     * Adds all items from the given array to the collection. Runs in O(n) time.
+     * The arrays are grown at most once and the new elements are appended to the 
+     * unsorted children of the root in a single pass, so that adding a large
+     * number of elements costs about as much as copying them.
      * 
      * @param toAdd objects to add
      */
     public final void addAll(Object[] toAdd) {
     	Assert.isNotNull(toAdd);
-        for (int i = 0; i < toAdd.length; i++) {
-            Object object = toAdd[i];
-            
-            add(object);
-        }
+    	int first = 0;
+    	
+    	// Nodes freed by earlier removals are reused one at a time
+    	while (first < toAdd.length && firstUnusedNode != -1) {
+    		add(toAdd[first++]);
+    	}
+    	
+    	if (first < toAdd.length && (root == -1 || treeSize[root] == 0 
+    			|| (leftSubTree[root] == -1 && rightSubTree[root] == -1))) {
+    		// The root has no sorted children, so the new elements may contain
+    		// the next pivot. Pick one of them pseudorandomly and add it first.
+    		int pivot = first;
+    		if (!enableDebug) {
+    			counter--;
+    			pivot += (counter & Integer.MAX_VALUE) % (toAdd.length - first);
+    		}
+    		Object pivotElement = toAdd[pivot];
+    		add(pivotElement);
+    		
+    		if (pivot != first) {
+    			// Add the remaining elements in their original order
+    			toAdd = (Object[]) toAdd.clone();
+    			System.arraycopy(toAdd, first, toAdd, first + 1, pivot - first);
+    			toAdd[first] = pivotElement;
+    		}
+    		first++;
+    	}
+    	
+    	int count = toAdd.length - first;
+    	if (count == 0) {
+    		testInvariants();
+    		return;
+    	}
+    	
+    	for (int i = first; i < toAdd.length; i++) {
+    		Assert.isNotNull(toAdd[i]);
+    	}
+    	
+    	setCapacity(lastNode + count);
+    	
+    	// Rebuilding the map lazily with the right capacity is cheaper than 
+    	// growing it while the elements are added
+    	if (objectIndices != null && count > objectIndices.size()) {
+    		objectIndices = null;
+    	}
+    	
+    	// Prepend the new nodes to the unsorted children of the root. Each unsorted
+    	// node stores the number of nodes from itself to the end of the list.
+    	int oldFirstUnsorted = nextUnsorted[root];
+    	int sizeAfter = getSubtreeSize(oldFirstUnsorted) + count;
+    	int previous = root;
+    	for (int i = first; i < toAdd.length; i++) {
+    		Object value = toAdd[i];
+    		int node = lastNode++;
+    		contents[node] = value;
+    		leftSubTree[node] = -1;
+    		rightSubTree[node] = -1;
+    		treeSize[node] = sizeAfter--;
+    		parentTree[node] = previous;
+    		nextUnsorted[previous] = node;
+    		
+    		if (objectIndices != null) {
+    			objectIndices.put(value, node);
+    		}
+    		previous = node;
+    	}
+    	
+    	nextUnsorted[previous] = oldFirstUnsorted;
+    	if (oldFirstUnsorted != -1) {
+    		parentTree[oldFirstUnsorted] = previous;
+    	}
+    	treeSize[root] += count;
         
         testInvariants();
     }
@@ -837,7 +907,398 @@ public class LazySortedCollection {
         }
     	pack();
     }
+
+    /**
+     * Notifies the collection that the sort key of the given element has changed,
+     * that is, that the comparator may now order it differently relative to the
+     * other elements. Has no effect if the element does not exist in this collection.
+     * <p>
+     * The element is only moved if it no longer fits its current position in the
+     * tree. Otherwise it stays where it is, and unsorted elements remain unsorted.
+     * This is usually much cheaper than removing and re-adding the element.
+     * </p>
+     * <p>
+     * The sort keys of all other elements must be unchanged. Use
+     * <code>updateAll</code> if the sort keys of several elements changed.
+     * </p>
+     *
+     * @param toUpdate element whose sort key changed
+     * @since 3.6
+     */
+    public final void update(Object toUpdate) {
+    	Assert.isNotNull(toUpdate);
+        internalUpdate(toUpdate);
+
+        testInvariants();
+    }
+
+    /**
+     * Notifies the collection that the sort keys of all elements in the given array
+     * have changed. Elements that do not exist in this collection are ignored.
+     *
+     * @param toUpdate elements whose sort keys changed
+     * @see #update(Object)
+     * @since 3.6
+     */
+    public final void updateAll(Object[] toUpdate) {
+    	Assert.isNotNull(toUpdate);
+
+        if (toUpdate.length == 1) {
+            internalUpdate(toUpdate[0]);
+        } else if (!isFlat()) {
+            // The position of a node is checked by comparing it with the pivots above
+            // and below it, which cannot be trusted while other sort keys are still
+            // outdated. Pivots with sorted children are therefore removed first and added
+            // again at the end; the other nodes are not compared with each other.
+            List toAdd = new ArrayList();
+            int[] unsorted = new int[toUpdate.length];
+            int unsortedCount = 0;
+            int[] leaves = new int[toUpdate.length];
+            int leafCount = 0;
+        
+            for (int i = 0; i < toUpdate.length; i++) {
+                int node = getObjectIndex(toUpdate[i]);
+            
+                if (node == -1) {
+                    continue;
+                }
+                if (leftSubTree[node] != -1 || rightSubTree[node] != -1) {
+                    int parent = parentTree[node];
+                    lazyRemoveNode(node);
+                    recomputeAncestorTreeSizes(parent);
+                    toAdd.add(toUpdate[i]);
+                } else if (isUnsorted(node)) {
+                    unsorted[unsortedCount++] = node;
+                } else {
+                    leaves[leafCount++] = node;
+                }
+            }
+        
+            // Moving unsorted nodes into the lists of their ancestors does not change
+            // which node holds the list of the other unsorted nodes
+            Arrays.sort(unsorted, 0, unsortedCount);
+            int distinctCount = 0;
+            for (int i = 0; i < unsortedCount; i++) {
+                if (i == 0 || unsorted[i] != unsorted[i - 1]) {
+                    unsorted[distinctCount++] = unsorted[i];
+                }
+            }
+            int[] distinct = new int[distinctCount];
+            System.arraycopy(unsorted, 0, distinct, 0, distinctCount);
+        
+            repositionUnsorted(distinct, getUnsortedParents(distinct));
+        
+            for (int i = 0; i < leafCount; i++) {
+                // a node listed twice is unsorted after it was moved
+                int subTree = leaves[i];
+                while (isUnsorted(subTree)) {
+                    subTree = parentTree[subTree];
+                }
+                reposition(leaves[i], subTree);
+            }
+        
+            for (int i = 0; i < toAdd.size(); i++) {
+                setRootNode(addUnsorted(root, createNode(toAdd.get(i))));
+            }
+        }
+
+        testInvariants();
+    }
+
+    /**
+     * Internal implementation of update.
+     *
+     * @param toUpdate element whose sort key changed
+     * @since 3.6
+     */
+    private void internalUpdate(Object toUpdate) {
+        if (isFlat()) {
+            return;
+        }
+        
+        int node = getObjectIndex(toUpdate);
+
+        if (node == -1) {
+            return;
+        }
+
+        if (leftSubTree[node] != -1 || rightSubTree[node] != -1) {
+            // A pivot with sorted children must also stay between the largest node on
+            // its left and the smallest node on its right.
+            if (fitsAncestors(node, node) == -1 && fitsChildren(node)) {
+                return;
+            }
+
+            // Moving a pivot would require re-partitioning its children: flag the
+            // node for lazy removal and add the element again instead.
+            int parent = parentTree[node];
+            lazyRemoveNode(node);
+            recomputeAncestorTreeSizes(parent);
+            setRootNode(addUnsorted(root, createNode(toUpdate)));
+            return;
+        }
+
+        // An unsorted node only needs to stay within the subtree of the node that
+        // holds its list of unsorted siblings
+        int subTree = node;
+        while (isUnsorted(subTree)) {
+            subTree = parentTree[subTree];
+        }
+        
+        reposition(node, subTree);
+    }
+    
+    /**
+     * Returns true iff the root has no sorted children, in which case every other
+     * node is an unsorted child of the root and no node can be out of place.
+     * 
+     * @return true iff the collection has no sorted nodes besides the root
+     * @since 3.6
+     */
+    private boolean isFlat() {
+        return root == -1 || (leftSubTree[root] == -1 && rightSubTree[root] == -1);
+    }
     
+    /**
+     * Returns the nodes holding the lists of unsorted nodes the given nodes are in.
+     * Following the list back to the node holding it takes time proportional to the
+     * position in the list, so if that adds up to more than the size of the collection,
+     * all lists are scanned once instead.
+     * 
+     * @param nodes distinct unsorted nodes, sorted by index
+     * @return the sorted node holding the list of each unsorted node
+     * @since 3.6
+     */
+    private int[] getUnsortedParents(int[] nodes) {
+        int count = nodes.length;
+        int[] result = new int[count];
+        int steps = 0;
+        
+        search: for (int i = 0; i < count; i++) {
+            int subTree = nodes[i];
+            while (isUnsorted(subTree)) {
+                subTree = parentTree[subTree];
+                if (++steps > lastNode) {
+                    break search;
+                }
+            }
+            result[i] = subTree;
+            if (i == count - 1) {
+                return result;
+            }
+        }
+        
+        for (int subTree = 0; subTree < lastNode; subTree++) {
+            // skip unused and unsorted nodes
+            if (contents[subTree] == null || isUnsorted(subTree)) {
+                continue;
+            }
+            for (int next = nextUnsorted[subTree]; next != -1; next = nextUnsorted[next]) {
+                int i = Arrays.binarySearch(nodes, next);
+                if (i >= 0) {
+                    result[i] = subTree;
+                }
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Moves the given unsorted node or sorted node without sorted children into the
+     * unsorted nodes of the smallest subtree it belongs in, unless it still belongs
+     * in the given subtree.
+     * 
+     * @param node node to move
+     * @param subTree the node itself or the sorted node holding its list of unsorted
+     * siblings
+     * @since 3.6
+     */
+    private void reposition(int node, int subTree) {
+        int ancestor = fitsAncestors(node, subTree);
+        if (ancestor == -1) {
+            return;
+        }
+
+        // Detach the node, leaving its unsorted siblings in its place
+        int parent = parentTree[node];
+        replaceNode(node, nextUnsorted[node]);
+        recomputeAncestorTreeSizes(parent);
+        
+        addUnsortedChild(ancestor, node);
+    }
+    
+    /**
+     * Batch version of reposition for unsorted nodes. Removing a node from a list of
+     * unsorted nodes changes the size of all nodes before it in the list, so all nodes
+     * to move are detached first and the sizes of each list are recomputed once.
+     * 
+     * @param nodes distinct unsorted nodes
+     * @param subTrees the sorted node holding the list of each unsorted node
+     * @since 3.6
+     */
+    private void repositionUnsorted(int[] nodes, int[] subTrees) {
+        int[] ancestors = new int[nodes.length];
+        int[] changed = new int[nodes.length];
+        int changedCount = 0;
+        
+        for (int i = 0; i < nodes.length; i++) {
+            int node = nodes[i];
+            ancestors[i] = fitsAncestors(node, subTrees[i]);
+            
+            if (ancestors[i] != -1) {
+                int previous = parentTree[node];
+                int next = nextUnsorted[node];
+                nextUnsorted[previous] = next;
+                if (next != -1) {
+                    parentTree[next] = previous;
+                }
+                changed[changedCount++] = subTrees[i];
+            }
+        }
+        
+        Arrays.sort(changed, 0, changedCount);
+        for (int i = 0; i < changedCount; i++) {
+            int subTree = changed[i];
+            if (i > 0 && subTree == changed[i - 1]) {
+                continue;
+            }
+            
+            int size = 0;
+            for (int next = nextUnsorted[subTree]; next != -1; next = nextUnsorted[next]) {
+                size++;
+            }
+            for (int next = nextUnsorted[subTree]; next != -1; next = nextUnsorted[next]) {
+                treeSize[next] = size--;
+            }
+            recomputeAncestorTreeSizes(subTree);
+        }
+        
+        for (int i = 0; i < nodes.length; i++) {
+            if (ancestors[i] != -1) {
+                addUnsortedChild(ancestors[i], nodes[i]);
+            }
+        }
+    }
+    
+    /**
+     * Inserts a detached node as the first unsorted child of the given subtree and
+     * updates the sizes of the subtree and all its ancestors. Unlike addUnsorted,
+     * this never changes the pivot of the subtree or removes it, so the structure of
+     * the tree above the unsorted nodes stays the same.
+     * 
+     * @param subTree sorted node
+     * @param node detached node without children
+     * @since 3.6
+     */
+    private void addUnsortedChild(int subTree, int node) {
+        int next = nextUnsorted[subTree];
+        
+        nextUnsorted[node] = next;
+        treeSize[node] = getSubtreeSize(next) + 1;
+        if (next != -1) {
+            parentTree[next] = node;
+        }
+        
+        nextUnsorted[subTree] = node;
+        parentTree[node] = subTree;
+        
+        for (int parent = subTree; parent != -1; parent = parentTree[parent]) {
+            treeSize[parent]++;
+        }
+    }
+
+    /**
+     * Checks if the given node still belongs in the given subtree, by comparing it
+     * with the pivots of all ancestors of the subtree. Returns -1 if it does, or else the
+     * closest ancestor to the root whose subtree it may not belong in. Pivots
+     * flagged for lazy removal cannot be compared with, and are treated as if the node
+     * did not belong below them.
+     *
+     * @param node node to test
+     * @param subTree sorted node at or above the node to test
+     * @return -1 or the index of an ancestor of the subtree
+     * @since 3.6
+     */
+    private int fitsAncestors(int node, int subTree) {
+        int result = -1;
+
+        for (int child = subTree, parent = parentTree[subTree]; parent != -1;
+        		child = parent, parent = parentTree[parent]) {
+            boolean fits;
+
+            if (contents[parent] == lazyRemovalFlag) {
+                fits = false;
+            } else if (leftSubTree[parent] == child) {
+                fits = !isLess(parent, node);
+            } else {
+                fits = !isLess(node, parent);
+            }
+
+            if (!fits) {
+                result = parent;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks if the given pivot is still not smaller than any node in its left subtree
+     * and not larger than any node in its right subtree. Conservatively returns false
+     * if this cannot be decided without partitioning.
+     *
+     * @param node pivot to test
+     * @return true iff the pivot is known to be correctly ordered with its children
+     * @since 3.6
+     */
+    private boolean fitsChildren(int node) {
+        int left = leftSubTree[node];
+        if (left != -1) {
+            int largest = getSortedEnd(left, DIR_RIGHT);
+            if (largest == -1 || isLess(node, largest)) {
+                return false;
+            }
+        }
+
+        int right = rightSubTree[node];
+        if (right != -1) {
+            int smallest = getSortedEnd(right, DIR_LEFT);
+            if (smallest == -1 || isLess(smallest, node)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Follows the left or right subtrees from the given node and returns the last
+     * node reached, which is the smallest or largest node in the subtree. Returns -1
+     * if a node on the way has unsorted children or is flagged for lazy removal,
+     * since the result would then be unknown.
+     *
+     * @param subTree subtree to search
+     * @param direction DIR_LEFT for the smallest node, DIR_RIGHT for the largest
+     * @return the smallest or largest node, or -1 if unknown
+     * @since 3.6
+     */
+    private int getSortedEnd(int subTree, int direction) {
+        int node = subTree;
+
+        while (true) {
+            if (nextUnsorted[node] != -1 || contents[node] == lazyRemovalFlag) {
+                return -1;
+            }
+
+            int next = (direction == DIR_LEFT) ? leftSubTree[node] : rightSubTree[node];
+            if (next == -1) {
+                return node;
+            }
+            node = next;
+        }
+    }
+
     /**
      * Retains the n smallest items in the collection, removing the rest. When
      * this method returns, the size of the collection will be n. Note that
@@ -1077,6 +1538,22 @@ public class LazySortedCollection {
             return result;
         }
                 
+        // The next-smallest and next-largest nodes are only known once the nodes
+        // leading to them have been partitioned, and they cannot be flagged for lazy
+        // removal since the replacement is compared with other nodes below
+        try {
+            FastProgressReporter mon = new FastProgressReporter();
+            partitionEdge(subTree, DIR_LEFT, DIR_RIGHT, mon);
+            partitionEdge(subTree, DIR_RIGHT, DIR_LEFT, mon);
+        } catch (InterruptedException e) {
+        }
+        left = leftSubTree[subTree];
+        right = rightSubTree[subTree];
+        if (left == -1 || right == -1) {
+            // Partitioning removed all nodes on one side
+            return removeNode(subTree);
+        }
+        
         // Find the edges that lead to the next-smallest and
         // next-largest nodes
         Edge nextSmallest = new Edge(subTree, DIR_LEFT);
@@ -1168,6 +1645,29 @@ public class LazySortedCollection {
         return subTree;
     }
    
+    /**
+     * Partitions the nodes along the path that starts with the given edge
+     * and continues in the given direction, so that the last node on the path is
+     * the smallest or largest node of the subtree the edge leads to.
+     * 
+     * @param subTree start of the path
+     * @param firstDirection direction of the first edge
+     * @param direction direction of the following edges
+     * @param mon progress monitor
+     * @throws InterruptedException if the progress monitor is cancelled
+     * @since 3.6
+     */
+    private void partitionEdge(int subTree, int firstDirection, int direction, FastProgressReporter mon) throws InterruptedException {
+        Edge edge = new Edge(subTree, firstDirection);
+        while (!edge.isNull()) {
+            // partitioning replaces the node if it was flagged for lazy removal
+            if (partition(edge.getTarget(), mon) == -1) {
+                return;
+            }
+            edge.advance(direction);
+        }
+    }
+   
     /**
      * Removes all elements from the collection
      */
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.deferred;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.jface.resource.JFaceResources;
+
+/**
+ * Runs the background sorting of deferred content providers on a bounded
+ * number of threads that are shared between all providers using the same
+ * scheduler.
+ * <p>
+ * Threads are started on demand, up to the maximum number of threads, and end
+ * again as soon as no provider needs sorting. A provider is never sorted by
+ * more than one thread at a time. Providers that need sorting are served in
+ * the order in which they became dirty, except for the provider whose visible
+ * range changed most recently, which is served first. When all threads are
+ * busy and other providers are waiting, a provider that is processing a long
+ * series of changes gives up its thread between changes and continues after
+ * the providers that were waiting.
+ * </p>
+ * <p>
+ * By default, all deferred content providers use the scheduler returned by
+ * {@link #getDefault()}. Clients can override {@link #createThread(Runnable)}
+ * to control how the threads are created, for example to run the sorting on
+ * the virtual threads of a newer VM.
+ * </p>
+ *
+ * @see DeferredContentProvider#setSortScheduler(SortScheduler)
+ * @see DeferredTreeContentProvider#setSortScheduler(SortScheduler)
+ * @since 3.6
+ */
+public class SortScheduler {
+
+	/**
+	 * Sorting message string
+	 */
+	private static final String SORTING = JFaceResources.getString("Sorting"); //$NON-NLS-1$
+
+	private static SortScheduler defaultScheduler;
+
+	private final int maxThreads;
+
+	/**
+	 * Number of threads that have been started and have not ended yet
+	 */
+	private int threads = 0;
+
+	/**
+	 * Providers waiting for a thread, in the order in which they will be sorted
+	 */
+	private LinkedList ready = new LinkedList();
+
+	/**
+	 * Providers that are currently being sorted
+	 */
+	private Set running = new HashSet();
+
+	/**
+	 * Providers that became dirty again while being sorted
+	 */
+	private Set rescheduled = new HashSet();
+
+	/**
+	 * Provider whose visible range changed most recently, or null
+	 */
+	private BackgroundContentProvider mostRecent;
+
+	private Runnable worker = new Runnable() {
+		public void run() {
+			work();
+		}
+	};
+
+	/**
+	 * Returns the scheduler used by deferred content providers unless another
+	 * one is set. It uses up to one thread per available processor.
+	 *
+	 * @return the default scheduler
+	 */
+	public static synchronized SortScheduler getDefault() {
+		if (defaultScheduler == null) {
+			defaultScheduler = new SortScheduler(Runtime.getRuntime()
+					.availableProcessors());
+		}
+		return defaultScheduler;
+	}
+
+	/**
+	 * Creates a new scheduler that sorts on up to the given number of threads.
+	 *
+	 * @param maxThreads
+	 *            the maximum number of threads, at least 1
+	 */
+	public SortScheduler(int maxThreads) {
+		Assert.isTrue(maxThreads > 0);
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * Returns the maximum number of threads used by this scheduler
+	 *
+	 * @return the maximum number of threads
+	 */
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * Creates a new thread that will execute the given runnable. The thread
+	 * is started by the scheduler and ends when the runnable returns.
+	 * <p>
+	 * The default implementation creates a daemon thread with a priority
+	 * slightly below normal. Subclasses may override.
+	 * </p>
+	 *
+	 * @param runnable
+	 *            the runnable to execute
+	 * @return a new thread that has not been started
+	 */
+	protected Thread createThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, SORTING);
+		thread.setDaemon(true);
+		thread.setPriority(Thread.NORM_PRIORITY - 1);
+		return thread;
+	}
+
+	/**
+	 * Requests that the given provider be sorted. If it is being sorted
+	 * already, it will be sorted again afterwards.
+	 *
+	 * @param provider
+	 *            the provider that needs sorting
+	 */
+	void schedule(BackgroundContentProvider provider) {
+		boolean start;
+		synchronized (this) {
+			if (running.contains(provider)) {
+				rescheduled.add(provider);
+				return;
+			}
+			if (ready.contains(provider)) {
+				return;
+			}
+			enqueue(provider);
+
+			// Only start a thread if all threads are busy
+			start = threads < maxThreads && threads <= running.size();
+			if (start) {
+				threads++;
+			}
+		}
+		if (start) {
+			startThread();
+		}
+	}
+
+	/**
+	 * Notes that the visible range of the given provider has changed, so that
+	 * it is sorted before the other providers.
+	 *
+	 * @param provider
+	 *            the provider whose visible range changed
+	 */
+	synchronized void prioritize(BackgroundContentProvider provider) {
+		mostRecent = provider;
+		if (ready.remove(provider)) {
+			ready.addFirst(provider);
+		}
+	}
+
+	/**
+	 * Removes the given provider from this scheduler. A sort in progress is
+	 * not interrupted, but the provider will not be sorted again.
+	 *
+	 * @param provider
+	 *            the provider that has been disposed
+	 */
+	synchronized void cancel(BackgroundContentProvider provider) {
+		ready.remove(provider);
+		rescheduled.remove(provider);
+		if (mostRecent == provider) {
+			mostRecent = null;
+		}
+	}
+
+	/**
+	 * Returns whether a provider that is being sorted should give up its
+	 * thread to another provider.
+	 *
+	 * @return true iff other providers are waiting for a thread and no thread
+	 *         can be started for them
+	 */
+	synchronized boolean shouldYield() {
+		return !ready.isEmpty() && threads >= maxThreads;
+	}
+
+	/**
+	 * Adds the given provider to the ready queue. Must be called while
+	 * holding the lock.
+	 */
+	private void enqueue(BackgroundContentProvider provider) {
+		if (provider == mostRecent) {
+			ready.addFirst(provider);
+		} else {
+			ready.addLast(provider);
+		}
+	}
+
+	private void startThread() {
+		try {
+			createThread(worker).start();
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				threads--;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Main loop of the sort threads. Sorts providers until none are ready.
+	 * The bookkeeping is done in finally blocks, so that an error thrown by
+	 * the comparator or filter of one provider neither strands that provider
+	 * nor uses up a thread of the pool.
+	 */
+	private void work() {
+		boolean exited = false;
+		try {
+			while (true) {
+				BackgroundContentProvider next;
+				synchronized (this) {
+					if (ready.isEmpty()) {
+						threads--;
+						exited = true;
+						return;
+					}
+					next = (BackgroundContentProvider) ready.removeFirst();
+					running.add(next);
+				}
+
+				boolean yielded = false;
+				try {
+					yielded = next.sort();
+				} catch (Exception ex) {
+					// ignore
+				} finally {
+					synchronized (this) {
+						running.remove(next);
+						if (rescheduled.remove(next) || yielded) {
+							enqueue(next);
+						}
+					}
+				}
+			}
+		} finally {
+			if (!exited) {
+				boolean start;
+				synchronized (this) {
+					// replace this thread if providers are still waiting
+					start = !ready.isEmpty();
+					if (!start) {
+						threads--;
+					}
+				}
+				if (start) {
+					startThread();
+				}
+			}
+		}
+	}
+}
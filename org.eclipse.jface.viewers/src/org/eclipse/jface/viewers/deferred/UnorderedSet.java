@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.deferred;
+
+/**
+ * An unordered set of objects, stored in an array. Adding an element and
+ * iterating over all elements costs no more than for an array. The index
+ * used for removing elements is only built when the first element is removed,
+ * like the index of <code>LazySortedCollection</code>.
+ * <p>
+ * The set does not check for duplicates: the caller must not add an element
+ * that is already contained.
+ * </p>
+ *
+ * @since 3.6
+ */
+/* package */ final class UnorderedSet {
+	private static final int MIN_CAPACITY = 8;
+
+	private static final float loadFactor = 0.75f;
+
+	private Object[] elements = new Object[MIN_CAPACITY];
+
+	private int size = 0;
+
+	/**
+	 * Maps elements onto their index in the elements array, or null if not
+	 * created yet
+	 */
+	private IntHashMap indices;
+
+	/**
+	 * Returns the number of elements in the set
+	 *
+	 * @return the number of elements
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds the given element, which must not be contained yet
+	 *
+	 * @param toAdd element to add
+	 */
+	public void add(Object toAdd) {
+		if (size == elements.length) {
+			Object[] newElements = new Object[size * 2];
+			System.arraycopy(elements, 0, newElements, 0, size);
+			elements = newElements;
+		}
+		if (indices != null) {
+			indices.put(toAdd, size);
+		}
+		elements[size++] = toAdd;
+	}
+
+	/**
+	 * Removes the given element. Has no effect if the element is not contained.
+	 *
+	 * @param toRemove element to remove
+	 * @return true iff the element was removed
+	 */
+	public boolean remove(Object toRemove) {
+		if (size == 0) {
+			return false;
+		}
+		if (indices == null) {
+			indices = new IntHashMap((int)(elements.length / loadFactor) + 1, loadFactor);
+			for (int i = 0; i < size; i++) {
+				indices.put(elements[i], i);
+			}
+		}
+		int index = indices.get(toRemove, -1);
+		if (index == -1) {
+			return false;
+		}
+		indices.remove(toRemove);
+
+		// Move the last element into the gap
+		size--;
+		if (index != size) {
+			Object last = elements[size];
+			elements[index] = last;
+			indices.put(last, index);
+		}
+		elements[size] = null;
+		return true;
+	}
+
+	/**
+	 * Removes all elements from the set
+	 */
+	public void clear() {
+		elements = new Object[MIN_CAPACITY];
+		size = 0;
+		indices = null;
+	}
+
+	/**
+	 * Returns a new array containing all elements of the set
+	 *
+	 * @return the elements of the set
+	 */
+	public Object[] toArray() {
+		Object[] result = new Object[size];
+		System.arraycopy(elements, 0, result, 0, size);
+		return result;
+	}
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2010 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.viewers.deferred;
+
+/**
+ * A snapshot of the counters of a deferred content provider, for monitoring
+ * how well the changes of the model are coalesced before they are sorted,
+ * and how many row updates are coalesced before they reach the table. The
+ * counts accumulate from the moment the input of the content provider is
+ * set.
+ * 
+ * @see DeferredContentProvider#getStatistics()
+ * @see DeferredTreeContentProvider#getStatistics()
+ * @since 3.6
+ */
+public final class UpdateStatistics {
+
+	int queuedElements;
+
+	long enqueuedChanges;
+
+	long mergedChanges;
+
+	long droppedElements;
+
+	long tableUpdates;
+
+	long droppedRowValues;
+
+	long mergedRowClears;
+
+	UpdateStatistics() {
+		// created by the content providers
+	}
+
+	/**
+	 * Adds the counts of the given statistics to these.
+	 */
+	void add(UpdateStatistics other) {
+		queuedElements += other.queuedElements;
+		enqueuedChanges += other.enqueuedChanges;
+		mergedChanges += other.mergedChanges;
+		droppedElements += other.droppedElements;
+		tableUpdates += other.tableUpdates;
+		droppedRowValues += other.droppedRowValues;
+		mergedRowClears += other.mergedRowClears;
+	}
+
+	/**
+	 * Returns the number of elements in the changes of the model that are
+	 * waiting to be sorted.
+	 * 
+	 * @return the depth of the change queue
+	 */
+	public int getQueuedElements() {
+		return queuedElements;
+	}
+
+	/**
+	 * Returns the number of changes of the model that have been taken up for
+	 * sorting.
+	 * 
+	 * @return the number of changes taken up
+	 */
+	public long getEnqueuedChanges() {
+		return enqueuedChanges;
+	}
+
+	/**
+	 * Returns the number of changes that were merged into the change before
+	 * them.
+	 * 
+	 * @return the number of merged changes
+	 */
+	public long getMergedChanges() {
+		return mergedChanges;
+	}
+
+	/**
+	 * Returns the number of elements that were dropped from the changes
+	 * because they were redundant: elements whose addition and removal
+	 * cancelled out, repeated updates of an element, and elements of changes
+	 * that were superseded by a new set of contents.
+	 * 
+	 * @return the number of dropped elements
+	 */
+	public long getDroppedElements() {
+		return droppedElements;
+	}
+
+	/**
+	 * Returns the number of updates that have been sent to the table. With a
+	 * throttle, several changes are sent in one update.
+	 * 
+	 * @return the number of table updates
+	 * @see DeferredContentProvider#setUpdateThrottle(int, int)
+	 */
+	public long getTableUpdates() {
+		return tableUpdates;
+	}
+
+	/**
+	 * Returns the number of row values that were replaced by another value
+	 * before they had been sent to the table.
+	 * 
+	 * @return the number of row values never shown
+	 */
+	public long getDroppedRowValues() {
+		return droppedRowValues;
+	}
+
+	/**
+	 * Returns the number of requests to clear a row that were not passed on
+	 * to the table, because the row was already waiting to be cleared or had
+	 * not been sent yet.
+	 * 
+	 * @return the number of merged clears
+	 */
+	public long getMergedRowClears() {
+		return mergedRowClears;
+	}
+
+	public String toString() {
+		return "queued=" + queuedElements + " enqueued=" + enqueuedChanges //$NON-NLS-1$ //$NON-NLS-2$
+				+ " merged=" + mergedChanges + " dropped=" + droppedElements //$NON-NLS-1$ //$NON-NLS-2$
+				+ " tableUpdates=" + tableUpdates + " droppedRows=" //$NON-NLS-1$ //$NON-NLS-2$
+				+ droppedRowValues + " mergedClears=" + mergedRowClears; //$NON-NLS-1$
+	}
+}